@@ -23,8 +23,31 @@ public class AbstractFileVisitorTest extends TestCase {
     ensure.set(recursiveVisitor.list).eq(test, testTwo, testThree, testFour);
   }
 
+  public void testVisitMatchingFilesAndSkipOtherDirectories() throws Exception {
+    TFileFactory factory = new TFileFactory(new InMemoryFileSystem());
+    TFile classFile = factory.file("/project/core/target/classes/One.class").save("one");
+    factory.file("/project/core/target/classes/One.txt").save("text");
+    TFile nestedClassFile = factory.file("/project/module/target/Two.class").save("two");
+    factory.file("/project/core/src/Three.class").save("three");
+    Visitor visitor = new Visitor(TPathMatcher.compile("/project/*/target/**/*.class"));
+    factory.dir("/project").visit(visitor);
+    ensure.set(visitor.list).eq(classFile, nestedClassFile);
+    ensure.that(visitor.dirs.contains(factory.dir("/project/core/src"))).isFalse();
+    ensure.that(visitor.dirs.contains(factory.dir("/project/core/target/classes"))).isTrue();
+  }
+
   private static class Visitor extends AbstractFileVisitor {
     private List<TFile> list = new ArrayList<TFile>();
+    private List<TDirectory> dirs = new ArrayList<TDirectory>();
+
+    public Visitor(TPathMatcher matcher) {
+      super(matcher);
+    }
+
+    public void visit(TDirectory directory) throws TIoException {
+      dirs.add(directory);
+      super.visit(directory);
+    }
 
     public Visitor(boolean recursive) {
       super(recursive);
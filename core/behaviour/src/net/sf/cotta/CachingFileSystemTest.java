@@ -0,0 +1,123 @@
+package net.sf.cotta;
+
+import net.sf.cotta.memory.InMemoryFileSystem;
+
+public class CachingFileSystemTest extends TestCase {
+  private InMemoryFileSystem backend;
+  private long now;
+  private CachingFileSystem fileSystem;
+  private TFileFactory factory;
+
+  public void beforeMethod() throws Exception {
+    super.beforeMethod();
+    backend = new InMemoryFileSystem();
+    fileSystem = new CachingFileSystem(backend, 1000, 100) {
+      protected long currentTimeMillis() {
+        return now;
+      }
+    };
+    factory = new TFileFactory(fileSystem);
+  }
+
+  public void testAnswerFromCacheUntilExpired() throws Exception {
+    TPath path = TPath.parse("/tmp/one.txt");
+    new TFileFactory(backend).file(path).save("one");
+    ensure.that(fileSystem.fileExists(path)).eq(true);
+    ensure.that(fileSystem.fileLength(path)).eq(3);
+    ensure.that(fileSystem.dirExists(path)).eq(false);
+    ensure.that(fileSystem.missCount()).eq(1);
+    ensure.that(fileSystem.hitCount()).eq(2);
+    backend.deleteFile(path);
+    ensure.that(fileSystem.fileExists(path)).eq(true);
+    now += 1000;
+    ensure.that(fileSystem.fileExists(path)).eq(false);
+    ensure.that(fileSystem.missCount()).eq(2);
+  }
+
+  public void testCacheListing() throws Exception {
+    TDirectory directory = factory.dir("/tmp");
+    directory.file("one.txt").save("one");
+    ensure.that(directory.list().files()).eq(directory.file("one.txt"));
+    ensure.that(directory.list().files()).eq(directory.file("one.txt"));
+    ensure.that(fileSystem.hitCount()).ge(1);
+  }
+
+  public void testInvalidateParentListingOnCreation() throws Exception {
+    TDirectory directory = factory.dir("/tmp");
+    directory.ensureExists();
+    ensure.that(directory.list().files()).isEmpty();
+    TFile file = directory.file("one.txt");
+    ensure.that(file.exists()).eq(false);
+    file.save("one");
+    ensure.that(file.exists()).eq(true);
+    ensure.that(file.length()).eq(3);
+    ensure.that(directory.list().files()).eq(file);
+  }
+
+  public void testInvalidateCreatedParents() throws Exception {
+    TDirectory directory = factory.dir("/one/two");
+    ensure.that(directory.exists()).eq(false);
+    ensure.that(directory.parent().exists()).eq(false);
+    directory.dir("three").ensureExists();
+    ensure.that(directory.exists()).eq(true);
+    ensure.that(directory.parent().exists()).eq(true);
+  }
+
+  public void testInvalidateLengthWhenStreamIsClosed() throws Exception {
+    TFile file = factory.file("/tmp/one.txt").save("one");
+    ensure.that(file.length()).eq(3);
+    file.save("longer");
+    ensure.that(file.length()).eq(6);
+  }
+
+  public void testInvalidateSubtreeOnDelete() throws Exception {
+    TDirectory directory = factory.dir("/tmp/sub");
+    TFile file = directory.file("one.txt").save("one");
+    ensure.that(file.exists()).eq(true);
+    factory.dir("/tmp").deleteAll();
+    ensure.that(file.exists()).eq(false);
+    ensure.that(directory.exists()).eq(false);
+  }
+
+  public void testInvalidateBothSidesOfMove() throws Exception {
+    TDirectory source = factory.dir("/tmp/source");
+    TFile file = source.file("one.txt").save("one");
+    TDirectory destination = factory.dir("/tmp/destination");
+    ensure.that(destination.file("one.txt").exists()).eq(false);
+    ensure.that(file.exists()).eq(true);
+    fileSystem.moveDirectory(source.toPath(), destination.toPath());
+    ensure.that(file.exists()).eq(false);
+    ensure.that(destination.file("one.txt").exists()).eq(true);
+  }
+
+  public void testEvictLeastRecentlyUsed() throws Exception {
+    CachingFileSystem caching = new CachingFileSystem(backend, 1000, 2);
+    caching.dirExists(TPath.parse("/one"));
+    caching.dirExists(TPath.parse("/two"));
+    caching.dirExists(TPath.parse("/one"));
+    caching.dirExists(TPath.parse("/three"));
+    ensure.that(caching.cachedPathCount()).eq(2);
+    caching.dirExists(TPath.parse("/one"));
+    ensure.that(caching.missCount()).eq(3);
+    caching.dirExists(TPath.parse("/two"));
+    ensure.that(caching.missCount()).eq(4);
+  }
+
+  public void testInvalidateAll() throws Exception {
+    TPath path = TPath.parse("/tmp");
+    ensure.that(fileSystem.dirExists(path)).eq(false);
+    backend.createDir(path);
+    fileSystem.invalidateAll();
+    ensure.that(fileSystem.dirExists(path)).eq(true);
+    ensure.that(fileSystem.cachedPathCount()).eq(1);
+  }
+
+  public void testRejectNonPositiveSettings() {
+    try {
+      new CachingFileSystem(backend, 0, 1);
+      fail("IllegalArgumentException should have been thrown");
+    } catch (IllegalArgumentException e) {
+      ensure.that(e).message().contains("time to live");
+    }
+  }
+}
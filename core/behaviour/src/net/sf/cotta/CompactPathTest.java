@@ -0,0 +1,81 @@
+package net.sf.cotta;
+
+import java.util.Collections;
+import java.util.List;
+
+public class CompactPathTest extends TestCase {
+  public void testDecodeToTheSamePath() {
+    assertRoundTrip("/one/two/three");
+    assertRoundTrip("c:/one");
+    assertRoundTrip("./one/two");
+    assertRoundTrip("\\\\host\\share");
+    assertRoundTrip("/");
+  }
+
+  public void testDecodeNonAsciiElements() {
+    assertRoundTrip("/caf\u00e9/\u65e5\u672c/\ud834\udd1e");
+    assertRoundTrip("/lone\ud834/\udd1esurrogate");
+  }
+
+  public void testDecodedRelativePathIsRelative() {
+    ensure.that(CompactPath.encode(TPath.parse("one/two")).decode().isRelative()).isTrue();
+    ensure.that(CompactPath.encode(TPath.parse("/one/two")).decode().isRelative()).isFalse();
+  }
+
+  public void testHashCodeIsTheSameAsPath() {
+    TPath path = TPath.parse("/one/\u65e5\u672c");
+    ensure.that(CompactPath.encode(path).hashCode()).eq(path.hashCode());
+  }
+
+  public void testEqualsWithHash() {
+    ensure.that(CompactPath.encode(TPath.parse("/one/two"))).eqWithHash(CompactPath.encode(TPath.parse("/one").join("two")));
+    ensure.that(CompactPath.encode(TPath.parse("/one/two")).equals(CompactPath.encode(TPath.parse("/one/three")))).isFalse();
+    ensure.that(CompactPath.encode(TPath.parse("/one/two")).equals(CompactPath.encode(TPath.parse("/onetwo")))).isFalse();
+    ensure.that(CompactPath.encode(TPath.parse("/one")).equals(CompactPath.encode(TPath.parse("c:/one")))).isFalse();
+  }
+
+  public void testMatchesPath() {
+    CompactPath compact = CompactPath.encode(TPath.parse("/one/\ud834\udd1e"));
+    ensure.that(compact.matches(TPath.parse("/one/\ud834\udd1e"))).isTrue();
+    ensure.that(compact.matches(TPath.parse("/one/\ud834"))).isFalse();
+    ensure.that(compact.matches(TPath.parse("/one"))).isFalse();
+  }
+
+  public void testCompareInTheSameOrderAsPath() {
+    String[] paths = {"/a", "/b", "/a/b", "/ab", "/\uffff", "/\ud834\udd1e", "/\ud834", "/\ud834a"};
+    for (String one : paths) {
+      for (String two : paths) {
+        TPath path1 = TPath.parse(one);
+        TPath path2 = TPath.parse(two);
+        int expected = Integer.signum(path1.compareTo(path2));
+        int actual = Integer.signum(CompactPath.encode(path1).compareTo(CompactPath.encode(path2)));
+        ensure.that(actual).describedAs(one + " vs " + two).eq(expected);
+      }
+    }
+  }
+
+  public void testElementAt() {
+    CompactPath compact = CompactPath.encode(TPath.parse("/one/two"));
+    ensure.that(compact.length()).eq(2);
+    ensure.that(compact.elementAt(1)).eq("two");
+    ensure.that(compact.headElement()).eq("");
+  }
+
+  public void testCompactPathContent() {
+    PathContent content = PathContent.compact(4);
+    content.addFilePath(TPath.parse("/one/b"));
+    content.addFilePath(TPath.parse("/one/a"));
+    List<TPath> files = content.files();
+    ensure.that(files.get(0)).eq(TPath.parse("/one/b"));
+    Collections.sort(files);
+    ensure.that(files).eq(TPath.parse("/one/a"), TPath.parse("/one/b"));
+  }
+
+  private void assertRoundTrip(String pathString) {
+    TPath path = TPath.parse(pathString);
+    TPath decoded = CompactPath.encode(path).decode();
+    ensure.that(decoded).eqWithHash(path);
+    ensure.that(decoded.headElement()).eq(path.headElement());
+    ensure.that(decoded.toPathString()).eq(path.toPathString());
+  }
+}
@@ -26,6 +26,21 @@ public class ControlledFileSystemTest extends TestCase {
     fileSystem.createDir(TPath.parse("tmp"));
   }
 
+  public void testAllowUpdateUnderAnyOfThePaths() throws Exception {
+    TPathSet paths = new TPathSet();
+    paths.add(TPath.parse("/tmp"));
+    paths.add(TPath.parse("/var/log"));
+    FileSystem fileSystem = ControlledFileSystem.pathControlledFileSystem(new InMemoryFileSystem(), paths);
+    fileSystem.createDir(TPath.parse("/tmp/sub"));
+    fileSystem.createDir(TPath.parse("/var/log/app"));
+    try {
+      fileSystem.createDir(TPath.parse("/var/lib"));
+      fail("exception should have been thrown");
+    } catch (PermissionDeniedException e) {
+      ensure.that(e).message().contains("/var/lib", "/var/log");
+    }
+  }
+
   public void testCreateReadOnlyFileSystem() throws Exception {
     Mockery context = new Mockery();
     FileSystem fileSystemMock = context.mock(FileSystem.class);
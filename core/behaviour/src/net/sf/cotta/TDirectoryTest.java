@@ -264,6 +264,60 @@ public class TDirectoryTest extends PhysicalFileSystemTestCase {
     ensure.that(target.dir("subdirectory").file("source.txt").load()).eq("subsource");
   }
 
+  public void testDeleteAllInParallel() throws Exception {
+    TDirectory directory = new TFileFactory(fileSystem).dir("tmp/parallel");
+    for (int i = 0; i < 3; i++) {
+      for (int j = 0; j < 50; j++) {
+        directory.file("sub" + i + "/deeper/file" + j + ".txt").create();
+      }
+    }
+    directory.deleteAll(4);
+    ensure.that(directory.exists()).eq(false);
+  }
+
+  public void testMergeInParallel() throws Exception {
+    TFileFactory factory = new TFileFactory(fileSystem);
+    TDirectory source = factory.dir("tmp/source");
+    for (int i = 0; i < 40; i++) {
+      source.file("sub" + (i % 4) + "/file" + i + ".txt").save("content" + i);
+    }
+    TDirectory target = factory.dir("tmp/target");
+    source.mergeTo(target, 4);
+    for (int i = 0; i < 40; i++) {
+      ensure.that(target.file("sub" + (i % 4) + "/file" + i + ".txt").load()).eq("content" + i);
+    }
+  }
+
+  public void testAggregateFailuresOfParallelDeleteAll() throws Exception {
+    InMemoryFileSystem backend = new InMemoryFileSystem();
+    TDirectory setup = new TFileFactory(backend).dir("/tmp/directory");
+    setup.file("a/locked1.txt").create();
+    setup.file("a/unlocked.txt").create();
+    setup.file("b/locked2.txt").create();
+    setup.file("c/unlocked.txt").create();
+    FileSystem controlled = new ControlledFileSystem(backend, new ControlledFileSystem.PermissionController() {
+      public boolean writeAllowed(TPath path) {
+        return !path.lastElementName().startsWith("locked");
+      }
+
+      public StringBuffer describe(StringBuffer buffer) {
+        return buffer.append("locked");
+      }
+    });
+    TDirectory directory = new TFileFactory(controlled).dir("/tmp/directory");
+    try {
+      directory.deleteAll(1);
+      fail("AggregateTIoException should have been thrown");
+    } catch (AggregateTIoException e) {
+      ensure.that(e.getFailures().size()).eq(2);
+      ensure.that(e.getSuppressed().length).eq(2);
+    }
+    ensure.that(directory.file("a/unlocked.txt").exists()).eq(false);
+    ensure.that(directory.dir("a").exists()).eq(true);
+    ensure.that(directory.dir("c").exists()).eq(false);
+    ensure.that(directory.exists()).eq(true);
+  }
+
   public void testMoveDirectory() throws TIoException {
     FileSystem fileSystem = new InMemoryFileSystem();
     TPath path = TPath.parse("/tmp/from");
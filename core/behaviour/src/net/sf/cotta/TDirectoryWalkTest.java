@@ -0,0 +1,93 @@
+package net.sf.cotta;
+
+import net.sf.cotta.memory.InMemoryFileSystem;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+public class TDirectoryWalkTest extends TestCase {
+  private TDirectory root;
+
+  public void beforeMethod() throws Exception {
+    super.beforeMethod();
+    TFileFactory factory = new TFileFactory(new InMemoryFileSystem());
+    root = factory.dir("/root");
+    root.file("one.txt").create();
+    root.file("a/two.txt").create();
+    root.file("a/b/three.txt").create();
+    root.file("c/four.log").create();
+  }
+
+  public void testWalkAllEntries() throws Exception {
+    List<TEntry> entries = root.walk().stream().collect(Collectors.<TEntry>toList());
+    ensure.that(entries.size()).eq(7);
+    ensure.that(entries.contains(root.file("a/b/three.txt"))).eq(true);
+    ensure.that(entries.contains(root.dir("a/b"))).eq(true);
+    ensure.that(entries.contains(root)).eq(false);
+  }
+
+  public void testWalkDepthFirstWhenSequential() throws Exception {
+    List<TEntry> entries = new ArrayList<TEntry>();
+    for (TEntry entry : root.walk()) {
+      entries.add(entry);
+    }
+    ensure.that(entries.indexOf(root.file("a/b/three.txt"))).lt(entries.indexOf(root.file("c/four.log")));
+  }
+
+  public void testApplyFilters() throws Exception {
+    TPathMatcher matcher = TPathMatcher.compile(root.toPath(), "a/**/*.txt");
+    List<TEntry> entries = root.walk().filteredBy(matcher.subtreeFilter(), matcher).stream().collect(Collectors.<TEntry>toList());
+    ensure.set(entries).eq(root.dir("a"), root.dir("a/b"), root.file("a/two.txt"), root.file("a/b/three.txt"));
+  }
+
+  public void testLimitDepth() throws Exception {
+    List<TEntry> entries = root.walk().maxDepth(1).stream().collect(Collectors.<TEntry>toList());
+    ensure.set(entries).eq(root.file("one.txt"), root.dir("a"), root.dir("c"));
+    ensure.that(root.walk().maxDepth(0).stream().count()).eq(0);
+  }
+
+  public void testWalkInParallel() throws Exception {
+    for (int i = 0; i < 20; i++) {
+      root.file("many/" + i + "/" + i + ".txt").create();
+    }
+    ensure.that(root.walk().parallel().stream().isParallel()).eq(true);
+    List<TEntry> entries = root.walk().parallel().stream().collect(Collectors.<TEntry>toList());
+    ensure.that(entries.size()).eq(7 + 1 + 20 + 20);
+  }
+
+  public void testSplitAtDirectoryBoundaries() throws Exception {
+    Spliterator<TEntry> spliterator = root.walk().spliterator();
+    Spliterator<TEntry> split = spliterator.trySplit();
+    ensure.that(split).notNull();
+    List<TEntry> entries = new ArrayList<TEntry>();
+    while (split.tryAdvance(new Adder(entries))) {
+    }
+    while (spliterator.tryAdvance(new Adder(entries))) {
+    }
+    ensure.that(entries.size()).eq(7);
+  }
+
+  public void testWrapListingError() throws Exception {
+    try {
+      root.dir("missing").walk().stream().count();
+      fail("TIoRuntimeException should have been thrown");
+    } catch (TIoRuntimeException e) {
+      ensure.that(e.getPath()).eq(root.dir("missing").toPath());
+    }
+  }
+
+  private static class Adder implements Consumer<TEntry> {
+    private final List<TEntry> entries;
+
+    Adder(List<TEntry> entries) {
+      this.entries = entries;
+    }
+
+    public void accept(TEntry entry) {
+      entries.add(entry);
+    }
+  }
+}
@@ -1,6 +1,7 @@
 package net.sf.cotta;
 
 import net.sf.cotta.io.*;
+import net.sf.cotta.memory.AccesssUtil;
 import net.sf.cotta.memory.InMemoryFileSystem;
 import net.sf.cotta.system.FileSystem;
 import net.sf.cotta.test.TestCase;
@@ -74,6 +75,67 @@ public class TFileTest extends TestCase {
     ensure.that(dest.load()).eq(content);
   }
 
+  public void testCopyThroughStreamsIfChannelIsNotSupported() throws Exception {
+    FileSystem fileSystem = new ControlledFileSystem(new InMemoryFileSystem(), new ControlledFileSystem.PermissionController() {
+      public boolean writeAllowed(TPath path) {
+        return true;
+      }
+
+      public StringBuffer describe(StringBuffer buffer) {
+        return buffer;
+      }
+    }) {
+      public java.nio.channels.FileChannel createInputChannel(TPath path) throws TIoException {
+        throw new UnsupportedOperationException();
+      }
+    };
+    TFileFactory factory = new TFileFactory(fileSystem);
+    StringBuilder content = new StringBuilder();
+    for (int i = 0; i < 20000; i++) {
+      content.append(i % 10);
+    }
+    TFile source = factory.file("/source.txt").save(content.toString());
+    TFile dest = factory.file("/dest.txt");
+    source.copyTo(dest);
+    ensure.that(dest.load()).eq(content.toString());
+  }
+
+  public void testCopyTheRestWhenTransferStops() throws Exception {
+    final StringBuilder content = new StringBuilder();
+    for (int i = 0; i < 100000; i++) {
+      content.append(i % 10);
+    }
+    FileSystem fileSystem = new ControlledFileSystem(new InMemoryFileSystem(), new ControlledFileSystem.PermissionController() {
+      public boolean writeAllowed(TPath path) {
+        return true;
+      }
+
+      public StringBuffer describe(StringBuffer buffer) {
+        return buffer;
+      }
+    }) {
+      public java.nio.channels.FileChannel createInputChannel(TPath path) throws TIoException {
+        return AccesssUtil.createStalledInputChannel(content.toString().getBytes());
+      }
+    };
+    TFileFactory factory = new TFileFactory(fileSystem);
+    TFile source = factory.file("/source.txt").save(content.toString());
+    TFile dest = factory.file("/dest.txt");
+    source.copyTo(dest);
+    ensure.that(dest.load()).eq(content.toString());
+  }
+
+  public void testMapInMemoryFileIntoHeapBuffers() throws Exception {
+    TFile file = new TFileFactory(new InMemoryFileSystem()).file("/tmp/mapped.txt").save("0123456789");
+    file.map(new MappedProcessor() {
+      public void process(MappedContent content) throws IOException {
+        ensure.that(content.isMapped()).eq(false);
+        ensure.that(content.size()).eq(10);
+        ensure.that(content.get(9)).eq((int) '9');
+      }
+    });
+  }
+
   public void testCallMoveDirectlyIfUsingSameFileSystem() throws Exception {
     Mockery context = new Mockery();
     final FileSystem fileSystem = context.mock(FileSystem.class);
@@ -0,0 +1,113 @@
+package net.sf.cotta;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+public class TPathMapTest extends TestCase {
+  public void testPutGetAndRemove() {
+    TPathMap<String> map = new TPathMap<String>();
+    ensure.that(map.put(TPath.parse("/one/two"), "two")).isNull();
+    ensure.that(map.put(TPath.parse("/one/two"), "second")).eq("two");
+    ensure.that(map.get(TPath.parse("/one").join("two"))).eq("second");
+    ensure.that(map.get(TPath.parse("/one"))).isNull();
+    ensure.that(map.containsKey(TPath.parse("/one"))).isFalse();
+    ensure.that(map.size()).eq(1);
+    ensure.that(map.remove(TPath.parse("/one/two"))).eq("second");
+    ensure.that(map.isEmpty()).isTrue();
+    ensure.that(map.remove(TPath.parse("/one/two"))).isNull();
+  }
+
+  public void testKeepDifferentHeadsApart() {
+    TPathMap<String> map = new TPathMap<String>();
+    map.put(TPath.parse("/one"), "root");
+    map.put(TPath.parse("c:/one"), "drive");
+    map.put(TPath.parse("one"), "relative");
+    ensure.that(map.get(TPath.parse("/one"))).eq("root");
+    ensure.that(map.get(TPath.parse("c:/one"))).eq("drive");
+    ensure.that(map.get(TPath.parse("./one"))).eq("relative");
+    ensure.that(map.containsPrefixOf(TPath.parse("d:/one"))).isFalse();
+  }
+
+  public void testFindLongestPrefix() {
+    TPathMap<String> map = new TPathMap<String>();
+    map.put(TPath.parse("/"), "root");
+    map.put(TPath.parse("/one/two"), "two");
+    Map.Entry<TPath, String> entry = map.longestPrefixMatch(TPath.parse("/one/two/three/four"));
+    ensure.that(entry.getKey()).eq(TPath.parse("/one/two"));
+    ensure.that(entry.getValue()).eq("two");
+    entry = map.longestPrefixMatch(TPath.parse("/one/three"));
+    ensure.that(entry.getKey()).eq(TPath.parse("/"));
+    ensure.that(entry.getValue()).eq("root");
+    ensure.that(map.longestPrefixMatch(TPath.parse("/one/two")).getKey()).eq(TPath.parse("/one/two"));
+    ensure.that(map.longestPrefixMatch(TPath.parse("c:/one"))).isNull();
+  }
+
+  public void testIterateAllEntries() {
+    TPathMap<String> map = new TPathMap<String>();
+    map.put(TPath.parse("/one"), "one");
+    map.put(TPath.parse("/one/two/three"), "three");
+    map.put(TPath.parse("c:/four"), "four");
+    Set<TPath> keys = new HashSet<TPath>(map.keySet());
+    ensure.that(keys.size()).eq(3);
+    ensure.that(keys.contains(TPath.parse("/one/two/three"))).isTrue();
+    ensure.that(keys.contains(TPath.parse("c:/four"))).isTrue();
+    ensure.that(new HashMap<TPath, String>(map).equals(map)).isTrue();
+  }
+
+  public void testIterateSubtree() {
+    TPathMap<String> map = new TPathMap<String>();
+    map.put(TPath.parse("/one"), "one");
+    map.put(TPath.parse("/one/two"), "two");
+    map.put(TPath.parse("/one/two/three"), "three");
+    map.put(TPath.parse("/other"), "other");
+    Set<String> values = new HashSet<String>();
+    for (Map.Entry<TPath, String> entry : map.subtree(TPath.parse("/one/two"))) {
+      ensure.that(map.get(entry.getKey())).eq(entry.getValue());
+      values.add(entry.getValue());
+    }
+    ensure.that(values.size()).eq(2);
+    ensure.that(values.contains("two")).isTrue();
+    ensure.that(values.contains("three")).isTrue();
+    ensure.that(map.subtree(TPath.parse("/none")).iterator().hasNext()).isFalse();
+  }
+
+  public void testRemoveSubtree() {
+    TPathMap<String> map = new TPathMap<String>();
+    map.put(TPath.parse("/one"), "one");
+    map.put(TPath.parse("/one/two"), "two");
+    map.put(TPath.parse("/one/two/three"), "three");
+    map.put(TPath.parse("/one/four"), "four");
+    ensure.that(map.removeSubtree(TPath.parse("/one/two"))).eq(2);
+    ensure.that(map.size()).eq(2);
+    ensure.that(map.containsKey(TPath.parse("/one/two/three"))).isFalse();
+    ensure.that(map.get(TPath.parse("/one/four"))).eq("four");
+    ensure.that(map.removeSubtree(TPath.parse("/one/two"))).eq(0);
+    ensure.that(map.removeSubtree(TPath.parse("/"))).eq(2);
+    ensure.that(map.isEmpty()).isTrue();
+  }
+
+  public void testRemovingKeepsEntriesBelow() {
+    TPathMap<String> map = new TPathMap<String>();
+    map.put(TPath.parse("/one"), "one");
+    map.put(TPath.parse("/one/two"), "two");
+    map.remove(TPath.parse("/one"));
+    ensure.that(map.size()).eq(1);
+    ensure.that(map.get(TPath.parse("/one/two"))).eq("two");
+    ensure.that(map.longestPrefixMatch(TPath.parse("/one/three"))).isNull();
+  }
+
+  public void testSetFindsAncestors() {
+    TPathSet set = new TPathSet();
+    ensure.that(set.add(TPath.parse("/tmp"))).isTrue();
+    ensure.that(set.add(TPath.parse("/tmp"))).isFalse();
+    set.add(TPath.parse("/var/log"));
+    ensure.that(set.containsPrefixOf(TPath.parse("/var/log/app/out.log"))).isTrue();
+    ensure.that(set.containsPrefixOf(TPath.parse("/var/lib"))).isFalse();
+    ensure.that(set.longestPrefixOf(TPath.parse("/tmp/a"))).eq(TPath.parse("/tmp"));
+    ensure.that(set.contains(TPath.parse("/var"))).isFalse();
+    ensure.that(set.removeSubtree(TPath.parse("/var"))).eq(1);
+    ensure.that(set.size()).eq(1);
+  }
+}
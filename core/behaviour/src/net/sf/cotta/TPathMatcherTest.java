@@ -0,0 +1,75 @@
+package net.sf.cotta;
+
+import net.sf.cotta.memory.InMemoryFileSystem;
+
+public class TPathMatcherTest extends TestCase {
+  public void testMatchWildcardsWithinElement() {
+    TPathMatcher matcher = TPathMatcher.compile("/tmp/*.tx?");
+    ensure.that(matcher.matches(TPath.parse("/tmp/one.txt"))).isTrue();
+    ensure.that(matcher.matches(TPath.parse("/tmp/.txt"))).isTrue();
+    ensure.that(matcher.matches(TPath.parse("/tmp/one.text"))).isFalse();
+    ensure.that(matcher.matches(TPath.parse("/tmp/sub/one.txt"))).isFalse();
+    ensure.that(matcher.matches(TPath.parse("/tmp"))).isFalse();
+  }
+
+  public void testMatchCharacterClasses() {
+    TPathMatcher matcher = TPathMatcher.compile("/log-[0-9][!a-c].[]x]");
+    ensure.that(matcher.matches(TPath.parse("/log-1d.x"))).isTrue();
+    ensure.that(matcher.matches(TPath.parse("/log-1d.]"))).isTrue();
+    ensure.that(matcher.matches(TPath.parse("/log-1a.x"))).isFalse();
+    ensure.that(matcher.matches(TPath.parse("/log-xd.x"))).isFalse();
+  }
+
+  public void testAnyDepthMatchesNoOrManyElements() {
+    TPathMatcher matcher = TPathMatcher.compile("/**/target/**/*.class");
+    ensure.that(matcher.matches(TPath.parse("/target/One.class"))).isTrue();
+    ensure.that(matcher.matches(TPath.parse("/a/b/target/c/d/One.class"))).isTrue();
+    ensure.that(matcher.matches(TPath.parse("/a/target/target/One.class"))).isTrue();
+    ensure.that(matcher.matches(TPath.parse("/a/b/One.class"))).isFalse();
+    ensure.that(matcher.matches(TPath.parse("/a/target/One.java"))).isFalse();
+  }
+
+  public void testMatchHeadElement() {
+    ensure.that(TPathMatcher.compile("/one/*").matches(TPath.parse("c:/one/two"))).isFalse();
+    ensure.that(TPathMatcher.compile("c:/one/*").matches(TPath.parse("c:/one/two"))).isTrue();
+    ensure.that(TPathMatcher.compile("one/*").matches(TPath.parse("./one/two"))).isTrue();
+    ensure.that(TPathMatcher.compile("one/*").matches(TPath.parse("/one/two"))).isFalse();
+  }
+
+  public void testMatchUnderBaseLiterally() {
+    TPathMatcher matcher = TPathMatcher.compile(TPath.parse("/a[1]"), "**/*.txt");
+    ensure.that(matcher.matches(TPath.parse("/a[1]/b/one.txt"))).isTrue();
+    ensure.that(matcher.matches(TPath.parse("/a1/b/one.txt"))).isFalse();
+    ensure.that(matcher.toString()).eq("/a[1]/**/*.txt");
+  }
+
+  public void testTellIfSubtreeMayMatch() {
+    TPathMatcher matcher = TPathMatcher.compile("/project/*/target/*.class");
+    ensure.that(matcher.mayMatchUnder(TPath.parse("/project"))).isTrue();
+    ensure.that(matcher.mayMatchUnder(TPath.parse("/project/core/target"))).isTrue();
+    ensure.that(matcher.mayMatchUnder(TPath.parse("/project/core/src"))).isFalse();
+    ensure.that(matcher.mayMatchUnder(TPath.parse("/project/core/target/One.class"))).isFalse();
+    ensure.that(matcher.mayMatchUnder(TPath.parse("/other"))).isFalse();
+    ensure.that(TPathMatcher.compile("/**/*.class").mayMatchUnder(TPath.parse("/a/b/c"))).isTrue();
+  }
+
+  public void testRejectUnclosedCharacterClass() {
+    try {
+      TPathMatcher.compile("/one/[ab");
+      fail("IllegalArgumentException should have been thrown");
+    } catch (IllegalArgumentException e) {
+      ensure.that(e).message().contains("[ab");
+    }
+  }
+
+  public void testFilterDirectoryListing() throws Exception {
+    TFileFactory factory = new TFileFactory(new InMemoryFileSystem());
+    TDirectory directory = factory.dir("/one");
+    TFile text = directory.file("one.txt").save("one");
+    directory.file("two.bin").save("two");
+    directory.dir("three.txt").ensureExists();
+    TDirectoryListing listing = directory.list(TPathMatcher.compile("/one/*.txt"));
+    ensure.that(listing.files()).eq(text);
+    ensure.that(listing.dirs()).eq(directory.dir("three.txt"));
+  }
+}
@@ -330,4 +330,157 @@ public class TPathTest extends TestCase {
     ensure.that(path.subpath(1).intern().toElementArray()).eq("two", "three");
     ensure.that(path.subpath(0, 2).intern().toElementArray()).eq("one", "two");
   }
+
+  public void testParseHeadElementWithoutSeparator() {
+    TPath path = TPath.parse("c:tmp\\one");
+    ensure.that(path.headElement()).eq("c:");
+    ensure.that(path.toElementArray()).eq("tmp", "one");
+  }
+
+  public void testParseCurrentDirectoryOnly() {
+    ensure.that(TPath.parse(".").headElement()).eq(".");
+    ensure.that(TPath.parse(".").length()).eq(0);
+    ensure.that(TPath.parse(".\\").length()).eq(0);
+  }
+
+  public void testParseDotPrefixedNameAsElement() {
+    ensure.that(TPath.parse("..").toElementArray()).eq("..");
+    ensure.that(TPath.parse(".hidden/file").toElementArray()).eq(".hidden", "file");
+    ensure.that(TPath.parse(".hidden/file").headElement()).eq(".");
+  }
+
+  public void testParseSkipsRepeatedSeparators() {
+    TPath path = TPath.parse("//tmp\\/one//two/");
+    ensure.that(path.headElement()).eq("");
+    ensure.that(path.toElementArray()).eq("tmp", "one", "two");
+  }
+
+  public void testParseReturnsNewInstanceWithoutCache() {
+    ensure.that(TPath.parse("/tmp/one")).notSameAs(TPath.parse("/tmp/one"));
+  }
+
+  public void testParseCacheReturnsSharedInstance() {
+    TPath.enableParseCache(2);
+    try {
+      TPath path = TPath.parse("/tmp/one");
+      ensure.that(TPath.parse("/tmp/one")).sameAs(path);
+      ensure.that(TPath.parse("/tmp\\one")).notSameAs(path);
+    } finally {
+      TPath.disableParseCache();
+    }
+  }
+
+  public void testParseCacheEvictsLeastRecentlyUsed() {
+    TPath.enableParseCache(2);
+    try {
+      TPath one = TPath.parse("/one");
+      TPath two = TPath.parse("/two");
+      ensure.that(TPath.parse("/one")).sameAs(one);
+      TPath.parse("/three");
+      ensure.that(TPath.parse("/one")).sameAs(one);
+      ensure.that(TPath.parse("/two")).notSameAs(two);
+    } finally {
+      TPath.disableParseCache();
+    }
+  }
+
+  public void testParseCacheSizeNeedsToBePositive() {
+    ensure.that(new CodeBlock() {
+      public void execute() throws Exception {
+        TPath.enableParseCache(0);
+      }
+    }).throwsException(IllegalArgumentException.class);
+  }
+
+  public void testJoinedPathSharesParent() {
+    TPath parent = TPath.parse("/one/two");
+    TPath child = parent.join("three");
+    ensure.that(child.parent()).sameAs(parent);
+    ensure.that(child.subpath(0, 2)).sameAs(parent);
+    ensure.that(child.join("four").parent().parent()).sameAs(parent);
+  }
+
+  public void testJoinedPathEqualsParsedPath() {
+    TPath joined = TPath.parse("/one").join("two").join("three");
+    TPath parsed = TPath.parse("/one/two/three");
+    ensure.that(joined).eqWithHash(parsed);
+    ensure.that(parsed).eqWithHash(joined);
+    ensure.that(joined.compareTo(parsed)).eq(0);
+    ensure.that(joined.equals(TPath.parse("/one/two/four"))).isFalse();
+    ensure.that(joined.equals(TPath.parse("c:/one/two/three"))).isFalse();
+  }
+
+  public void testJoinedPathElements() {
+    TPath joined = TPath.parse("/one").join("two").join("three");
+    ensure.that(joined.toElementArray()).eq("one", "two", "three");
+    ensure.that(joined.elementAt(0)).eq("one");
+    ensure.that(joined.elementAt(2)).eq("three");
+    ensure.that(joined.toPathString()).eq("/one/two/three");
+    ensure.that(joined.subpath(1)).eq(TPath.parse("two/three"));
+    ensure.that(joined.root()).eq(TPath.parse("/"));
+  }
+
+  public void testCompareJoinedSiblings() {
+    TPath parent = TPath.parse("/one");
+    ensure.that(parent.join("a").compareTo(parent.join("b"))).eq("a".compareTo("b"));
+    ensure.that(parent.join("b").compareTo(TPath.parse("/one/a"))).eq("b".compareTo("a"));
+  }
+
+  public void testJoinSingleElementPathIsLinked() {
+    TPath parent = TPath.parse("/one");
+    ensure.that(parent.join(TPath.parse("two")).parent()).sameAs(parent);
+    ensure.that(parent.join(TPath.parse("./two"))).eq(TPath.parse("/one/two"));
+    ensure.that(parent.join(TPath.parse(".."))).eq(TPath.parse("/"));
+  }
+
+  public void testDeeplyJoinedPath() {
+    TPath path = TPath.parse("/");
+    for (int i = 0; i < 100000; i++) {
+      path = path.join("d");
+    }
+    ensure.that(path.length()).eq(100000);
+    ensure.that(path.isChildOf(TPath.parse("/d"))).isTrue();
+    ensure.that(path).eq(path.intern());
+  }
+
+  public void testElementAtOfSubpath() {
+    TPath path = TPath.parse("one/two/three").subpath(1);
+    ensure.that(path.elementAt(0)).eq("two");
+  }
+
+  public void testPrefixHashIsHashOfSubpath() {
+    TPath path = TPath.parse("/one/two/three");
+    TPath joined = TPath.parse("/one").join("two").join("three");
+    for (int i = 0; i <= 3; i++) {
+      ensure.that(path.prefixHash(i)).eq(path.subpath(0, i).hashCode());
+      ensure.that(joined.prefixHash(i)).eq(path.subpath(0, i).hashCode());
+    }
+  }
+
+  public void testChildOfJoinedPath() {
+    TPath parent = TPath.parse("/one/two");
+    TPath child = parent.join("three").join("four");
+    ensure.that(child.isChildOf(parent)).isTrue();
+    ensure.that(child.isChildOf(TPath.parse("/one/two"))).isTrue();
+    ensure.that(child.isChildOf(TPath.parse("/one").join("two").join("three"))).isTrue();
+    ensure.that(child.isChildOf(TPath.parse("/one/three"))).isFalse();
+    ensure.that(TPath.parse("/one/two/three").isChildOf(TPath.parse("/one").join("two"))).isTrue();
+  }
+
+  public void testNotChildOfPathWithDifferentHead() {
+    ensure.that(TPath.parse("c:/one").isChildOf(TPath.parse("/"))).isFalse();
+    ensure.that(TPath.parse("/one/two").isChildOf(TPath.parse("c:/one"))).isFalse();
+  }
+
+  public void testNotChildOfPathWithCollidingHash() {
+    ensure.that("Aa".hashCode()).eq("BB".hashCode());
+    ensure.that(TPath.parse("/Aa/one").isChildOf(TPath.parse("/BB"))).isFalse();
+    ensure.that(TPath.parse("/Aa/one").pathFrom(TPath.parse("/BB/two"))).eq(TPath.parse("../../Aa/one"));
+  }
+
+  public void testDeriveRelativePathFromJoinedPath() {
+    TPath base = TPath.parse("/one/two");
+    ensure.that(base.join("three").join("four").pathFrom(base.join("five"))).eq(TPath.parse("../three/four"));
+    ensure.that(base.join("three").pathFrom(TPath.parse("/one/two/three"))).eq(TPath.parse("."));
+  }
 }
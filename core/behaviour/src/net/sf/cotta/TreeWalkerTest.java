@@ -0,0 +1,103 @@
+package net.sf.cotta;
+
+import net.sf.cotta.memory.InMemoryFileSystem;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class TreeWalkerTest extends TestCase {
+  private TFileFactory factory;
+  private TDirectory root;
+
+  public void beforeMethod() throws Exception {
+    super.beforeMethod();
+    factory = new TFileFactory(new InMemoryFileSystem());
+    root = factory.dir("/root");
+    root.file("one.txt").create();
+    root.file("a/two.txt").create();
+    root.file("a/b/three.txt").create();
+    root.file("c/four.txt").create();
+  }
+
+  public void testWalkDepthFirst() throws Exception {
+    Recorder recorder = new Recorder();
+    ensure.that(root.visit(recorder)).eq(true);
+    ensure.that(recorder.names()).eq("one.txt", "a", "two.txt", "b", "three.txt", "c", "four.txt");
+  }
+
+  public void testWalkBreadthFirst() throws Exception {
+    Recorder recorder = new Recorder();
+    ensure.that(TreeWalker.breadthFirst(root).walk(recorder)).eq(true);
+    ensure.that(recorder.names()).eq("one.txt", "a", "c", "two.txt", "b", "four.txt", "three.txt");
+  }
+
+  public void testSkipSubtree() throws Exception {
+    Recorder recorder = new Recorder() {
+      public VisitResult visit(TDirectory directory) throws TIoException {
+        super.visit(directory);
+        return directory.name().equals("a") ? VisitResult.SKIP_SUBTREE : VisitResult.CONTINUE;
+      }
+    };
+    root.visit(recorder);
+    ensure.that(recorder.names()).eq("one.txt", "a", "c", "four.txt");
+  }
+
+  public void testTerminate() throws Exception {
+    Recorder recorder = new Recorder() {
+      public VisitResult visit(TFile file) throws TIoException {
+        super.visit(file);
+        return file.name().equals("two.txt") ? VisitResult.TERMINATE : VisitResult.CONTINUE;
+      }
+    };
+    ensure.that(TreeWalker.breadthFirst(root).walk(recorder)).eq(false);
+    ensure.that(recorder.names()).eq("one.txt", "a", "c", "two.txt");
+  }
+
+  public void testApplyFiltersAndMaxDepth() throws Exception {
+    Recorder recorder = new Recorder();
+    TreeWalker.depthFirst(root).maxDepth(2).filteredBy(new TDirectoryFilter() {
+      public boolean accept(TDirectory directory) {
+        return !directory.name().equals("c");
+      }
+    }, TFileFilter.ALL).walk(recorder);
+    ensure.that(recorder.names()).eq("one.txt", "a", "two.txt", "b");
+  }
+
+  public void testWalkDeepTreeWithoutRecursion() throws Exception {
+    StringBuilder path = new StringBuilder("/deep");
+    for (int i = 0; i < 3000; i++) {
+      path.append("/d");
+    }
+    factory.file(path.append("/leaf.txt").toString()).create();
+    Recorder recorder = new Recorder();
+    factory.dir("/deep").visit(recorder);
+    ensure.that(recorder.names().size()).eq(3001);
+  }
+
+  public void testRejectMissingDirectory() throws Exception {
+    try {
+      root.dir("missing").visit(new Recorder());
+      fail("TDirectoryNotFoundException should have been thrown");
+    } catch (TDirectoryNotFoundException e) {
+      ensure.that(e.getPath()).eq(root.dir("missing").toPath());
+    }
+  }
+
+  private static class Recorder implements TreeVisitor {
+    private final List<String> names = new ArrayList<String>();
+
+    public VisitResult visit(TDirectory directory) throws TIoException {
+      names.add(directory.name());
+      return VisitResult.CONTINUE;
+    }
+
+    public VisitResult visit(TFile file) throws TIoException {
+      names.add(file.name());
+      return VisitResult.CONTINUE;
+    }
+
+    List<String> names() {
+      return names;
+    }
+  }
+}
@@ -0,0 +1,88 @@
+package net.sf.cotta.io;
+
+import net.sf.cotta.TestCase;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+public class MappedContentTest extends TestCase {
+  private File file;
+  private RandomAccessFile randomAccessFile;
+
+  public void beforeMethod() throws Exception {
+    super.beforeMethod();
+    file = File.createTempFile("mapped", ".bin");
+    FileOutputStream stream = new FileOutputStream(file);
+    byte[] content = new byte[100];
+    for (int i = 0; i < content.length; i++) {
+      content[i] = (byte) i;
+    }
+    stream.write(content);
+    stream.close();
+    randomAccessFile = new RandomAccessFile(file, "r");
+  }
+
+  public void afterMethod() throws Exception {
+    randomAccessFile.close();
+    file.delete();
+    super.afterMethod();
+  }
+
+  public void testReadAcrossRegions() throws Exception {
+    MappedContent content = MappedContent.map(randomAccessFile.getChannel(), 4);
+    ensure.that(content.isMapped()).eq(true);
+    ensure.that(content.size()).eq(100);
+    ensure.that(content.get(99)).eq(99);
+    ensure.that(content.getInt(14)).eq(ByteBuffer.wrap(new byte[]{14, 15, 16, 17}).getInt());
+    ensure.that(content.getLong(30)).eq(ByteBuffer.wrap(new byte[]{30, 31, 32, 33, 34, 35, 36, 37}).getLong());
+    byte[] bytes = new byte[40];
+    content.get(10, bytes, 0, bytes.length);
+    for (int i = 0; i < bytes.length; i++) {
+      ensure.that(bytes[i]).eq(10 + i);
+    }
+    ensure.that(content.slice(20, 40).get(39)).eq(59);
+    ensure.that(content.slice(32, 16).get(15)).eq(47);
+    content.close();
+  }
+
+  public void testRejectAccessAfterClose() throws Exception {
+    MappedContent content = MappedContent.map(randomAccessFile.getChannel());
+    content.close();
+    content.close();
+    try {
+      content.get(0);
+      fail("IllegalStateException should have been thrown");
+    } catch (IllegalStateException e) {
+      ensure.that(e).message().contains("closed");
+    }
+  }
+
+  public void testKeepSliceOfMappedRegionAfterClose() throws Exception {
+    MappedContent content = MappedContent.map(randomAccessFile.getChannel(), 4);
+    ByteBuffer slice = content.slice(32, 16);
+    content.close();
+    ensure.that(slice.get(15)).eq(47);
+  }
+
+  public void testRejectOutOfBounds() throws Exception {
+    MappedContent content = MappedContent.map(randomAccessFile.getChannel());
+    try {
+      content.getInt(97);
+      fail("IndexOutOfBoundsException should have been thrown");
+    } catch (IndexOutOfBoundsException e) {
+      ensure.that(e).message().contains("97");
+    } finally {
+      content.close();
+    }
+  }
+
+  public void testUnmapSoThatFileCanBeMappedAgain() throws Exception {
+    FileChannel channel = randomAccessFile.getChannel();
+    ensure.that(Unmapper.isSupported()).eq(true);
+    ensure.that(Unmapper.unmap(channel.map(FileChannel.MapMode.READ_ONLY, 0, 10))).eq(true);
+    ensure.that(Unmapper.unmap(ByteBuffer.allocate(10))).eq(false);
+  }
+}
@@ -1,9 +1,21 @@
 package net.sf.cotta.memory;
 
 import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 
 public class AccesssUtil {
   public static FileChannel createInMemoryOutputChannel() {
-    return new InMemoryOutputFileChannel(new ByteArrayBuffer());
+    return new InMemoryOutputFileChannel(new PagedBuffer());
+  }
+
+  /**
+   * Input channel over the content whose transferTo never moves any bytes
+   */
+  public static FileChannel createStalledInputChannel(byte[] content) {
+    return new InMemoryInputFileChannel(new PagedBuffer(content)) {
+      public long transferTo(long position, long count, WritableByteChannel target) {
+        return 0;
+      }
+    };
   }
 }
@@ -113,6 +113,6 @@ public class ByteArrayBufferTest extends TestCase {
   public void testCopyZeroBytesWhenPositionPassesLimitsForChannel() throws Exception {
     ByteArrayBuffer buffer = new ByteArrayBuffer(20);
     buffer.append("123");
-    ensure.that(buffer.copyTo(new InMemoryOutputFileChannel(new ByteArrayBuffer(20)), 10, 5)).eq(0);
+    ensure.that(buffer.copyTo(new InMemoryOutputFileChannel(new PagedBuffer(20)), 10, 5)).eq(0);
   }
 }
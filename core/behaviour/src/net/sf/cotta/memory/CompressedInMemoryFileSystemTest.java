@@ -0,0 +1,85 @@
+package net.sf.cotta.memory;
+
+import net.sf.cotta.TFile;
+import net.sf.cotta.io.OutputMode;
+import net.sf.cotta.test.assertion.CodeBlock;
+
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+public class CompressedInMemoryFileSystemTest extends InMemoryFileSystemTestBase {
+
+  @Override
+  protected InMemoryFileSystem createFileSystem() {
+    return new InMemoryFileSystemBuilder().withCompressionIdleTime(1).build();
+  }
+
+  private void waitIdle() throws InterruptedException {
+    Thread.sleep(5);
+  }
+
+  public void testCompressIdleContentAndReadItBack() throws Exception {
+    String content = text(10000);
+    factory.file("/tmp/small.txt").save("small");
+    TFile file = factory.file("/tmp/log.txt").save(content);
+    waitIdle();
+    ensure.that(fileSystem.compressIdleContent()).eq(1);
+    MemoryStats stats = fileSystem.stats();
+    ensure.that(stats.compressedContentBytes()).eq(10000);
+    ensure.that(stats.compressedBytes()).lt(10000);
+    ensure.that(stats.contentBytes()).eq(5);
+    ensure.that(file.length()).eq(10000);
+    ensure.that(fileSystem.stats().compressedContentBytes()).eq(10000);
+
+    ensure.that(file.load()).eq(content);
+    ensure.that(fileSystem.stats().compressedContentBytes()).eq(0);
+    ensure.that(fileSystem.stats().contentBytes()).eq(10005);
+  }
+
+  public void testReadCompressedContentThroughChannel() throws Exception {
+    String content = text(4000);
+    TFile file = factory.file("/tmp/log.txt").save(content);
+    waitIdle();
+    fileSystem.compressIdleContent();
+    FileChannel channel = fileSystem.createInputChannel(file.toPath());
+    ByteBuffer buffer = ByteBuffer.allocate(4000);
+    ensure.that(channel.read(buffer)).eq(4000);
+    ensure.that(new String(buffer.array())).eq(content);
+  }
+
+  public void testAppendToCompressedContent() throws Exception {
+    String content = text(4000);
+    TFile file = factory.file("/tmp/log.txt").save(content);
+    waitIdle();
+    fileSystem.compressIdleContent();
+    OutputStream out = fileSystem.createOutputStream(file.toPath(), OutputMode.APPEND);
+    out.write("end".getBytes());
+    out.close();
+    ensure.that(file.load()).eq(content + "end");
+  }
+
+  public void testLeaveContentBeingWritten() throws Exception {
+    TFile file = factory.file("/tmp/log.txt").create();
+    OutputStream out = fileSystem.createOutputStream(file.toPath(), OutputMode.OVERWRITE);
+    out.write(text(4000).getBytes());
+    waitIdle();
+    ensure.that(fileSystem.compressIdleContent()).eq(0);
+    out.close();
+    ensure.that(fileSystem.compressIdleContent()).eq(1);
+  }
+
+  public void testLeaveRecentlyReadContent() throws Exception {
+    fileSystem.setCompressionIdleTime(60000);
+    factory.file("/tmp/log.txt").save(text(4000));
+    ensure.that(fileSystem.compressIdleContent()).eq(0);
+  }
+
+  public void testRejectOffHeapContent() throws Exception {
+    ensure.code(new CodeBlock() {
+      public void execute() throws Exception {
+        new InMemoryFileSystemBuilder().withCompressionIdleTime(1).withOffHeapContent(true).build();
+      }
+    }).throwsException(IllegalStateException.class);
+  }
+}
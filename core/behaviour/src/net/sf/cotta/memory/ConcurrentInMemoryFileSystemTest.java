@@ -0,0 +1,89 @@
+package net.sf.cotta.memory;
+
+import net.sf.cotta.TFile;
+import net.sf.cotta.io.OutputMode;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class ConcurrentInMemoryFileSystemTest extends InMemoryFileSystemTestBase {
+
+  @Override
+  protected InMemoryFileSystem createFileSystem() {
+    return new InMemoryFileSystemBuilder().withIndexType(InMemoryFileSystem.IndexType.CONCURRENT).build();
+  }
+
+  public void testSaveFilesFromManyThreads() throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      List<Future<Object>> futures = new ArrayList<Future<Object>>();
+      for (int i = 0; i < 8; i++) {
+        final int thread = i;
+        futures.add(executor.submit(new Callable<Object>() {
+          public Object call() throws Exception {
+            for (int j = 0; j < 100; j++) {
+              factory.file("/build/" + (j % 5) + "/" + thread + "-" + j + ".txt").save("content " + j);
+            }
+            return null;
+          }
+        }));
+      }
+      for (Future<Object> future : futures) {
+        future.get();
+      }
+    } finally {
+      executor.shutdown();
+    }
+    ensure.that(factory.dir("/build/3").listFiles().length).eq(8 * 20);
+    ensure.that(factory.file("/build/2/5-7.txt").load()).eq("content 7");
+  }
+
+  public void testReadWhileAnotherThreadWrites() throws Exception {
+    final TFile file = factory.file("/log.txt").save("");
+    final OutputStream output = fileSystem.createOutputStream(file.toPath(), OutputMode.APPEND);
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      Future<Object> writer = executor.submit(new Callable<Object>() {
+        public Object call() throws Exception {
+          byte[] line = "0123456789".getBytes();
+          for (int i = 0; i < 5000; i++) {
+            output.write(line);
+          }
+          return null;
+        }
+      });
+      List<Future<Object>> readers = new ArrayList<Future<Object>>();
+      for (int i = 0; i < 3; i++) {
+        readers.add(executor.submit(new Callable<Object>() {
+          public Object call() throws Exception {
+            for (int i = 0; i < 50; i++) {
+              InputStream input = fileSystem.createInputStream(file.toPath());
+              byte[] buffer = new byte[10];
+              int read;
+              while ((read = input.read(buffer)) != -1) {
+                if (read == 10 && buffer[9] != '9') {
+                  throw new IllegalStateException("torn read");
+                }
+              }
+              input.close();
+            }
+            return null;
+          }
+        }));
+      }
+      writer.get();
+      for (Future<Object> reader : readers) {
+        reader.get();
+      }
+    } finally {
+      executor.shutdown();
+    }
+    ensure.that(file.length()).eq(50000);
+  }
+}
@@ -0,0 +1,68 @@
+package net.sf.cotta.memory;
+
+import net.sf.cotta.TestCase;
+
+public class ContentStoreTest extends TestCase {
+  private ContentStore store = new ContentStore();
+
+  private PagedBuffer buffer(String content) {
+    return new PagedBuffer(0, 16, 16).append(content.getBytes());
+  }
+
+  public void testShareTheContentOfIdenticalBuffers() throws Exception {
+    PagedBuffer one = buffer("the same content over pages");
+    PagedBuffer two = buffer("the same content over pages");
+    store.intern(one);
+    store.intern(two);
+    ensure.that(store.size()).eq(1);
+    ensure.that(two.entry()).sameAs(one.entry());
+    ensure.that(one.entry().references()).eq(2);
+    ensure.that(two.toString()).eq("the same content over pages");
+  }
+
+  public void testKeepDifferentContentApart() throws Exception {
+    PagedBuffer one = buffer("one");
+    PagedBuffer two = buffer("two");
+    store.intern(one);
+    store.intern(two);
+    ensure.that(store.size()).eq(2);
+    ensure.that(one.entry()).notSameAs(two.entry());
+  }
+
+  public void testCopyPagesWhenBufferChanges() throws Exception {
+    PagedBuffer one = buffer("the same content over pages");
+    PagedBuffer two = buffer("the same content over pages");
+    store.intern(one);
+    store.intern(two);
+    two.write(0, java.nio.ByteBuffer.wrap("THE".getBytes()));
+    ensure.that(two.entry()).isNull();
+    ensure.that(one.entry().references()).eq(1);
+    ensure.that(one.toString()).eq("the same content over pages");
+    ensure.that(two.toString()).eq("THE same content over pages");
+  }
+
+  public void testRemoveEntryWhenLastBufferLetsGo() throws Exception {
+    PagedBuffer one = buffer("content");
+    PagedBuffer two = buffer("content");
+    store.intern(one);
+    store.intern(two);
+    one.detach();
+    ensure.that(store.size()).eq(1);
+    two.append((byte) '!');
+    ensure.that(store.size()).eq(0);
+    store.intern(buffer("content"));
+    ensure.that(store.size()).eq(1);
+  }
+
+  public void testCopyBySharingPages() throws Exception {
+    PagedBuffer source = buffer("copied content");
+    store.intern(source);
+    PagedBuffer target = new PagedBuffer(0, 16, 16);
+    store.copy(source, target);
+    ensure.that(target.toString()).eq("copied content");
+    ensure.that(target.entry()).sameAs(source.entry());
+    target.append((byte) '!');
+    ensure.that(source.toString()).eq("copied content");
+    ensure.that(target.toString()).eq("copied content!");
+  }
+}
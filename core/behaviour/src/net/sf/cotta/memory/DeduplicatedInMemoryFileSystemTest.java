@@ -0,0 +1,111 @@
+package net.sf.cotta.memory;
+
+import net.sf.cotta.TDirectory;
+import net.sf.cotta.TFile;
+import net.sf.cotta.TFileFactory;
+import net.sf.cotta.TPath;
+import net.sf.cotta.io.OutputMode;
+import net.sf.cotta.test.assertion.CodeBlock;
+
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+public class DeduplicatedInMemoryFileSystemTest extends InMemoryFileSystemTestBase {
+
+  @Override
+  protected InMemoryFileSystem createFileSystem() {
+    return new InMemoryFileSystemBuilder().withDeduplication(true).build();
+  }
+
+  public void testCopyFileAndChangeCopyAlone() throws Exception {
+    TFile source = factory.file("/tmp/source.txt").save("shared content");
+    TFile target = factory.file("/tmp/target.txt");
+    source.copyTo(target);
+    ensure.that(target.load()).eq("shared content");
+    target.save("changed");
+    ensure.that(source.load()).eq("shared content");
+    ensure.that(target.load()).eq("changed");
+  }
+
+  public void testWriteAfterTransferToChannel() throws Exception {
+    factory.file("/tmp/source.txt").save("hello world");
+    factory.file("/tmp/target.txt").create();
+    FileChannel source = fileSystem.createInputChannel(TPath.parse("/tmp/source.txt"));
+    FileChannel target = fileSystem.createOutputChannel(TPath.parse("/tmp/target.txt"), null);
+    ensure.that(source.transferTo(0, source.size(), target)).eq(11);
+    ensure.that(target.position()).eq(11);
+    target.write(ByteBuffer.wrap("!".getBytes()));
+    target.close();
+    source.close();
+    ensure.that(factory.file("/tmp/target.txt").load()).eq("hello world!");
+    ensure.that(factory.file("/tmp/source.txt").load()).eq("hello world");
+  }
+
+  public void testSharePagesWithChannelOfStream() throws Exception {
+    char[] chars = new char[100000];
+    Arrays.fill(chars, 'x');
+    String content = new String(chars);
+    factory.file("/tmp/source.txt").save(content);
+    long allocated = fileSystem.stats().allocatedBytes();
+    TPath target = TPath.parse("/tmp/target.txt");
+    OutputStream out = fileSystem.createOutputStream(target, OutputMode.OVERWRITE);
+    FileChannel channel = fileSystem.createOutputChannel(target, out);
+    FileChannel source = fileSystem.createInputChannel(TPath.parse("/tmp/source.txt"));
+    ensure.that(source.transferTo(0, source.size(), channel)).eq(100000);
+    ensure.that(fileSystem.stats().allocatedBytes()).eq(allocated);
+    source.close();
+    out.close();
+    ensure.that(fileSystem.stats().allocatedBytes()).eq(allocated);
+    ensure.that(factory.file(target).load()).eq(content);
+  }
+
+  public void testMergeDirectoryTree() throws Exception {
+    TDirectory source = factory.dir("/source");
+    source.file("one.txt").save("same");
+    source.dir("sub").file("two.txt").save("same");
+    TDirectory target = factory.dir("/target");
+    source.mergeTo(target);
+    ensure.that(target.file("one.txt").load()).eq("same");
+    ensure.that(target.dir("sub").file("two.txt").load()).eq("same");
+    source.file("one.txt").delete();
+    ensure.that(target.file("one.txt").load()).eq("same");
+  }
+
+  public void testKeepCountingLogicalBytes() throws Exception {
+    factory.file("/tmp/one.txt").save("12345");
+    factory.file("/tmp/two.txt").save("12345");
+    ensure.that(fileSystem.stats().contentBytes()).eq(10);
+  }
+
+  public void testCountSharedPagesOnce() throws Exception {
+    char[] chars = new char[100000];
+    Arrays.fill(chars, 'x');
+    String content = new String(chars);
+    InMemoryFileSystem plain = new InMemoryFileSystemBuilder().build();
+    TFileFactory plainFactory = new TFileFactory(plain);
+    for (int i = 0; i < 10; i++) {
+      factory.file("/tmp/" + i + ".txt").save(content);
+      plainFactory.file("/tmp/" + i + ".txt").save(content);
+    }
+    ensure.that(fileSystem.stats().contentBytes()).eq(1000000);
+    ensure.that(plain.stats().allocatedBytes() >= 1000000).isTrue();
+    ensure.that(fileSystem.stats().allocatedBytes() < 200000).isTrue();
+
+    factory.file("/tmp/0.txt").delete();
+    ensure.that(fileSystem.stats().allocatedBytes() > 0).isTrue();
+    for (int i = 1; i < 10; i++) {
+      factory.file("/tmp/" + i + ".txt").delete();
+    }
+    ensure.that(fileSystem.stats().allocatedBytes()).eq(0);
+  }
+
+  public void testRejectOffHeapContent() throws Exception {
+    ensure.code(new CodeBlock() {
+      public void execute() throws Exception {
+        new InMemoryFileSystemBuilder().withDeduplication(true).withOffHeapContent(true).build();
+      }
+    }).throwsException(IllegalArgumentException.class);
+  }
+}
@@ -1,5 +1,6 @@
 package net.sf.cotta.memory;
 
+import net.sf.cotta.EntryAttributes;
 import net.sf.cotta.PathContent;
 import net.sf.cotta.PathSeparator;
 import net.sf.cotta.TDirectory;
@@ -14,10 +15,13 @@ import net.sf.cotta.io.OutputMode;
 import net.sf.cotta.test.assertion.CodeBlock;
 import net.sf.cotta.utils.PlatformInfoUtil;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.Date;
 import java.util.List;
 
@@ -33,6 +37,17 @@ public abstract class InMemoryFileSystemTestBase extends TestCase {
 
   protected abstract InMemoryFileSystem createFileSystem();
 
+  /**
+   * Text of the length made of numbered lines, which compresses well
+   */
+  protected String text(int length) {
+    StringBuilder text = new StringBuilder();
+    while (text.length() < length) {
+      text.append("line ").append(text.length() % 97).append('\n');
+    }
+    return text.substring(0, length);
+  }
+
   public void testToUri() {
     URI uri = fileSystem.toUri(TPath.parse("/test"));
     ensure.that(uri.getPath()).eq("/test");
@@ -71,6 +86,47 @@ public abstract class InMemoryFileSystemTestBase extends TestCase {
     ensure.that(factory.dir("/tmp").exists()).eq(true);
   }
 
+  public void testReadStreamInBulk() throws Exception {
+    byte[] content = new byte[200000];
+    for (int i = 0; i < content.length; i++) {
+      content[i] = (byte) i;
+    }
+    TPath path = TPath.parse("/tmp/bulk.bin");
+    fileSystem.createDir(path.parent());
+    OutputStream output = fileSystem.createOutputStream(path, OutputMode.OVERWRITE);
+    output.write(content);
+    output.close();
+    InputStream input = fileSystem.createInputStream(path);
+    ensure.that(input.available()).eq(content.length);
+    byte[] read = new byte[100000];
+    ensure.that(input.read(read, 0, read.length)).eq(read.length);
+    ensure.that(read[99999]).eq((int) content[99999]);
+    ensure.that(input.skip(99990)).eq(99990);
+    input.mark(0);
+    ensure.that(input.read(read, 0, read.length)).eq(10);
+    ensure.that(read[9]).eq((int) content[199999]);
+    ensure.that(input.read(read, 0, read.length)).eq(-1);
+    ensure.that(input.skip(10)).eq(0);
+    input.reset();
+    ByteArrayOutputStream rest = new ByteArrayOutputStream();
+    ensure.that(((InMemoryFileContent.ContentInputStream) input).transferTo(rest)).eq(10);
+    ensure.that(rest.size()).eq(10);
+    ensure.that(input.available()).eq(0);
+    input.close();
+  }
+
+  public void testTakeAttributesSnapshot() throws Exception {
+    TFile file = factory.file("/tmp/one.txt").save("content");
+    EntryAttributes attributes = file.attributes();
+    ensure.that(attributes.isFile()).eq(true);
+    ensure.that(attributes.length()).eq(7);
+    ensure.that(attributes.lastModified()).eq(file.lastModified());
+    file.save("longer content");
+    ensure.that(attributes.length()).eq(7);
+    ensure.that(factory.dir("/tmp").attributes().isDirectory()).eq(true);
+    ensure.that(factory.file("/tmp/two.txt").attributes().exists()).eq(false);
+  }
+
   public void testListAllSubDirectoriesCreated() throws Exception {
     fileSystem.createDir(TPath.parse("/tmp/one"));
     fileSystem.createDir(TPath.parse("/tmp/two"));
@@ -382,6 +438,74 @@ public abstract class InMemoryFileSystemTestBase extends TestCase {
     ensure.that(inputStream.read()).eq(255);
   }
 
+  public void testWriteThroughOutputChannel() throws IOException {
+    TPath path = TPath.parse("/dir/a.txt");
+    fileSystem.createDir(path.parent());
+    fileSystem.createOutputStream(path, OutputMode.OVERWRITE).write("0123".getBytes());
+    OutputStream outputStream = fileSystem.createOutputStream(path, OutputMode.APPEND);
+    FileChannel channel = fileSystem.createOutputChannel(path, outputStream);
+    ensure.that(channel.position()).eq(4);
+    channel.write(ByteBuffer.wrap("45".getBytes()));
+    channel.write(ByteBuffer.wrap("ab".getBytes()), 1);
+    channel.close();
+    ensure.that(factory.file(path).load()).eq("0ab345");
+  }
+
+  public void testShareThePositionOfStreamAndChannel() throws IOException {
+    TPath path = TPath.parse("/dir/a.txt");
+    fileSystem.createDir(path.parent());
+    OutputStream outputStream = fileSystem.createOutputStream(path, OutputMode.OVERWRITE);
+    outputStream.write("abc".getBytes());
+    FileChannel channel = fileSystem.createOutputChannel(path, outputStream);
+    outputStream.write("def".getBytes());
+    ensure.that(channel.position()).eq(6);
+    channel.write(ByteBuffer.wrap("XYZ".getBytes()));
+    outputStream.write('!');
+    channel.position(1);
+    outputStream.write("B".getBytes());
+    ensure.that(channel.position()).eq(2);
+    outputStream.close();
+    ensure.that(factory.file(path).load()).eq("aBcdefXYZ!");
+  }
+
+  public void testKeepStatsAsFilesChange() throws IOException {
+    TFile file = factory.file("/tmp/one.txt").save("12345");
+    factory.file("/tmp/two.txt").save("123");
+    MemoryStats stats = fileSystem.stats();
+    ensure.that(stats.contentBytes()).eq(8);
+    ensure.that(stats.allocatedBytes() >= stats.contentBytes()).isTrue();
+    ensure.that(stats.slackBytes()).eq(stats.allocatedBytes() - stats.contentBytes());
+    ensure.that(stats.fileCount()).eq(2);
+    ensure.that(stats.directoryCount()).eq(1);
+
+    file.save("1");
+    ensure.that(fileSystem.stats().contentBytes()).eq(4);
+    file.delete();
+    ensure.that(fileSystem.stats().contentBytes()).eq(3);
+    ensure.that(fileSystem.stats().fileCount()).eq(1);
+  }
+
+  public void testFailWriteOverQuotaAsDiskFull() throws IOException {
+    fileSystem.setQuota(10);
+    final TFile file = factory.file("/tmp/one.txt").save("12345678");
+    ensure.code(new CodeBlock() {
+      public void execute() throws Exception {
+        file.save("123456789012");
+      }
+    }).throwsException(TIoException.class).message().contains("Disk is full");
+    file.save("1234567890");
+    ensure.that(fileSystem.stats().contentBytes()).eq(10);
+    ensure.that(fileSystem.stats().quota()).eq(10);
+    final FileChannel channel = fileSystem.createOutputChannel(file.toPath(), null);
+    ensure.code(new CodeBlock() {
+      public void execute() throws Exception {
+        channel.write(ByteBuffer.wrap("1".getBytes()));
+      }
+    }).throwsException(TIoException.class);
+    channel.write(ByteBuffer.wrap("ab".getBytes()), 0);
+    ensure.that(file.load()).eq("ab34567890");
+  }
+
   public void testCompareToComparesPath() {
     fileSystem = new InMemoryFileSystem();
     TPath a = TPath.parse("a");
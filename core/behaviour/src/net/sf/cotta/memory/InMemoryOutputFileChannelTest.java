@@ -2,14 +2,128 @@ package net.sf.cotta.memory;
 
 import net.sf.cotta.TestCase;
 
+import java.io.ByteArrayInputStream;
 import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 public class InMemoryOutputFileChannelTest extends TestCase {
   public void testWrite() throws Exception {
-    InMemoryOutputFileChannel channel = new InMemoryOutputFileChannel(new ByteArrayBuffer());
+    InMemoryOutputFileChannel channel = new InMemoryOutputFileChannel(new PagedBuffer());
     ByteBuffer buffer = ByteBuffer.allocate(4);
     buffer.put("test".getBytes()).rewind();
     channel.write(buffer);
     ensure.inMemoryOutput(channel).hasContent("test");
   }
+
+  public void testStartAtTheEndOfContent() throws Exception {
+    InMemoryOutputFileChannel channel = new InMemoryOutputFileChannel(new PagedBuffer("one".getBytes()));
+    ensure.that(channel.position()).eq(3);
+    channel.write(ByteBuffer.wrap("two".getBytes()));
+    ensure.that(channel.position()).eq(6);
+    ensure.that(channel.size()).eq(6);
+    ensure.inMemoryOutput(channel).hasContent("onetwo");
+  }
+
+  public void testWriteAndReadAtPosition() throws Exception {
+    InMemoryOutputFileChannel channel = new InMemoryOutputFileChannel(new PagedBuffer("0123456789".getBytes()));
+    ensure.that(channel.write(ByteBuffer.wrap("ab".getBytes()), 3)).eq(2);
+    ensure.that(channel.position()).eq(10);
+    ensure.inMemoryOutput(channel).hasContent("012ab56789");
+    ByteBuffer dst = ByteBuffer.allocate(4);
+    ensure.that(channel.read(dst, 2)).eq(4);
+    ensure.that(new String(dst.array())).eq("2ab5");
+    ensure.that(channel.read(ByteBuffer.allocate(1), 10)).eq(-1);
+  }
+
+  public void testFillGapWithZerosWhenWritingPastTheEnd() throws Exception {
+    InMemoryOutputFileChannel channel = new InMemoryOutputFileChannel(new PagedBuffer("ab".getBytes()));
+    channel.position(4).write(ByteBuffer.wrap("c".getBytes()));
+    ensure.that(channel.size()).eq(5);
+    ensure.that(channel.getContent().byteAt(3)).eq(0);
+    ensure.that(channel.getContent().byteAt(4)).eq((int) 'c');
+  }
+
+  public void testWriteFromManyThreadsWithoutLosingBytes() throws Exception {
+    final InMemoryOutputFileChannel channel = new InMemoryOutputFileChannel(new PagedBuffer());
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<Object>> futures = new ArrayList<Future<Object>>();
+      for (int i = 0; i < 4; i++) {
+        final byte record = (byte) ('a' + i);
+        futures.add(executor.submit(new Callable<Object>() {
+          public Object call() throws Exception {
+            for (int j = 0; j < 1000; j++) {
+              channel.write(ByteBuffer.wrap(new byte[]{record, record, record, record}));
+            }
+            return null;
+          }
+        }));
+      }
+      for (Future<Object> future : futures) {
+        future.get();
+      }
+    } finally {
+      executor.shutdown();
+    }
+    ensure.that(channel.size()).eq(4 * 1000 * 4);
+    ensure.that(channel.position()).eq(4 * 1000 * 4);
+    byte[] content = channel.getContent().toByteArray();
+    for (int i = 0; i < content.length; i += 4) {
+      ensure.that((int) content[i + 3]).eq((int) content[i]);
+    }
+  }
+
+  public void testTruncate() throws Exception {
+    InMemoryOutputFileChannel channel = new InMemoryOutputFileChannel(new PagedBuffer("0123456789".getBytes()));
+    ensure.that(channel.truncate(4).position()).eq(4);
+    ensure.inMemoryOutput(channel).hasContent("0123");
+    channel.position(1).truncate(20);
+    ensure.that(channel.size()).eq(4);
+    ensure.that(channel.position()).eq(1);
+  }
+
+  public void testGatherAndScatter() throws Exception {
+    InMemoryOutputFileChannel channel = new InMemoryOutputFileChannel(new PagedBuffer());
+    ByteBuffer[] srcs = new ByteBuffer[]{ByteBuffer.wrap("ab".getBytes()), ByteBuffer.wrap("cde".getBytes())};
+    ensure.that(channel.write(srcs)).eq(5);
+    channel.position(0);
+    ByteBuffer[] dsts = new ByteBuffer[]{ByteBuffer.allocate(3), ByteBuffer.allocate(3)};
+    ensure.that(channel.read(dsts)).eq(5);
+    ensure.that(new String(dsts[0].array())).eq("abc");
+    ensure.that(new String(dsts[1].array(), 0, 2)).eq("de");
+    ensure.that(channel.read(dsts)).eq(-1);
+  }
+
+  public void testTransferFromSource() throws Exception {
+    InMemoryOutputFileChannel channel = new InMemoryOutputFileChannel(new PagedBuffer("0123".getBytes()));
+    ensure.that(channel.transferFrom(Channels.newChannel(new ByteArrayInputStream("abcdef".getBytes())), 2, 3)).eq(3);
+    ensure.inMemoryOutput(channel).hasContent("01abc");
+    ensure.that(channel.position()).eq(4);
+    ensure.that(channel.transferFrom(Channels.newChannel(new ByteArrayInputStream("x".getBytes())), 9, 1)).eq(0);
+  }
+
+  public void testTransferToTarget() throws Exception {
+    InMemoryOutputFileChannel channel = new InMemoryOutputFileChannel(new PagedBuffer("0123456".getBytes()));
+    InMemoryOutputFileChannel target = new InMemoryOutputFileChannel(new PagedBuffer());
+    ensure.that(channel.transferTo(2, 3, target)).eq(3);
+    ensure.inMemoryOutput(target).hasContent("234");
+  }
+
+  public void testRejectOperationsWhenClosed() throws Exception {
+    InMemoryOutputFileChannel channel = new InMemoryOutputFileChannel(new PagedBuffer());
+    channel.close();
+    try {
+      channel.write(ByteBuffer.wrap("a".getBytes()));
+      fail("ClosedChannelException should have been thrown");
+    } catch (ClosedChannelException e) {
+      ensure.that(channel.getContent().size()).eq(0);
+    }
+  }
 }
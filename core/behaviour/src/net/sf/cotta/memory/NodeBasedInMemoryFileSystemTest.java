@@ -0,0 +1,9 @@
+package net.sf.cotta.memory;
+
+public class NodeBasedInMemoryFileSystemTest extends InMemoryFileSystemTestBase {
+
+  @Override
+  protected InMemoryFileSystem createFileSystem() {
+    return new InMemoryFileSystemBuilder().withIndexType(InMemoryFileSystem.IndexType.NODE_BASED).build();
+  }
+}
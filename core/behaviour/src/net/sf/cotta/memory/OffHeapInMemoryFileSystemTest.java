@@ -0,0 +1,60 @@
+package net.sf.cotta.memory;
+
+import net.sf.cotta.TFile;
+import net.sf.cotta.io.InputManager;
+import net.sf.cotta.io.InputProcessor;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+public class OffHeapInMemoryFileSystemTest extends InMemoryFileSystemTestBase {
+
+  @Override
+  protected InMemoryFileSystem createFileSystem() {
+    return new InMemoryFileSystemBuilder().withOffHeapContent(true).build();
+  }
+
+  public void testReadContentThroughChannel() throws Exception {
+    StringBuilder content = new StringBuilder();
+    for (int i = 0; i < 100000; i++) {
+      content.append((char) ('a' + i % 26));
+    }
+    final String expected = content.toString();
+    TFile file = factory.file("/tmp/large.txt").save(expected);
+    ensure.that(file.length()).eq(expected.length());
+    file.read(new InputProcessor() {
+      public void process(InputManager inputManager) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(expected.length());
+        while (buffer.hasRemaining() && inputManager.channel().read(buffer) > 0) {
+        }
+        buffer.flip();
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        ensure.that(new String(bytes)).eq(expected);
+      }
+    });
+  }
+
+  public void testSeeReleasedContentAsEmpty() throws Exception {
+    TFile file = factory.file("/tmp/one.txt").save("content");
+    FileChannel overwritten = fileSystem.createInputChannel(file.toPath());
+    file.save("other");
+    ensure.that(overwritten.size()).eq(0);
+    ensure.that(file.load()).eq("other");
+    FileChannel deleted = fileSystem.createInputChannel(file.toPath());
+    file.delete();
+    ensure.that(deleted.size()).eq(0);
+  }
+
+  public void testReuseFreedPages() throws Exception {
+    SlabAllocator allocator = new SlabAllocator(1024);
+    ByteBuffer page = allocator.allocate(100);
+    ensure.that(page.capacity()).eq(128);
+    ensure.that(page.isDirect()).eq(true);
+    allocator.free(page);
+    ensure.that(allocator.allocate(120)).sameAs(page);
+    ensure.that(allocator.allocate(2048).capacity()).eq(2048);
+    ensure.that(allocator.slabBytes()).eq(1024);
+  }
+}
@@ -0,0 +1,136 @@
+package net.sf.cotta.memory;
+
+import net.sf.cotta.ByteArrayIndexOutOfBoundsException;
+import net.sf.cotta.TestCase;
+
+import java.nio.ByteBuffer;
+
+public class PagedBufferTest extends TestCase {
+  private byte[] bytes(int count) {
+    byte[] bytes = new byte[count];
+    for (int i = 0; i < count; i++) {
+      bytes[i] = (byte) i;
+    }
+    return bytes;
+  }
+
+  public void testAppendAcrossPages() throws Exception {
+    PagedBuffer buffer = new PagedBuffer(0, 1, 8);
+    buffer.append((byte) 0);
+    buffer.append(bytes(20), 1, 19);
+    ensure.that(buffer.size()).eq(20);
+    ensure.that(buffer.toByteArray()).eq(bytes(20));
+    ensure.that(buffer.byteAt(17)).eq(17);
+  }
+
+  public void testRoundPageSizeUpToPowerOfTwo() throws Exception {
+    PagedBuffer buffer = new PagedBuffer(3, 2, 5);
+    buffer.append(bytes(30));
+    ensure.that(buffer.toByteArray()).eq(bytes(30));
+  }
+
+  public void testGetBytesFromAnyPosition() throws Exception {
+    PagedBuffer buffer = new PagedBuffer(bytes(20));
+    byte[] target = new byte[10];
+    ensure.that(buffer.get(15, target, 2, 8)).eq(5);
+    ensure.that(target[2]).eq(15);
+    ensure.that(target[6]).eq(19);
+    ensure.that(buffer.get(20, target, 0, 8)).eq(0);
+  }
+
+  public void testCopyFromAndToByteBuffers() throws Exception {
+    PagedBuffer buffer = new PagedBuffer(0, 4, 8);
+    ensure.that(buffer.copyFrom(ByteBuffer.wrap(bytes(20)))).eq(20);
+    ByteBuffer target = ByteBuffer.allocate(12);
+    ensure.that(buffer.copyTo(target, 6, 12)).eq(12);
+    ensure.that(target.get(0)).eq(6);
+    ensure.that(target.get(11)).eq(17);
+    ensure.that(buffer.copyTo(ByteBuffer.allocate(5), 30, 5)).eq(0);
+  }
+
+  public void testCopyToChannel() throws Exception {
+    PagedBuffer buffer = new PagedBuffer(0, 4, 8);
+    buffer.append(bytes(20));
+    PagedBuffer target = new PagedBuffer();
+    ensure.that(buffer.copyTo(new InMemoryOutputFileChannel(target), 3, 100)).eq(17);
+    ensure.that(target.byteAt(0)).eq(3);
+    ensure.that(target.size()).eq(17);
+  }
+
+  public void testWriteAcrossPagesAndPastTheEnd() throws Exception {
+    PagedBuffer buffer = new PagedBuffer(0, 4, 8);
+    buffer.append(bytes(10));
+    ensure.that(buffer.write(6, ByteBuffer.wrap(new byte[]{60, 70, 80, 90, 100, 110}))).eq(6);
+    ensure.that(buffer.size()).eq(12);
+    ensure.that(buffer.byteAt(5)).eq(5);
+    ensure.that(buffer.byteAt(8)).eq(80);
+    ensure.that(buffer.byteAt(11)).eq(110);
+    buffer.write(20, ByteBuffer.wrap(new byte[]{1}));
+    ensure.that(buffer.size()).eq(21);
+    ensure.that(buffer.byteAt(15)).eq(0);
+    ensure.that(buffer.byteAt(20)).eq(1);
+  }
+
+  public void testTruncateAndAppendAgain() throws Exception {
+    PagedBuffer buffer = new PagedBuffer(0, 4, 8);
+    buffer.append(bytes(20));
+    buffer.truncate(30);
+    ensure.that(buffer.size()).eq(20);
+    buffer.truncate(8);
+    ensure.that(buffer.size()).eq(8);
+    buffer.append((byte) 99);
+    ensure.that(buffer.byteAt(7)).eq(7);
+    ensure.that(buffer.byteAt(8)).eq(99);
+    buffer.append(bytes(6)).truncate(10);
+    buffer.write(13, ByteBuffer.wrap(new byte[]{1}));
+    ensure.that(buffer.byteAt(11)).eq(0);
+    buffer.truncate(0);
+    ensure.that(buffer.toByteArray().length).eq(0);
+  }
+
+  public void testSharePagesUntilChanged() throws Exception {
+    PagedBuffer buffer = new PagedBuffer(0, 4, 8);
+    buffer.append(bytes(12));
+    PagedBuffer copy = buffer.share();
+    copy.write(1, ByteBuffer.wrap(new byte[]{50}));
+    copy.append((byte) 60);
+    buffer.truncate(4);
+    ensure.that(buffer.size()).eq(4);
+    ensure.that(buffer.byteAt(1)).eq(1);
+    ensure.that(copy.size()).eq(13);
+    ensure.that(copy.byteAt(1)).eq(50);
+    ensure.that(copy.byteAt(11)).eq(11);
+    ensure.that(copy.byteAt(12)).eq(60);
+    buffer.append((byte) 70);
+    ensure.that(copy.byteAt(4)).eq(4);
+  }
+
+  public void testKeepSharedPagesFromAllocator() throws Exception {
+    SlabAllocator allocator = new SlabAllocator(64);
+    PagedBuffer buffer = new PagedBuffer(0, 16, 16, allocator);
+    buffer.append(bytes(32));
+    PagedBuffer copy = buffer.share();
+    buffer.release();
+    new PagedBuffer(0, 16, 16, allocator).append(new byte[32]);
+    ensure.that(copy.byteAt(31)).eq(31);
+  }
+
+  public void testThrowExceptionWithPositionAndBound() throws Exception {
+    PagedBuffer buffer = new PagedBuffer();
+    buffer.append((byte) 3);
+    try {
+      buffer.byteAt(5);
+      fail("ByteArrayIndexOutOfBoundsException should have been thrown");
+    } catch (ByteArrayIndexOutOfBoundsException e) {
+      ensure.that(e.getPosition()).eq(5);
+      ensure.that(e.getBound()).eq(1);
+    }
+  }
+
+  public void testConvertToStringWithCharset() throws Exception {
+    PagedBuffer buffer = new PagedBuffer();
+    buffer.append("\u00e9t\u00e9", "UTF-8");
+    ensure.that(buffer.size()).eq(5);
+    ensure.that(buffer.toString("UTF-8")).eq("\u00e9t\u00e9");
+  }
+}
@@ -0,0 +1,163 @@
+package net.sf.cotta.memory;
+
+import net.sf.cotta.TFile;
+import net.sf.cotta.io.OutputMode;
+import net.sf.cotta.test.assertion.CodeBlock;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+
+public class SpilledInMemoryFileSystemTest extends InMemoryFileSystemTestBase {
+  private static final int BUDGET = 4 * PagedBuffer.DEFAULT_PAGE_SIZE;
+  private File spillDirectory;
+
+  @Override
+  public void beforeMethod() throws Exception {
+    spillDirectory = Files.createTempDirectory("cotta-spill").toFile();
+    super.beforeMethod();
+  }
+
+  @Override
+  protected InMemoryFileSystem createFileSystem() {
+    return new InMemoryFileSystemBuilder().withMemoryBudget(BUDGET, spillDirectory).build();
+  }
+
+  @Override
+  public void afterMethod() throws Exception {
+    File[] files = spillDirectory.listFiles();
+    if (files != null) {
+      for (File file : files) {
+        file.delete();
+      }
+    }
+    spillDirectory.delete();
+    super.afterMethod();
+  }
+
+  private int spillFileCount() {
+    File[] files = spillDirectory.listFiles();
+    return files == null ? 0 : files.length;
+  }
+
+  public void testSpillIdleContentToMakeRoom() throws Exception {
+    String large = text(200000);
+    String small = text(100000);
+    TFile first = factory.file("/tmp/large.txt").save(large);
+    TFile second = factory.file("/tmp/small.txt").save(small);
+    MemoryStats stats = fileSystem.stats();
+    ensure.that(stats.spilledBytes()).eq(200000);
+    ensure.that(stats.allocatedBytes() <= BUDGET).eq(true);
+    ensure.that(spillFileCount()).eq(1);
+    ensure.that(first.length()).eq(200000);
+    ensure.that(first.load()).eq(large);
+    ensure.that(second.load()).eq(small);
+  }
+
+  public void testWriteToDiskWhenNothingElseCanSpill() throws Exception {
+    String content = text(600000);
+    TFile file = factory.file("/tmp/log.txt").save(content);
+    ensure.that(fileSystem.stats().spilledBytes()).eq(600000);
+    ensure.that(fileSystem.stats().allocatedBytes() <= BUDGET).eq(true);
+    ensure.that(file.load()).eq(content);
+  }
+
+  public void testReadSpilledContentThroughChannel() throws Exception {
+    String content = text(600000);
+    TFile file = factory.file("/tmp/log.txt").save(content);
+    FileChannel channel = fileSystem.createInputChannel(file.toPath());
+    ByteBuffer buffer = ByteBuffer.allocate(600000);
+    while (buffer.hasRemaining() && channel.read(buffer) > 0) {
+    }
+    channel.close();
+    ensure.that(new String(buffer.array())).eq(content);
+  }
+
+  public void testReadSpilledContentBackWhenThereIsRoom() throws Exception {
+    String large = text(200000);
+    TFile first = factory.file("/tmp/large.txt").save(large);
+    factory.file("/tmp/small.txt").save(text(100000)).delete();
+    ensure.that(fileSystem.stats().spilledBytes()).eq(200000);
+    ensure.that(first.load()).eq(large);
+    ensure.that(fileSystem.stats().spilledBytes()).eq(0);
+    ensure.that(fileSystem.stats().contentBytes()).eq(200000);
+    ensure.that(spillFileCount()).eq(0);
+  }
+
+  public void testDeleteSpillFileWithTheFile() throws Exception {
+    TFile file = factory.file("/tmp/log.txt").save(text(600000));
+    ensure.that(spillFileCount()).eq(1);
+    file.delete();
+    ensure.that(spillFileCount()).eq(0);
+    ensure.that(fileSystem.stats().spilledBytes()).eq(0);
+  }
+
+  public void testAppendToSpilledContent() throws Exception {
+    String content = text(600000);
+    TFile file = factory.file("/tmp/log.txt").save(content);
+    OutputStream out = fileSystem.createOutputStream(file.toPath(), OutputMode.APPEND);
+    out.write("end".getBytes());
+    out.close();
+    ensure.that(fileSystem.stats().spilledBytes()).eq(600003);
+    ensure.that(file.load()).eq(content + "end");
+  }
+
+  public void testCopySpilledContent() throws Exception {
+    String content = text(600000);
+    TFile file = factory.file("/tmp/log.txt").save(content);
+    TFile copy = factory.file("/tmp/copy.txt");
+    file.copyTo(copy);
+    ensure.that(copy.load()).eq(content);
+    ensure.that(file.load()).eq(content);
+  }
+
+  public void testShareThePositionOfSpilledStreamAndChannel() throws Exception {
+    String content = text(600000);
+    TFile file = factory.file("/tmp/log.txt").save("");
+    OutputStream out = fileSystem.createOutputStream(file.toPath(), OutputMode.OVERWRITE);
+    out.write(content.getBytes());
+    FileChannel channel = fileSystem.createOutputChannel(file.toPath(), out);
+    out.write("def".getBytes());
+    ensure.that(channel.position()).eq(600003);
+    channel.write(ByteBuffer.wrap("XYZ".getBytes()));
+    out.close();
+    ensure.that(file.load()).eq(content + "defXYZ");
+  }
+
+  public void testKeepReadingContentSpilledMeanwhile() throws Exception {
+    String content = text(200000);
+    TFile file = factory.file("/tmp/large.txt").save(content);
+    InputStream in = fileSystem.createInputStream(file.toPath());
+    byte[] start = new byte[100];
+    ensure.that(in.read(start)).eq(100);
+    factory.file("/tmp/other.txt").save(text(200000));
+    ensure.that(fileSystem.stats().spilledBytes()).eq(200000);
+    ByteArrayOutputStream rest = new ByteArrayOutputStream();
+    byte[] chunk = new byte[8192];
+    for (int read = in.read(chunk); read > 0; read = in.read(chunk)) {
+      rest.write(chunk, 0, read);
+    }
+    in.close();
+    ensure.that(new String(start) + rest.toString()).eq(content);
+  }
+
+  public void testRejectOffHeapContent() throws Exception {
+    ensure.code(new CodeBlock() {
+      public void execute() throws Exception {
+        new InMemoryFileSystemBuilder().withMemoryBudget(BUDGET, spillDirectory).withOffHeapContent(true).build();
+      }
+    }).throwsException(IllegalStateException.class);
+  }
+
+  public void testRejectBudgetWithoutDirectory() throws Exception {
+    ensure.code(new CodeBlock() {
+      public void execute() throws Exception {
+        new InMemoryFileSystemBuilder().withMemoryBudget(BUDGET, null).build();
+      }
+    }).throwsException(IllegalArgumentException.class);
+  }
+}
@@ -1,9 +1,108 @@
 package net.sf.cotta.memory;
 
+import net.sf.cotta.TFile;
+import net.sf.cotta.TFileFactory;
+import net.sf.cotta.io.OutputMode;
+import net.sf.cotta.test.assertion.CodeBlock;
+
+import java.io.OutputStream;
+
 public class TreeBasedInMemoryFileSystemTest extends InMemoryFileSystemTestBase {
 
   @Override
   protected InMemoryFileSystem createFileSystem() {
     return new InMemoryFileSystemBuilder().withIndexType(InMemoryFileSystem.IndexType.TREE_BASED).build();
   }
+
+  public void testRestoreSnapshotWithFileContent() throws Exception {
+    TFile file = factory.file("/fixture/data.txt").save("original");
+    factory.file("/fixture/other.txt").save("other");
+    InMemoryFileSystem.Snapshot snapshot = fileSystem.snapshot();
+
+    file.save("changed");
+    append(file, "!");
+    factory.file("/fixture/other.txt").delete();
+    factory.file("/fixture/new.txt").save("new");
+    ensure.that(file.load()).eq("changed!");
+
+    fileSystem.restore(snapshot);
+    ensure.that(file.load()).eq("original");
+    ensure.that(factory.file("/fixture/other.txt").load()).eq("other");
+    ensure.that(factory.file("/fixture/new.txt").exists()).isFalse();
+
+    append(file, " again");
+    fileSystem.restore(snapshot);
+    ensure.that(file.load()).eq("original");
+  }
+
+  public void testCountContentCompressedAfterSnapshotOnRestore() throws Exception {
+    fileSystem.setCompressionIdleTime(60000);
+    String content = text(4002);
+    TFile file = factory.file("/fixture/data.txt").save(content);
+    InMemoryFileSystem.Snapshot snapshot = fileSystem.snapshot();
+    fileSystem.setCompressionIdleTime(0);
+    ensure.that(fileSystem.compressIdleContent()).eq(1);
+
+    fileSystem.restore(snapshot);
+    ensure.that(fileSystem.stats().compressedContentBytes()).eq(4002);
+    ensure.that(file.load()).eq(content);
+    ensure.that(fileSystem.stats().contentBytes()).eq(4002);
+    ensure.that(fileSystem.stats().compressedContentBytes()).eq(0);
+  }
+
+  public void testReleaseOffHeapContentCreatedSinceSnapshotOnRestore() throws Exception {
+    InMemoryFileSystem offHeap = new InMemoryFileSystemBuilder()
+        .withIndexType(InMemoryFileSystem.IndexType.TREE_BASED).withOffHeapContent(true).build();
+    TFileFactory offHeapFactory = new TFileFactory(offHeap);
+    offHeapFactory.file("/fixture/data.txt").save(text(200000));
+    InMemoryFileSystem.Snapshot snapshot = offHeap.snapshot();
+    offHeapFactory.file("/fixture/run.txt").save(text(200000));
+    offHeap.restore(snapshot);
+    long slabBytes = offHeap.stats().offHeapBytes();
+    for (int i = 0; i < 50; i++) {
+      offHeapFactory.file("/fixture/run.txt").save(text(200000));
+      offHeapFactory.file("/fixture/data.txt").save(text(200000));
+      offHeap.restore(snapshot);
+    }
+    ensure.that(offHeap.stats().offHeapBytes()).eq(slabBytes);
+    ensure.that(offHeapFactory.file("/fixture/data.txt").load()).eq(text(200000));
+  }
+
+  public void testReleaseStoredContentCreatedSinceSnapshotOnRestore() throws Exception {
+    InMemoryFileSystem deduplicated = new InMemoryFileSystemBuilder()
+        .withIndexType(InMemoryFileSystem.IndexType.TREE_BASED).withDeduplication(true).build();
+    TFileFactory deduplicatedFactory = new TFileFactory(deduplicated);
+    deduplicatedFactory.file("/fixture/data.txt").save("fixture");
+    InMemoryFileSystem.Snapshot snapshot = deduplicated.snapshot();
+    for (int i = 0; i < 100; i++) {
+      deduplicatedFactory.file("/fixture/run.txt").save("run " + i);
+      deduplicated.restore(snapshot);
+    }
+    ensure.that(deduplicated.storedContentCount()).eq(1);
+  }
+
+  public void testKeepContentOfLaterSnapshotOnRestore() throws Exception {
+    InMemoryFileSystem.Snapshot first = fileSystem.snapshot();
+    factory.file("/fixture/data.txt").save("second");
+    InMemoryFileSystem.Snapshot second = fileSystem.snapshot();
+    fileSystem.restore(first);
+    ensure.that(factory.file("/fixture/data.txt").exists()).isFalse();
+    fileSystem.restore(second);
+    ensure.that(factory.file("/fixture/data.txt").load()).eq("second");
+  }
+
+  private void append(TFile file, String content) throws Exception {
+    OutputStream stream = fileSystem.createOutputStream(file.toPath(), OutputMode.APPEND);
+    stream.write(content.getBytes());
+    stream.close();
+  }
+
+  public void testRejectSnapshotOfHashBasedIndex() throws Exception {
+    final InMemoryFileSystem hashBased = new InMemoryFileSystem();
+    ensure.code(new CodeBlock() {
+      public void execute() throws Exception {
+        hashBased.snapshot();
+      }
+    }).throwsException(UnsupportedOperationException.class);
+  }
 }
@@ -0,0 +1,11 @@
+package net.sf.cotta.physical;
+
+import net.sf.cotta.ControlledFileSystem;
+import net.sf.cotta.TPath;
+import net.sf.cotta.system.FileSystem;
+
+public class NioFileSystemTest extends PhysicalFileSystemTest {
+  protected FileSystem fileSystem() {
+    return ControlledFileSystem.pathControlledFileSystem(NioFileSystem.instance, TPath.parse("tmp"));
+  }
+}
@@ -1,14 +1,20 @@
 package net.sf.cotta.physical;
 
 import net.sf.cotta.*;
+import net.sf.cotta.io.MappedContent;
+import net.sf.cotta.io.MappedProcessor;
 import net.sf.cotta.io.OutputMode;
+import net.sf.cotta.memory.InMemoryFileSystem;
+import net.sf.cotta.system.ListingHandler;
 import net.sf.cotta.test.assertion.CodeBlock;
 import net.sf.cotta.utils.PlatformInfoUtil;
 
 import java.io.File;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
 
 public class PhysicalFileSystemTest extends PhysicalFileSystemTestCase {
 
@@ -165,6 +171,19 @@ public class PhysicalFileSystemTest extends PhysicalFileSystemTestCase {
     ensure.that(fileSystem.fileLastModified(path) / 1000).ge(timeBeforeCreation.getTime() / 1000);
   }
 
+  public void testGetAttributes() throws TIoException {
+    TPath path = TPath.parse("tmp/source.txt");
+    String content = "my content";
+    new TFile(new TFileFactory(fileSystem), path).save(content);
+    EntryAttributes attributes = fileSystem.attributes(path);
+    ensure.that(attributes.isFile()).eq(true);
+    ensure.that(attributes.isDirectory()).eq(false);
+    ensure.that(attributes.length()).eq(content.getBytes().length);
+    ensure.that(attributes.lastModified()).eq(fileSystem.fileLastModified(path));
+    ensure.that(fileSystem.attributes(path.parent()).isDirectory()).eq(true);
+    ensure.that(fileSystem.attributes(TPath.parse("tmp/missing.txt"))).eq(EntryAttributes.MISSING);
+  }
+
   public void testThrowExceptionInCaseListReturnsNull() throws Exception {
     final TPath path = TPath.parse("tmp/directory");
     ensure.code(new CodeBlock() {
@@ -174,6 +193,79 @@ public class PhysicalFileSystemTest extends PhysicalFileSystemTestCase {
     }).throwsException(TIoException.class);
   }
 
+  public void testListingThrowsExceptionIfPathIsFile() throws TIoException {
+    final TPath path = TPath.parse("tmp/test.txt");
+    fileSystem.createDir(path.parent());
+    fileSystem.createFile(path);
+    ensure.code(new CodeBlock() {
+      public void execute() throws Exception {
+        fileSystem.list(path);
+      }
+    }).throwsException(TIoException.class);
+  }
+
+  public void testStreamEntriesWithAttributes() throws TIoException {
+    TPath directory = TPath.parse("tmp");
+    fileSystem.createDir(directory.join("sub"));
+    new TFile(new TFileFactory(fileSystem), directory.join("one.txt")).save("one");
+    final List<TPath> dirs = new ArrayList<TPath>();
+    final List<TPath> files = new ArrayList<TPath>();
+    PhysicalFileSystem.instance.list(directory, new ListingHandler() {
+      public void entry(TPath path, EntryAttributes attributes) {
+        if (attributes.isDirectory()) {
+          dirs.add(path);
+        } else {
+          ensure.that(attributes.length()).eq(3);
+          files.add(path);
+        }
+      }
+    });
+    ensure.that(dirs).eq(directory.join("sub"));
+    ensure.that(files).eq(directory.join("one.txt"));
+  }
+
+  public void testCopyBetweenChannels() throws Exception {
+    byte[] content = new byte[300 * 1024 + 7];
+    for (int i = 0; i < content.length; i++) {
+      content[i] = (byte) i;
+    }
+    TFileFactory factory = new TFileFactory(fileSystem);
+    TFile source = factory.file("tmp/source.bin");
+    OutputStream stream = source.outputStream(OutputMode.OVERWRITE);
+    stream.write(content);
+    stream.close();
+    TFile dest = factory.file("tmp/dest.bin");
+    source.copyTo(dest);
+    ensure.that(dest.length()).eq(content.length);
+    TFile memory = new TFileFactory(new InMemoryFileSystem()).file("/memory.bin");
+    source.copyTo(memory);
+    ensure.that(memory.length()).eq(content.length);
+    TFile back = factory.file("tmp/back.bin");
+    memory.copyTo(back);
+    ensure.that(back.length()).eq(content.length);
+    ensure.that(back.load()).eq(source.load());
+  }
+
+  public void testMapFile() throws Exception {
+    TFile file = new TFileFactory(fileSystem).file("tmp/mapped.txt").save("0123456789");
+    final MappedContent[] mapped = new MappedContent[1];
+    file.map(new MappedProcessor() {
+      public void process(MappedContent content) throws IOException {
+        ensure.that(content.isMapped()).eq(true);
+        ensure.that(content.slice(2, 3).get(0)).eq((int) '2');
+        mapped[0] = content;
+      }
+    });
+    try {
+      mapped[0].get(0);
+      fail("IllegalStateException should have been thrown");
+    } catch (IllegalStateException e) {
+      ensure.that(e).message().contains("closed");
+    }
+    file.delete();
+    ensure.that(file.exists()).eq(false);
+  }
+
   public void testGetJavaFile() {
     File file = new File("./test/test");
     ensure.that(fileSystem.toJavaFile(TPath.parse("test/test"))).eq(file);
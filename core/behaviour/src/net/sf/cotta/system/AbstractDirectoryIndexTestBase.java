@@ -45,6 +45,26 @@ public abstract class AbstractDirectoryIndexTestBase extends TestCase {
     ensure.that(dirIndex.fileExists(path)).isTrue();
   }
 
+  public void testCountFilesAndDirs() throws Exception {
+    DirectoryIndex<DummyFileContent> dirIndex = newDirectoryIndexWithSort();
+    ensure.that(dirIndex.fileCount()).eq(0);
+    ensure.that(dirIndex.dirCount()).eq(0);
+
+    dirIndex.createDir(TPath.parse("/one/two"));
+    dirIndex.createFile(TPath.parse("/one/a.txt"));
+    dirIndex.createFile(TPath.parse("/one/a.txt"));
+    dirIndex.createFile(TPath.parse("/one/two/b.txt"));
+    ensure.that(dirIndex.dirCount()).eq(2);
+    ensure.that(dirIndex.fileCount()).eq(2);
+
+    dirIndex.moveFile(TPath.parse("/one/two/b.txt"), TPath.parse("/one/a.txt"));
+    ensure.that(dirIndex.fileCount()).eq(1);
+    dirIndex.deleteFile(TPath.parse("/one/a.txt"));
+    dirIndex.deleteDir(TPath.parse("/one/two"));
+    ensure.that(dirIndex.fileCount()).eq(0);
+    ensure.that(dirIndex.dirCount()).eq(1);
+  }
+
   public void testCreateDir() throws Exception {
     DirectoryIndex<DummyFileContent> dirIndex = newDirectoryIndexWithSort();
 
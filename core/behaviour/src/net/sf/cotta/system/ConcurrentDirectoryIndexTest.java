@@ -0,0 +1,103 @@
+package net.sf.cotta.system;
+
+import net.sf.cotta.PathSeparator;
+import net.sf.cotta.TIoException;
+import net.sf.cotta.TPath;
+import net.sf.cotta.memory.ListingOrder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class ConcurrentDirectoryIndexTest extends AbstractDirectoryIndexTestBase {
+
+  @Override
+  protected DirectoryIndex<DummyFileContent> newDirectoryIndexWithSort() {
+    return new ConcurrentDirectoryIndex<DummyFileContent>(PathSeparator.Unix, ListingOrder.AToZ, new DummyContentManager(), false);
+  }
+
+  public void testCreateAndDeleteFromManyThreads() throws Exception {
+    final DirectoryIndex<DummyFileContent> dirIndex = newDirectoryIndexWithSort();
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      List<Future<Object>> futures = new ArrayList<Future<Object>>();
+      for (int i = 0; i < 8; i++) {
+        final int thread = i;
+        futures.add(executor.submit(new Callable<Object>() {
+          public Object call() throws Exception {
+            for (int j = 0; j < 200; j++) {
+              TPath shared = TPath.parse("/shared/" + (j % 10) + "/" + thread + "-" + j);
+              ensureDir(dirIndex, shared.parent());
+              dirIndex.createFile(shared);
+              TPath own = TPath.parse("/own/" + thread + "/" + j);
+              ensureDir(dirIndex, own.parent());
+              dirIndex.createFile(own);
+              if (j % 2 == 0) {
+                dirIndex.deleteFile(own);
+              }
+            }
+            return null;
+          }
+        }));
+      }
+      for (Future<Object> future : futures) {
+        future.get();
+      }
+    } finally {
+      executor.shutdown();
+    }
+    int shared = 0;
+    for (TPath dir : dirIndex.list(TPath.parse("/shared")).dirs()) {
+      shared += dirIndex.list(dir).files().size();
+    }
+    ensure.that(shared).eq(8 * 200);
+    ensure.that(dirIndex.list(TPath.parse("/own")).dirs().size()).eq(8);
+    ensure.that(dirIndex.list(TPath.parse("/own/3")).files().size()).eq(100);
+  }
+
+  public void testMoveDirWhileAnotherThreadCreatesFilesInIt() throws Exception {
+    final DirectoryIndex<DummyFileContent> dirIndex = newDirectoryIndexWithSort();
+    dirIndex.createDir(TPath.parse("/source/sub"));
+    final CountDownLatch started = new CountDownLatch(50);
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      Future<Integer> created = executor.submit(new Callable<Integer>() {
+        public Integer call() throws Exception {
+          int count = 0;
+          try {
+            while (true) {
+              dirIndex.createFile(TPath.parse("/source/sub/" + count));
+              count++;
+              started.countDown();
+            }
+          } catch (TIoException e) {
+            return count;
+          }
+        }
+      });
+      started.await();
+      dirIndex.moveDir(TPath.parse("/source"), TPath.parse("/target"));
+      ensure.that(dirIndex.list(TPath.parse("/target/sub")).files().size()).eq(created.get());
+      ensure.that(dirIndex.dirExists(TPath.parse("/source"))).eq(false);
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  private static void ensureDir(DirectoryIndex<DummyFileContent> dirIndex, TPath dir) throws TIoException {
+    if (!dirIndex.dirExists(dir)) {
+      dirIndex.createDir(dir);
+    }
+  }
+
+  public void testCreateMissingParentsAndListMissingDirAsEmpty() throws Exception {
+    DirectoryIndex<DummyFileContent> dirIndex = newDirectoryIndexWithSort();
+    dirIndex.createDir(TPath.parse("/one/two"));
+    ensure.that(dirIndex.dirExists(TPath.parse("/one"))).isTrue();
+    ensure.that(dirIndex.list(TPath.parse("/missing")).dirs().isEmpty()).isTrue();
+  }
+}
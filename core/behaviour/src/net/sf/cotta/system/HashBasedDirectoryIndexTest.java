@@ -1,12 +1,26 @@
 package net.sf.cotta.system;
 
 import net.sf.cotta.PathSeparator;
+import net.sf.cotta.TPath;
 import net.sf.cotta.memory.ListingOrder;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
 public class HashBasedDirectoryIndexTest extends AbstractDirectoryIndexTestBase {
 
   @Override
   protected DirectoryIndex<DummyFileContent> newDirectoryIndexWithSort() {
     return new HashBasedDirectoryIndex<DummyFileContent>(PathSeparator.Unix, ListingOrder.AToZ, new DummyContentManager());
   }
+
+  public void testJoinNamesToTheListedDirectory() throws Exception {
+    Set<String> dirs = new HashSet<String>(Arrays.asList("sub"));
+    HashBasedDirectoryIndex.DirectoryContent content = new HashBasedDirectoryIndex.DirectoryContent(dirs, new HashSet<String>());
+    content.addFile(TPath.parse("/one/file.txt"));
+    ensure.that(new ArrayList<TPath>(content.dirs(TPath.parse("/two")))).eq(TPath.parse("/two/sub"));
+    ensure.that(new ArrayList<TPath>(content.files(TPath.parse("/two")))).eq(TPath.parse("/two/file.txt"));
+  }
 }
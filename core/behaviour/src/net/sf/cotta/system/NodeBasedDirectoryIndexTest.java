@@ -0,0 +1,47 @@
+package net.sf.cotta.system;
+
+import net.sf.cotta.PathSeparator;
+import net.sf.cotta.TIoException;
+import net.sf.cotta.TPath;
+import net.sf.cotta.memory.ListingOrder;
+import net.sf.cotta.test.assertion.CodeBlock;
+
+public class NodeBasedDirectoryIndexTest extends AbstractDirectoryIndexTestBase {
+
+  @Override
+  protected DirectoryIndex<DummyFileContent> newDirectoryIndexWithSort() {
+    return new NodeBasedDirectoryIndex<DummyFileContent>(PathSeparator.Unix, ListingOrder.AToZ, new DummyContentManager());
+  }
+
+  public void testMoveDirWithItsSubtree() throws Exception {
+    DirectoryIndex<DummyFileContent> dirIndex = newDirectoryIndexWithSort();
+    dirIndex.createDir(TPath.parse("/a/b/c"));
+    DummyFileContent content = dirIndex.createFile(TPath.parse("/a/b/c/one"));
+    dirIndex.createFile(TPath.parse("/a/b/two"));
+    ensure.that(dirIndex.fileExists(TPath.parse("/a/b/c/one"))).isTrue();
+
+    dirIndex.moveDir(TPath.parse("/a/b"), TPath.parse("/x/y"));
+    ensure.that(dirIndex.dirExists(TPath.parse("/a/b/c"))).isFalse();
+    ensure.that(dirIndex.fileExists(TPath.parse("/a/b/c/one"))).isFalse();
+    ensure.that(dirIndex.dirExists(TPath.parse("/x/y/c"))).isTrue();
+    ensure.that(dirIndex.fileContent(TPath.parse("/x/y/c/one"))).sameAs(content);
+    ensure.that(dirIndex.fileExists(TPath.parse("/x/y/two"))).isTrue();
+    ensure.that(dirIndex.list(TPath.parse("/a")).dirs().size()).eq(0);
+    ensure.that(dirIndex.list(TPath.parse("/x/y")).dirs()).eq(TPath.parse("/x/y/c"));
+    ensure.that(dirIndex.fileCount()).eq(2);
+    ensure.that(dirIndex.dirCount()).eq(4);
+  }
+
+  public void testRejectMovingDirUnderItself() throws Exception {
+    final DirectoryIndex<DummyFileContent> dirIndex = newDirectoryIndexWithSort();
+    dirIndex.createDir(TPath.parse("/a/b"));
+    dirIndex.createFile(TPath.parse("/a/b/one"));
+    ensure.code(new CodeBlock() {
+      public void execute() throws Exception {
+        dirIndex.moveDir(TPath.parse("/a"), TPath.parse("/a/b/c"));
+      }
+    }).throwsException(TIoException.class);
+    ensure.that(dirIndex.fileExists(TPath.parse("/a/b/one"))).isTrue();
+    ensure.that(dirIndex.fileCount()).eq(1);
+  }
+}
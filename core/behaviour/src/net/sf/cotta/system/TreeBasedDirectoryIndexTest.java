@@ -1,6 +1,7 @@
 package net.sf.cotta.system;
 
 import net.sf.cotta.PathSeparator;
+import net.sf.cotta.TPath;
 import net.sf.cotta.memory.ListingOrder;
 
 public class TreeBasedDirectoryIndexTest extends AbstractDirectoryIndexTestBase {
@@ -8,4 +9,37 @@ public class TreeBasedDirectoryIndexTest extends AbstractDirectoryIndexTestBase
   protected DirectoryIndex<DummyFileContent> newDirectoryIndexWithSort() {
     return new TreeBasedDirectoryIndex<DummyFileContent>(PathSeparator.Unix, ListingOrder.AToZ, new DummyContentManager());
   }
+
+  public void testRestoreSnapshotAfterChanges() throws Exception {
+    TreeBasedDirectoryIndex<DummyFileContent> dirIndex = new TreeBasedDirectoryIndex<DummyFileContent>(new DummyContentManager());
+    dirIndex.createDir(TPath.parse("/a/b"));
+    dirIndex.createFile(TPath.parse("/a/b/one"));
+    TreeBasedDirectoryIndex.Snapshot<DummyFileContent> snapshot = dirIndex.snapshot();
+
+    dirIndex.createFile(TPath.parse("/a/b/two"));
+    dirIndex.deleteFile(TPath.parse("/a/b/one"));
+    dirIndex.moveDir(TPath.parse("/a/b"), TPath.parse("/c"));
+    ensure.that(dirIndex.dirExists(TPath.parse("/a/b"))).isFalse();
+    ensure.that(dirIndex.fileExists(TPath.parse("/c/two"))).isTrue();
+
+    dirIndex.restore(snapshot);
+    ensure.that(dirIndex.fileExists(TPath.parse("/a/b/one"))).isTrue();
+    ensure.that(dirIndex.fileExists(TPath.parse("/a/b/two"))).isFalse();
+    ensure.that(dirIndex.dirExists(TPath.parse("/c"))).isFalse();
+
+    dirIndex.deleteFile(TPath.parse("/a/b/one"));
+    dirIndex.restore(snapshot);
+    ensure.that(dirIndex.fileExists(TPath.parse("/a/b/one"))).isTrue();
+  }
+
+  public void testRejectSnapshotOfAnotherIndex() throws Exception {
+    TreeBasedDirectoryIndex<DummyFileContent> dirIndex = new TreeBasedDirectoryIndex<DummyFileContent>(new DummyContentManager());
+    TreeBasedDirectoryIndex<DummyFileContent> other = new TreeBasedDirectoryIndex<DummyFileContent>(new DummyContentManager());
+    try {
+      dirIndex.restore(other.snapshot());
+      fail("IllegalArgumentException should have been thrown");
+    } catch (IllegalArgumentException e) {
+      ensure.that(e).message().contains("another directory index");
+    }
+  }
 }
@@ -2,6 +2,8 @@ package net.sf.cotta;
 
 abstract public class AbstractFileVisitor implements FileVisitor {
   private boolean recursive = true;
+  private TDirectoryFilter directoryFilter = TDirectoryFilter.ALL;
+  private TFileFilter fileFilter = TFileFilter.ALL;
 
   public AbstractFileVisitor() {
     this(true);
@@ -11,8 +13,20 @@ abstract public class AbstractFileVisitor implements FileVisitor {
     this.recursive = recursive;
   }
 
+  /**
+   * Creates a recursive visitor that only visits the files matching the pattern, and skips
+   * the directories under which nothing can match
+   *
+   * @param matcher the pattern of the files to visit
+   */
+  public AbstractFileVisitor(TPathMatcher matcher) {
+    this(true);
+    this.directoryFilter = matcher.subtreeFilter();
+    this.fileFilter = matcher;
+  }
+
   public void visit(TDirectory directory) throws TIoException {
-    TDirectoryListing listing = directory.list();
+    TDirectoryListing listing = directory.list(directoryFilter, fileFilter);
     for (TFile file : listing.files()) {
       visit(file);
     }
@@ -0,0 +1,25 @@
+package net.sf.cotta;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The exception for an operation on a directory tree that carried on after failures, holding all of the
+ * failures.  Each failure is also added as a suppressed exception.
+ */
+public class AggregateTIoException extends TIoException {
+  private final List<TIoException> failures;
+
+  public AggregateTIoException(TPath path, String operation, List<TIoException> failures) {
+    super(path, operation + " failed on " + failures.size() + " entries, first failure is \"" + failures.get(0).getMessage() + "\"", failures.get(0));
+    this.failures = Collections.unmodifiableList(new ArrayList<TIoException>(failures));
+    for (TIoException failure : this.failures) {
+      addSuppressed(failure);
+    }
+  }
+
+  public List<TIoException> getFailures() {
+    return failures;
+  }
+}
@@ -0,0 +1,382 @@
+package net.sf.cotta;
+
+import net.sf.cotta.io.OutputMode;
+import net.sf.cotta.system.FileSystem;
+
+import java.io.File;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A file system that caches the attributes and the listings of the file system it decorates.  The existence,
+ * type, length and last modified time of a path are all answered from one cached {@link EntryAttributes}, and
+ * the listing of a directory is kept as a whole.  Each cached value expires after the time to live, and the
+ * least recently used paths are evicted once the number of cached paths goes over the maximum.
+ * <p/>
+ * Writes, moves and deletes that go through this file system invalidate exactly the paths they affect: the path
+ * itself, the listing and attributes of its parent, the parents that the operation may have created, and the whole
+ * cached subtree of a deleted or moved directory.  Changes made behind its back are only seen after the time to live.
+ * The content of an output stream is invalidated again when the stream is closed, but writing through an output channel
+ * is only seen after the time to live.
+ */
+public class CachingFileSystem implements FileSystem {
+  private final FileSystem fileSystem;
+  private final long timeToLive;
+  private final int maxEntries;
+  private final LinkedHashMap<TPath, CacheEntry> cache;
+  private final TPathMap<CacheEntry> index = new TPathMap<CacheEntry>();
+  private long generation;
+  private long hitCount;
+  private long missCount;
+
+  /**
+   * Creates the caching file system
+   *
+   * @param fileSystem the file system to cache
+   * @param timeToLive time to live of the cached values in milliseconds
+   * @param maxEntries maximum number of the paths to cache
+   * @throws IllegalArgumentException if the time to live or the maximum number of paths is not positive
+   */
+  public CachingFileSystem(FileSystem fileSystem, long timeToLive, int maxEntries) {
+    if (timeToLive <= 0) {
+      throw new IllegalArgumentException("time to live needs to be positive:" + timeToLive);
+    }
+    if (maxEntries <= 0) {
+      throw new IllegalArgumentException("maximum number of entries needs to be positive:" + maxEntries);
+    }
+    this.fileSystem = fileSystem;
+    this.timeToLive = timeToLive;
+    this.maxEntries = maxEntries;
+    this.cache = new LinkedHashMap<TPath, CacheEntry>(16, 0.75f, true) {
+      protected boolean removeEldestEntry(Map.Entry<TPath, CacheEntry> eldest) {
+        if (size() > CachingFileSystem.this.maxEntries) {
+          index.remove(eldest.getKey());
+          return true;
+        }
+        return false;
+      }
+    };
+  }
+
+  /**
+   * Number of the lookups that have been answered from the cache
+   *
+   * @return the hit count
+   */
+  public synchronized long hitCount() {
+    return hitCount;
+  }
+
+  /**
+   * Number of the lookups that have gone to the file system
+   *
+   * @return the miss count
+   */
+  public synchronized long missCount() {
+    return missCount;
+  }
+
+  /**
+   * Number of the paths currently cached
+   *
+   * @return the number of cached paths
+   */
+  public synchronized int cachedPathCount() {
+    return cache.size();
+  }
+
+  /**
+   * Drops all cached values, for when the file system has been changed without going through this instance
+   */
+  public synchronized void invalidateAll() {
+    generation++;
+    cache.clear();
+    index.clear();
+  }
+
+  /**
+   * The current time used for expiring cached values
+   *
+   * @return the current time in milliseconds
+   */
+  protected long currentTimeMillis() {
+    return System.currentTimeMillis();
+  }
+
+  public EntryAttributes attributes(TPath path) {
+    long start;
+    synchronized (this) {
+      CacheEntry entry = cache.get(path);
+      if (entry != null && entry.attributes != null && entry.attributesExpiry > currentTimeMillis()) {
+        hitCount++;
+        return entry.attributes;
+      }
+      missCount++;
+      start = generation;
+    }
+    EntryAttributes attributes = fileSystem.attributes(path);
+    synchronized (this) {
+      if (start == generation) {
+        CacheEntry entry = entryFor(path);
+        entry.attributes = attributes;
+        entry.attributesExpiry = currentTimeMillis() + timeToLive;
+      }
+    }
+    return attributes;
+  }
+
+  public boolean fileExists(TPath path) {
+    return attributes(path).isFile();
+  }
+
+  public boolean dirExists(TPath path) {
+    return attributes(path).isDirectory();
+  }
+
+  public long fileLength(TPath path) {
+    EntryAttributes attributes = attributes(path);
+    return attributes.isFile() ? attributes.length() : fileSystem.fileLength(path);
+  }
+
+  public long fileLastModified(TPath path) {
+    EntryAttributes attributes = attributes(path);
+    return attributes.isFile() && attributes.lastModified() != 0 ? attributes.lastModified() : fileSystem.fileLastModified(path);
+  }
+
+  public PathContent list(TPath path) throws TIoException {
+    long start;
+    synchronized (this) {
+      CacheEntry entry = cache.get(path);
+      if (entry != null && entry.listing != null && entry.listingExpiry > currentTimeMillis()) {
+        hitCount++;
+        return new PathContent(entry.listing.dirs(), entry.listing.files());
+      }
+      missCount++;
+      start = generation;
+    }
+    PathContent listing = fileSystem.list(path);
+    synchronized (this) {
+      if (start == generation) {
+        CacheEntry entry = entryFor(path);
+        entry.listing = new PathContent(listing.dirs(), listing.files());
+        entry.listingExpiry = currentTimeMillis() + timeToLive;
+      }
+    }
+    return listing;
+  }
+
+  public void createFile(TPath path) throws TIoException {
+    try {
+      fileSystem.createFile(path);
+    } finally {
+      invalidateCreated(path);
+    }
+  }
+
+  public void createDir(TPath path) throws TIoException {
+    try {
+      fileSystem.createDir(path);
+    } finally {
+      invalidateCreated(path);
+    }
+  }
+
+  public void deleteFile(TPath path) throws TIoException {
+    try {
+      fileSystem.deleteFile(path);
+    } finally {
+      invalidateSubtree(path);
+    }
+  }
+
+  public void deleteDirectory(TPath path) throws TIoException {
+    try {
+      fileSystem.deleteDirectory(path);
+    } finally {
+      invalidateSubtree(path);
+    }
+  }
+
+  public void moveFile(TPath source, TPath destination) throws TIoException {
+    try {
+      fileSystem.moveFile(source, destination);
+    } finally {
+      invalidateSubtree(source);
+      invalidateCreated(destination);
+    }
+  }
+
+  public void moveDirectory(TPath source, TPath destination) throws TIoException {
+    try {
+      fileSystem.moveDirectory(source, destination);
+    } finally {
+      invalidateSubtree(source);
+      invalidateSubtree(destination);
+      invalidateCreated(destination);
+    }
+  }
+
+  public OutputStream createOutputStream(final TPath path, OutputMode mode) throws TIoException {
+    OutputStream stream;
+    try {
+      stream = fileSystem.createOutputStream(path, mode);
+    } finally {
+      invalidateCreated(path);
+    }
+    return new InvalidatingOutputStream(stream, path);
+  }
+
+  public FileChannel createOutputChannel(TPath path, OutputStream outputStream) throws TIoException {
+    if (outputStream instanceof InvalidatingOutputStream) {
+      outputStream = ((InvalidatingOutputStream) outputStream).stream();
+    }
+    return fileSystem.createOutputChannel(path, outputStream);
+  }
+
+  public InputStream createInputStream(TPath path) throws TIoException {
+    return fileSystem.createInputStream(path);
+  }
+
+  public FileChannel createInputChannel(TPath path) throws TIoException {
+    return fileSystem.createInputChannel(path);
+  }
+
+  public String pathString(TPath path) {
+    return fileSystem.pathString(path);
+  }
+
+  public File toJavaFile(TPath path) {
+    return fileSystem.toJavaFile(path);
+  }
+
+  public String toCanonicalPath(TPath path) {
+    return fileSystem.toCanonicalPath(path);
+  }
+
+  public int compare(TPath path1, TPath path2) {
+    return fileSystem.compare(path1, path2);
+  }
+
+  public boolean equals(TPath path1, TPath path2) {
+    return fileSystem.equals(path1, path2);
+  }
+
+  public int hashCode(TPath path) {
+    return fileSystem.hashCode(path);
+  }
+
+  public URI toUri(TPath path) {
+    return fileSystem.toUri(path);
+  }
+
+  private CacheEntry entryFor(TPath path) {
+    CacheEntry entry = cache.get(path);
+    if (entry == null) {
+      entry = new CacheEntry();
+      index.put(path, entry);
+      cache.put(path, entry);
+    }
+    return entry;
+  }
+
+  private void remove(TPath path) {
+    if (cache.remove(path) != null) {
+      index.remove(path);
+    }
+  }
+
+  /**
+   * Invalidates the path and its parent, and keeps going up while the parent was not known to exist
+   * as a directory, as creating the path may have created the parent
+   */
+  private synchronized void invalidateCreated(TPath path) {
+    generation++;
+    TPath current = path;
+    while (true) {
+      remove(current);
+      TPath parent = current.parent();
+      if (parent == null) {
+        return;
+      }
+      CacheEntry entry = cache.get(parent);
+      boolean knownDirectory = entry != null && entry.attributes != null && entry.attributes.isDirectory();
+      remove(parent);
+      if (knownDirectory) {
+        return;
+      }
+      current = parent;
+    }
+  }
+
+  /**
+   * Invalidates the path with everything cached under it, and the parent
+   */
+  private synchronized void invalidateSubtree(TPath path) {
+    generation++;
+    List<TPath> paths = new ArrayList<TPath>();
+    for (Map.Entry<TPath, CacheEntry> entry : index.subtree(path)) {
+      paths.add(entry.getKey());
+    }
+    for (TPath cached : paths) {
+      cache.remove(cached);
+    }
+    index.removeSubtree(path);
+    TPath parent = path.parent();
+    if (parent != null) {
+      remove(parent);
+    }
+  }
+
+  private synchronized void invalidateContent(TPath path) {
+    generation++;
+    remove(path);
+    TPath parent = path.parent();
+    if (parent != null) {
+      remove(parent);
+    }
+  }
+
+  private static class CacheEntry {
+    private EntryAttributes attributes;
+    private long attributesExpiry;
+    private PathContent listing;
+    private long listingExpiry;
+  }
+
+  /**
+   * Invalidates the written file again when the stream is closed, as the length and the last modified
+   * time change with the writing
+   */
+  private class InvalidatingOutputStream extends FilterOutputStream {
+    private final TPath path;
+
+    InvalidatingOutputStream(OutputStream stream, TPath path) {
+      super(stream);
+      this.path = path;
+    }
+
+    OutputStream stream() {
+      return out;
+    }
+
+    public void write(byte[] b, int off, int len) throws IOException {
+      out.write(b, off, len);
+    }
+
+    public void close() throws IOException {
+      try {
+        super.close();
+      } finally {
+        invalidateContent(path);
+      }
+    }
+  }
+}
@@ -0,0 +1,314 @@
+package net.sf.cotta;
+
+import java.util.Arrays;
+
+/**
+ * Compact encoding of a TPath for structures that hold a large number of paths.  All the elements
+ * are stored in one UTF-8 byte array with an array of the end offsets of the elements, instead of one
+ * String object per element.  The elements are only decoded when they are asked for, and comparing
+ * and matching against a TPath are done directly on the bytes.
+ * <p/>
+ * The hash code is the same as the hash code of the TPath it encodes, and is kept with the encoding
+ * so that it is never computed again.  The order is the same as the order of TPath.
+ *
+ * @see TPath
+ */
+public final class CompactPath implements Comparable<CompactPath> {
+  private static final int MIN_SUPPLEMENTARY_CODE_POINT = 0x10000;
+
+  private final String headElement;
+  private final byte[] bytes;
+  private final int[] ends;
+  private final int hash;
+
+  private CompactPath(String headElement, byte[] bytes, int[] ends, int hash) {
+    this.headElement = headElement;
+    this.bytes = bytes;
+    this.ends = ends;
+    this.hash = hash;
+  }
+
+  /**
+   * Encodes the path
+   *
+   * @param path path to encode
+   * @return the compact path
+   */
+  public static CompactPath encode(TPath path) {
+    int count = path.length();
+    String[] elements = path.toElementArray();
+    int size = 0;
+    for (String element : elements) {
+      size += encodedLength(element);
+    }
+    byte[] bytes = new byte[size];
+    int[] ends = new int[count];
+    int position = 0;
+    for (int i = 0; i < count; i++) {
+      position = encode(elements[i], bytes, position);
+      ends[i] = position;
+    }
+    return new CompactPath(path.headElement().intern(), bytes, ends, path.hashCode());
+  }
+
+  /**
+   * Decodes the path
+   *
+   * @return the path that has been encoded
+   */
+  public TPath decode() {
+    String[] elements = new String[ends.length];
+    for (int i = 0; i < elements.length; i++) {
+      elements[i] = elementAt(i);
+    }
+    return TPath.fromElements(headElement, elements);
+  }
+
+  public String headElement() {
+    return headElement;
+  }
+
+  public int length() {
+    return ends.length;
+  }
+
+  /**
+   * Decodes the element at the given index
+   *
+   * @param index index of the element
+   * @return the element
+   */
+  public String elementAt(int index) {
+    int end = ends[index];
+    int position = start(index);
+    char[] chars = new char[end - position];
+    int length = 0;
+    while (position < end) {
+      int codePoint = codePointAt(bytes, position);
+      position += byteCount(bytes[position]);
+      chars[length++] = (char) firstChar(codePoint);
+      if (secondChar(codePoint) != 0) {
+        chars[length++] = (char) secondChar(codePoint);
+      }
+    }
+    return new String(chars, 0, length);
+  }
+
+  /**
+   * Checks if this is the encoding of the path without decoding the elements
+   *
+   * @param path the path to check
+   * @return true if this is the encoding of the path
+   */
+  public boolean matches(TPath path) {
+    if (path.length() != ends.length || path.hashCode() != hash || !headElement.equals(path.headElement())) {
+      return false;
+    }
+    String[] elements = path.toElementArray();
+    for (int i = ends.length - 1; i >= 0; i--) {
+      if (compareElement(i, elements[i]) != 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof CompactPath)) {
+      return false;
+    }
+    CompactPath that = (CompactPath) o;
+    return hash == that.hash && headElement.equals(that.headElement)
+        && Arrays.equals(ends, that.ends) && Arrays.equals(bytes, that.bytes);
+  }
+
+  public int hashCode() {
+    return hash;
+  }
+
+  /**
+   * Compare two paths by comparing each element, in the same order as TPath
+   *
+   * @param that the other path
+   * @return comparing result
+   * @see TPath#compareTo(TPath)
+   */
+  public int compareTo(CompactPath that) {
+    int n = Math.min(ends.length, that.ends.length);
+    for (int i = 0; i < n; i++) {
+      int result = compareChars(bytes, start(i), ends[i], that.bytes, that.start(i), that.ends[i]);
+      if (result != 0) {
+        return result;
+      }
+    }
+    return ends.length - that.ends.length;
+  }
+
+  public String toString() {
+    return decode().toPathString();
+  }
+
+  private int start(int index) {
+    return index == 0 ? 0 : ends[index - 1];
+  }
+
+  private int compareElement(int index, String element) {
+    int end = ends[index];
+    int position = start(index);
+    int pending = 0;
+    int i = 0;
+    int length = element.length();
+    while ((position < end || pending != 0) && i < length) {
+      int c;
+      if (pending != 0) {
+        c = pending;
+        pending = 0;
+      } else {
+        int codePoint = codePointAt(bytes, position);
+        position += byteCount(bytes[position]);
+        c = firstChar(codePoint);
+        pending = secondChar(codePoint);
+      }
+      int result = c - element.charAt(i++);
+      if (result != 0) {
+        return result;
+      }
+    }
+    return (position < end || pending != 0 ? 1 : 0) - (i < length ? 1 : 0);
+  }
+
+  /**
+   * Compares two encoded elements char by char, which is the order of String.compareTo
+   */
+  private static int compareChars(byte[] bytes1, int position1, int end1, byte[] bytes2, int position2, int end2) {
+    int pending1 = 0;
+    int pending2 = 0;
+    while ((position1 < end1 || pending1 != 0) && (position2 < end2 || pending2 != 0)) {
+      int c1;
+      if (pending1 != 0) {
+        c1 = pending1;
+        pending1 = 0;
+      } else {
+        int codePoint = codePointAt(bytes1, position1);
+        position1 += byteCount(bytes1[position1]);
+        c1 = firstChar(codePoint);
+        pending1 = secondChar(codePoint);
+      }
+      int c2;
+      if (pending2 != 0) {
+        c2 = pending2;
+        pending2 = 0;
+      } else {
+        int codePoint = codePointAt(bytes2, position2);
+        position2 += byteCount(bytes2[position2]);
+        c2 = firstChar(codePoint);
+        pending2 = secondChar(codePoint);
+      }
+      if (c1 != c2) {
+        return c1 - c2;
+      }
+    }
+    return (position1 < end1 || pending1 != 0 ? 1 : 0) - (position2 < end2 || pending2 != 0 ? 1 : 0);
+  }
+
+  private static int firstChar(int codePoint) {
+    return codePoint >= MIN_SUPPLEMENTARY_CODE_POINT ? highSurrogate(codePoint) : codePoint;
+  }
+
+  /**
+   * The low surrogate of a supplementary code point, which is never 0, or 0 for any other code point
+   */
+  private static int secondChar(int codePoint) {
+    return codePoint >= MIN_SUPPLEMENTARY_CODE_POINT ? lowSurrogate(codePoint) : 0;
+  }
+
+  private static char highSurrogate(int codePoint) {
+    return (char) (((codePoint - MIN_SUPPLEMENTARY_CODE_POINT) >>> 10) + Character.MIN_HIGH_SURROGATE);
+  }
+
+  private static char lowSurrogate(int codePoint) {
+    return (char) (((codePoint - MIN_SUPPLEMENTARY_CODE_POINT) & 0x3ff) + Character.MIN_LOW_SURROGATE);
+  }
+
+  /**
+   * Number of bytes needed for the element.  A surrogate pair is encoded as one four-byte
+   * code point, and an unpaired surrogate is encoded as a three-byte sequence of its own,
+   * so that every String has exactly one encoding.
+   */
+  private static int encodedLength(String element) {
+    int size = 0;
+    int length = element.length();
+    for (int i = 0; i < length; i++) {
+      char c = element.charAt(i);
+      if (c < 0x80) {
+        size += 1;
+      } else if (c < 0x800) {
+        size += 2;
+      } else if (isSurrogatePair(element, i)) {
+        size += 4;
+        i++;
+      } else {
+        size += 3;
+      }
+    }
+    return size;
+  }
+
+  private static int encode(String element, byte[] bytes, int position) {
+    int length = element.length();
+    for (int i = 0; i < length; i++) {
+      char c = element.charAt(i);
+      if (c < 0x80) {
+        bytes[position++] = (byte) c;
+      } else if (c < 0x800) {
+        bytes[position++] = (byte) (0xc0 | (c >> 6));
+        bytes[position++] = (byte) (0x80 | (c & 0x3f));
+      } else if (isSurrogatePair(element, i)) {
+        int codePoint = Character.toCodePoint(c, element.charAt(++i));
+        bytes[position++] = (byte) (0xf0 | (codePoint >> 18));
+        bytes[position++] = (byte) (0x80 | ((codePoint >> 12) & 0x3f));
+        bytes[position++] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+        bytes[position++] = (byte) (0x80 | (codePoint & 0x3f));
+      } else {
+        bytes[position++] = (byte) (0xe0 | (c >> 12));
+        bytes[position++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+        bytes[position++] = (byte) (0x80 | (c & 0x3f));
+      }
+    }
+    return position;
+  }
+
+  private static boolean isSurrogatePair(String element, int index) {
+    return Character.isHighSurrogate(element.charAt(index))
+        && index + 1 < element.length() && Character.isLowSurrogate(element.charAt(index + 1));
+  }
+
+  private static int byteCount(byte first) {
+    if ((first & 0x80) == 0) {
+      return 1;
+    } else if ((first & 0xe0) == 0xc0) {
+      return 2;
+    } else if ((first & 0xf0) == 0xe0) {
+      return 3;
+    }
+    return 4;
+  }
+
+  private static int codePointAt(byte[] bytes, int position) {
+    int first = bytes[position] & 0xff;
+    switch (byteCount(bytes[position])) {
+      case 1:
+        return first;
+      case 2:
+        return ((first & 0x1f) << 6) | (bytes[position + 1] & 0x3f);
+      case 3:
+        return ((first & 0x0f) << 12) | ((bytes[position + 1] & 0x3f) << 6) | (bytes[position + 2] & 0x3f);
+      default:
+        return ((first & 0x07) << 18) | ((bytes[position + 1] & 0x3f) << 12)
+            | ((bytes[position + 2] & 0x3f) << 6) | (bytes[position + 3] & 0x3f);
+    }
+  }
+}
@@ -0,0 +1,38 @@
+package net.sf.cotta;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * List of paths that keeps the paths in their compact encoding and decodes them on access
+ *
+ * @see CompactPath
+ */
+class CompactPathList extends AbstractList<TPath> {
+  private final List<CompactPath> paths;
+
+  CompactPathList(int initialCapacity) {
+    paths = new ArrayList<CompactPath>(initialCapacity);
+  }
+
+  public TPath get(int index) {
+    return paths.get(index).decode();
+  }
+
+  public TPath set(int index, TPath path) {
+    return paths.set(index, CompactPath.encode(path)).decode();
+  }
+
+  public void add(int index, TPath path) {
+    paths.add(index, CompactPath.encode(path));
+  }
+
+  public TPath remove(int index) {
+    return paths.remove(index).decode();
+  }
+
+  public int size() {
+    return paths.size();
+  }
+}
@@ -104,6 +104,11 @@ public class ControlledFileSystem implements FileSystem {
     return fileSystem.fileLastModified(path);
   }
 
+  public EntryAttributes attributes(TPath path) {
+    readControl(path);
+    return fileSystem.attributes(path);
+  }
+
   public int compare(TPath path1, TPath path2) {
     readControl(path1);
     readControl(path2);
@@ -153,6 +158,25 @@ public class ControlledFileSystem implements FileSystem {
     });
   }
 
+  /**
+   * Creates a file system that only allows writing under any of the given paths
+   *
+   * @param fileSystem   the file system to control
+   * @param pathsAllowed the paths under which writing is allowed
+   * @return the controlled file system
+   */
+  public static FileSystem pathControlledFileSystem(FileSystem fileSystem, final TPathSet pathsAllowed) {
+    return new ControlledFileSystem(fileSystem, new PermissionController() {
+      public boolean writeAllowed(TPath path) {
+        return pathsAllowed.containsPrefixOf(path);
+      }
+
+      public StringBuffer describe(StringBuffer buffer) {
+        return buffer.append("only files under ").append(pathsAllowed).append(" are allowed");
+      }
+    });
+  }
+
   public static FileSystem readOnlyFileSystem(FileSystem fileSystem) {
     return new ControlledFileSystem(fileSystem, new PermissionController() {
 
@@ -0,0 +1,103 @@
+package net.sf.cotta;
+
+/**
+ * A snapshot of the attributes of a file or a directory, returned by the file system in one call
+ * so that the type, length and the last modified time do not each need a trip to the file system.
+ * The snapshot does not change after it is taken.
+ *
+ * @see TEntry#attributes()
+ * @see net.sf.cotta.system.FileSystem#attributes(TPath)
+ */
+public final class EntryAttributes {
+  /**
+   * Attributes of an entry that does not exist
+   */
+  public static final EntryAttributes MISSING = new EntryAttributes(false, false, 0, 0);
+
+  private final boolean file;
+  private final boolean directory;
+  private final long length;
+  private final long lastModified;
+
+  private EntryAttributes(boolean file, boolean directory, long length, long lastModified) {
+    this.file = file;
+    this.directory = directory;
+    this.length = length;
+    this.lastModified = lastModified;
+  }
+
+  /**
+   * Attributes of a file
+   *
+   * @param length       length of the file
+   * @param lastModified last modified time in milliseconds, or 0 if not known
+   * @return the attributes
+   */
+  public static EntryAttributes file(long length, long lastModified) {
+    return new EntryAttributes(true, false, length, lastModified);
+  }
+
+  /**
+   * Attributes of a directory
+   *
+   * @param lastModified last modified time in milliseconds, or 0 if not known
+   * @return the attributes
+   */
+  public static EntryAttributes directory(long lastModified) {
+    return new EntryAttributes(false, true, 0, lastModified);
+  }
+
+  public boolean exists() {
+    return file || directory;
+  }
+
+  public boolean isFile() {
+    return file;
+  }
+
+  public boolean isDirectory() {
+    return directory;
+  }
+
+  /**
+   * Length of the file, or 0 for a directory or a missing entry
+   *
+   * @return the length
+   */
+  public long length() {
+    return length;
+  }
+
+  /**
+   * Last modified time in milliseconds, or 0 for a missing entry or when the file system does not know it
+   *
+   * @return the last modified time
+   */
+  public long lastModified() {
+    return lastModified;
+  }
+
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+    EntryAttributes that = (EntryAttributes) o;
+    return file == that.file && directory == that.directory && length == that.length && lastModified == that.lastModified;
+  }
+
+  public int hashCode() {
+    int result = file ? 1 : directory ? 2 : 0;
+    result = 29 * result + (int) (length ^ (length >>> 32));
+    return 29 * result + (int) (lastModified ^ (lastModified >>> 32));
+  }
+
+  public String toString() {
+    if (file) {
+      return "file length <" + length + "> last modified <" + lastModified + ">";
+    }
+    return directory ? "directory last modified <" + lastModified + ">" : "missing";
+  }
+}
@@ -0,0 +1,162 @@
+package net.sf.cotta;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Runs deleteAll and mergeTo as fork-join tasks.  Each directory is listed once, its sub-directories are
+ * handled by forked tasks and its files in forked batches.  A failure is recorded and the rest of the tree
+ * carries on, except that a directory is only deleted after all of its children have been deleted.  The
+ * recorded failures are thrown together at the end.
+ *
+ * @see TDirectory#deleteAll(ForkJoinPool)
+ * @see TDirectory#mergeTo(TDirectory, ForkJoinPool)
+ */
+class ParallelTreeOperation {
+  static final int FILE_BATCH_SIZE = 32;
+
+  private final ConcurrentLinkedQueue<TIoException> failures = new ConcurrentLinkedQueue<TIoException>();
+
+  private ParallelTreeOperation() {
+  }
+
+  static void deleteAll(TDirectory directory, ForkJoinPool pool) throws TIoException {
+    ParallelTreeOperation operation = new ParallelTreeOperation();
+    pool.invoke(operation.new DeleteTask(directory));
+    operation.throwFailures(directory, "deleting directory tree");
+  }
+
+  static void mergeTo(TDirectory source, TDirectory target, ForkJoinPool pool) throws TIoException {
+    ParallelTreeOperation operation = new ParallelTreeOperation();
+    pool.invoke(operation.new MergeTask(source, target));
+    operation.throwFailures(source, "merging directory tree");
+  }
+
+  private void throwFailures(TDirectory directory, String operation) throws TIoException {
+    if (!failures.isEmpty()) {
+      throw new AggregateTIoException(directory.toPath(), operation, new ArrayList<TIoException>(failures));
+    }
+  }
+
+  private static boolean joinAll(List<ForkJoinTask<Boolean>> tasks) {
+    boolean succeeded = true;
+    for (ForkJoinTask<Boolean> task : tasks) {
+      succeeded &= task.join();
+    }
+    return succeeded;
+  }
+
+  private abstract class FileBatchTask extends RecursiveTask<Boolean> {
+    private final List<TFile> files;
+
+    FileBatchTask(List<TFile> files) {
+      this.files = files;
+    }
+
+    protected Boolean compute() {
+      boolean succeeded = true;
+      for (TFile file : files) {
+        try {
+          process(file);
+        } catch (TIoException e) {
+          failures.add(e);
+          succeeded = false;
+        }
+      }
+      return succeeded;
+    }
+
+    protected abstract void process(TFile file) throws TIoException;
+  }
+
+  private abstract class DirectoryTask extends RecursiveTask<Boolean> {
+    protected void forkFiles(List<TFile> files, List<ForkJoinTask<Boolean>> tasks) {
+      for (int start = 0; start < files.size(); start += FILE_BATCH_SIZE) {
+        List<TFile> batch = files.subList(start, Math.min(files.size(), start + FILE_BATCH_SIZE));
+        tasks.add(fileTask(batch).fork());
+      }
+    }
+
+    protected abstract FileBatchTask fileTask(List<TFile> batch);
+  }
+
+  private class DeleteTask extends DirectoryTask {
+    private final TDirectory directory;
+
+    DeleteTask(TDirectory directory) {
+      this.directory = directory;
+    }
+
+    protected Boolean compute() {
+      TDirectoryListing listing;
+      try {
+        listing = directory.list();
+      } catch (TIoException e) {
+        failures.add(e);
+        return false;
+      }
+      List<ForkJoinTask<Boolean>> tasks = new ArrayList<ForkJoinTask<Boolean>>();
+      for (TDirectory subDirectory : listing.dirs()) {
+        tasks.add(new DeleteTask(subDirectory).fork());
+      }
+      forkFiles(listing.files(), tasks);
+      if (!joinAll(tasks)) {
+        return false;
+      }
+      try {
+        directory.delete();
+        return true;
+      } catch (TIoException e) {
+        failures.add(e);
+        return false;
+      }
+    }
+
+    protected FileBatchTask fileTask(List<TFile> batch) {
+      return new FileBatchTask(batch) {
+        protected void process(TFile file) throws TIoException {
+          file.delete();
+        }
+      };
+    }
+  }
+
+  private class MergeTask extends DirectoryTask {
+    private final TDirectory source;
+    private final TDirectory target;
+
+    MergeTask(TDirectory source, TDirectory target) {
+      this.source = source;
+      this.target = target;
+    }
+
+    protected Boolean compute() {
+      TDirectoryListing listing;
+      try {
+        target.ensureExists();
+        listing = source.list();
+      } catch (TIoException e) {
+        failures.add(e);
+        return false;
+      }
+      List<ForkJoinTask<Boolean>> tasks = new ArrayList<ForkJoinTask<Boolean>>();
+      for (TDirectory subDirectory : listing.dirs()) {
+        tasks.add(new MergeTask(subDirectory, target.dir(subDirectory.name())).fork());
+      }
+      forkFiles(listing.files(), tasks);
+      return joinAll(tasks);
+    }
+
+    protected FileBatchTask fileTask(List<TFile> batch) {
+      return new FileBatchTask(batch) {
+        protected void process(TFile file) throws TIoException {
+          file.copyTo(target.file(file.name()));
+        }
+      };
+    }
+  }
+}
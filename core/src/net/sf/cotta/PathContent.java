@@ -22,6 +22,23 @@ public class PathContent {
     directories = new ArrayList<TPath>(totalSize / 2);
   }
 
+  private PathContent(List<TPath> directories, List<TPath> files) {
+    this.directories = directories;
+    this.files = files;
+  }
+
+  /**
+   * Create an empty path content that keeps the paths in their compact encoding, for listings
+   * that are kept around.  The paths are decoded every time they are retrieved from the lists
+   *
+   * @param totalSize total size of the content.  This parameter is used to determine the inital size of the list to create
+   * @return the empty path content
+   * @see CompactPath
+   */
+  public static PathContent compact(int totalSize) {
+    return new PathContent(new CompactPathList(totalSize / 2), new CompactPathList(totalSize / 2));
+  }
+
   /**
    * Create path content directly with the two lists
    *
@@ -7,6 +7,7 @@ import net.sf.cotta.system.FileSystem;
 import java.io.File;
 import java.io.IOException;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 
@@ -184,7 +185,6 @@ public class TDirectory extends TEntry {
   }
 
   private PathContent listContent() throws TIoException {
-    checkDirectoryExists();
     return filesystem().list(this.path);
   }
 
@@ -250,20 +250,81 @@ public class TDirectory extends TEntry {
     delete();
   }
 
+  /**
+   * Delete the whole directory tree with the given number of threads.  The file system needs to support
+   * concurrent deletes.
+   *
+   * @param parallelism number of threads to use
+   * @throws TIoException error in the operation, all of the errors are in AggregateTIoException
+   * @see #deleteAll(ForkJoinPool)
+   */
+  public void deleteAll(int parallelism) throws TIoException {
+    ForkJoinPool pool = new ForkJoinPool(parallelism);
+    try {
+      deleteAll(pool);
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  /**
+   * Delete the whole directory tree in the pool.  Each directory is listed once, and its files and sub-directories
+   * are deleted concurrently before the directory itself.  The deletion carries on after a failure, skipping only
+   * the directories that still have children, and the failures are thrown together at the end.
+   *
+   * @param pool pool to run the deletion
+   * @throws AggregateTIoException holding all the errors in the operation
+   */
+  public void deleteAll(ForkJoinPool pool) throws TIoException {
+    ParallelTreeOperation.deleteAll(this, pool);
+  }
+
   public void mergeTo(TDirectory target) throws TIoException {
     target.ensureExists();
-    copySubDirectories(target);
-    copyFiles(target);
+    TDirectoryListing listing = list();
+    copySubDirectories(listing, target);
+    copyFiles(listing, target);
   }
 
-  private void copySubDirectories(TDirectory target) throws TIoException {
-    for (TDirectory subdir : list().dirs()) {
+  /**
+   * Merge the directory tree into the target with the given number of threads.  The file systems need to support
+   * concurrent writes.
+   *
+   * @param target      target directory
+   * @param parallelism number of threads to use
+   * @throws TIoException error in the operation, all of the errors are in AggregateTIoException
+   * @see #mergeTo(TDirectory, ForkJoinPool)
+   */
+  public void mergeTo(TDirectory target, int parallelism) throws TIoException {
+    ForkJoinPool pool = new ForkJoinPool(parallelism);
+    try {
+      mergeTo(target, pool);
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  /**
+   * Merge the directory tree into the target in the pool.  Each directory is listed once, and its files
+   * and sub-directories are copied concurrently.  The merge carries on after a failure, and the failures
+   * are thrown together at the end.
+   *
+   * @param target target directory
+   * @param pool   pool to run the merge
+   * @throws AggregateTIoException holding all the errors in the operation
+   */
+  public void mergeTo(TDirectory target, ForkJoinPool pool) throws TIoException {
+    ParallelTreeOperation.mergeTo(this, target, pool);
+  }
+
+  private void copySubDirectories(TDirectoryListing listing, TDirectory target) throws TIoException {
+    for (TDirectory subdir : listing.dirs()) {
       subdir.mergeTo(target.dir(subdir.name()));
     }
   }
 
-  private void copyFiles(TDirectory target) throws TIoException {
-    List<TFile> files = list().files();
+  private void copyFiles(TDirectoryListing listing, TDirectory target) throws TIoException {
+    List<TFile> files = listing.files();
     for (TFile file : files) {
       file.copyTo(target.file(file.name()));
     }
@@ -333,6 +394,28 @@ public class TDirectory extends TEntry {
     fileVisitor.visit(this);
   }
 
+  /**
+   * Walk the directory tree depth first, letting the visitor skip subtrees or stop the walk
+   *
+   * @param visitor visitor of the entries under the directory
+   * @return false if the walk was terminated by the visitor
+   * @throws TIoException error in listing a directory, or from the visitor
+   * @see TreeWalker
+   */
+  public boolean visit(TreeVisitor visitor) throws TIoException {
+    return TreeWalker.depthFirst(this).walk(visitor);
+  }
+
+  /**
+   * Walk of the directory tree, which can be configured and turned into a stream of the entries
+   *
+   * @return the walk of the entries under the directory
+   * @see TDirectoryWalk
+   */
+  public TDirectoryWalk walk() {
+    return new TDirectoryWalk(this);
+  }
+
   public TDirectory toCanonicalDir() {
     return factory().dir(toCanonicalPath());
   }
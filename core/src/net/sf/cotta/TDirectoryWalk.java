@@ -0,0 +1,168 @@
+package net.sf.cotta;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * The walk of a directory tree as a stream of the files and the directories under it, not including
+ * the directory itself.  The directories not accepted by the directory filter are neither returned
+ * nor walked into, the same as AbstractFileVisitor.  The order of the entries is not defined.
+ * <p/>
+ * The walk splits at directory boundaries: each split takes half of the directories yet to be listed,
+ * so that a parallel stream lists different parts of the tree on different threads of the fork-join
+ * pool.  This overlaps the listing I/O, but only use parallel walk on a file system that can be
+ * listed concurrently.  An error in listing a directory is thrown as TIoRuntimeException.
+ *
+ * @see TDirectory#walk()
+ */
+public class TDirectoryWalk implements Iterable<TEntry> {
+  private final TDirectory directory;
+  private TDirectoryFilter directoryFilter = TDirectoryFilter.ALL;
+  private TFileFilter fileFilter = TFileFilter.ALL;
+  private int maxDepth = Integer.MAX_VALUE;
+  private boolean parallel;
+
+  public TDirectoryWalk(TDirectory directory) {
+    this.directory = directory;
+  }
+
+  /**
+   * Sets filter for file and directory
+   *
+   * @param directoryFilter directory filter
+   * @param fileFilter      file filter
+   * @return current instance
+   */
+  public TDirectoryWalk filteredBy(TDirectoryFilter directoryFilter, TFileFilter fileFilter) {
+    this.directoryFilter = directoryFilter;
+    this.fileFilter = fileFilter;
+    return this;
+  }
+
+  /**
+   * Sets the maximum depth of the walk, where the entries directly under the directory are at depth 1
+   *
+   * @param maxDepth maximum depth of the entries to walk
+   * @return current instance
+   * @throws IllegalArgumentException if the depth is negative
+   */
+  public TDirectoryWalk maxDepth(int maxDepth) {
+    if (maxDepth < 0) {
+      throw new IllegalArgumentException("maximum depth cannot be negative:" + maxDepth);
+    }
+    this.maxDepth = maxDepth;
+    return this;
+  }
+
+  /**
+   * Sets the parallel flag to true, so that the stream returned is a parallel stream
+   *
+   * @return current instance
+   */
+  public TDirectoryWalk parallel() {
+    parallel = true;
+    return this;
+  }
+
+  public Stream<TEntry> stream() {
+    return StreamSupport.stream(spliterator(), parallel);
+  }
+
+  public Spliterator<TEntry> spliterator() {
+    Deque<Pending> directories = new ArrayDeque<Pending>();
+    if (maxDepth > 0) {
+      directories.add(new Pending(directory, 0));
+    }
+    return new WalkSpliterator(directories);
+  }
+
+  public Iterator<TEntry> iterator() {
+    return Spliterators.iterator(spliterator());
+  }
+
+  private static class Pending {
+    private final TDirectory directory;
+    private final int depth;
+
+    Pending(TDirectory directory, int depth) {
+      this.directory = directory;
+      this.depth = depth;
+    }
+  }
+
+  private class WalkSpliterator implements Spliterator<TEntry> {
+    private final Deque<Pending> directories;
+    private final Deque<TEntry> entries = new ArrayDeque<TEntry>();
+
+    WalkSpliterator(Deque<Pending> directories) {
+      this.directories = directories;
+    }
+
+    public boolean tryAdvance(Consumer<? super TEntry> action) {
+      while (entries.isEmpty()) {
+        if (directories.isEmpty()) {
+          return false;
+        }
+        expand(directories.pollFirst());
+      }
+      action.accept(entries.pollFirst());
+      return true;
+    }
+
+    /**
+     * Hands half of the directories yet to be listed to the new spliterator, taking them from the
+     * shallow end where the subtrees are likely to be the largest.  A lone directory is listed first
+     * so that the walk can split right from the root.
+     */
+    public Spliterator<TEntry> trySplit() {
+      while (directories.size() == 1) {
+        expand(directories.pollFirst());
+      }
+      if (directories.size() < 2) {
+        return null;
+      }
+      Deque<Pending> split = new ArrayDeque<Pending>();
+      for (int i = directories.size() / 2; i > 0; i--) {
+        split.addFirst(directories.pollLast());
+      }
+      return new WalkSpliterator(split);
+    }
+
+    /**
+     * Lists the directory, queueing its entries and putting its sub-directories in front of the
+     * pending directories so that a sequential walk goes depth first
+     */
+    private void expand(Pending pending) {
+      TDirectoryListing listing;
+      try {
+        listing = pending.directory.list(directoryFilter, fileFilter);
+      } catch (TIoException e) {
+        throw new TIoRuntimeException(e);
+      }
+      List<TDirectory> dirs = listing.dirs();
+      entries.addAll(dirs);
+      entries.addAll(listing.files());
+      int depth = pending.depth + 1;
+      if (depth < maxDepth) {
+        for (int i = dirs.size() - 1; i >= 0; i--) {
+          directories.addFirst(new Pending(dirs.get(i), depth));
+        }
+      }
+    }
+
+    public long estimateSize() {
+      return Long.MAX_VALUE;
+    }
+
+    public int characteristics() {
+      return DISTINCT | NONNULL;
+    }
+  }
+}
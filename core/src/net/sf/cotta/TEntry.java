@@ -107,6 +107,15 @@ abstract public class TEntry implements Comparable<TEntry> {
 
   public abstract boolean exists();
 
+  /**
+   * Fetches the type, length and last modified time of the entry from the file system in one call
+   *
+   * @return a snapshot of the attributes
+   */
+  public EntryAttributes attributes() {
+    return filesystem().attributes(path);
+  }
+
   public int hashCode() {
     return filesystem().hashCode(path);
   }
@@ -7,7 +7,10 @@ import java.io.*;
 import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
 import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -21,6 +24,12 @@ import java.util.List;
  * @see TDirectory#file(TPath)
  */
 public class TFile extends TEntry {
+  private static final int COPY_BUFFER_SIZE = 64 * 1024;
+  private static final ThreadLocal<byte[]> COPY_BUFFER = new ThreadLocal<byte[]>() {
+    protected byte[] initialValue() {
+      return new byte[COPY_BUFFER_SIZE];
+    }
+  };
 
   /**
    * Create TFile instance backed up by the file system
@@ -153,24 +162,103 @@ public class TFile extends TEntry {
     return filesystem().createInputStream(path);
   }
 
+  /**
+   * Copies the content to the target file.  When both file systems provide channels, the content is
+   * transferred between the channels, which lets the operating system copy physical files without
+   * passing the bytes through the Java heap.  Otherwise the streams are copied through a large buffer.
+   *
+   * @param target target file
+   * @throws TIoException error in copying
+   */
   public void copyTo(final TFile target) throws TIoException {
     target.write(new OutputProcessor() {
       public void process(OutputManager manager) throws IOException {
-        copyTo(manager.outputStream());
+        OutputStream outputStream = manager.outputStream();
+        copyTo(outputStream, target.outputChannel(outputStream));
       }
     });
   }
 
   public void copyTo(final OutputStream outputStream) throws TIoException {
+    copyTo(outputStream, null);
+  }
+
+  private void copyTo(final OutputStream outputStream, final FileChannel outputChannel) throws TIoException {
     read(new InputProcessor() {
       public void process(InputManager inputManager) throws IOException {
-        copy(inputManager.inputStream(), outputStream);
+        FileChannel inputChannel = inputChannel(inputManager);
+        if (inputChannel == null) {
+          copy(inputManager.inputStream(), outputStream);
+        } else if (outputChannel != null) {
+          transfer(inputChannel, outputChannel);
+        } else {
+          transfer(inputChannel, outputStream instanceof FileOutputStream ?
+              ((FileOutputStream) outputStream).getChannel() : Channels.newChannel(outputStream));
+        }
       }
     });
   }
 
-  private void copy(InputStream is, OutputStream os) throws IOException {
-    byte[] buffer = new byte[256];
+  /**
+   * The input channel, or null if the file system does not support channels
+   */
+  private FileChannel inputChannel(InputManager inputManager) throws TIoException {
+    try {
+      return inputManager.channel();
+    } catch (UnsupportedOperationException e) {
+      return null;
+    }
+  }
+
+  /**
+   * The output channel of the output stream, or null if the file system does not support channels
+   */
+  private FileChannel outputChannel(OutputStream outputStream) throws TIoException {
+    try {
+      return filesystem().createOutputChannel(path, outputStream);
+    } catch (UnsupportedOperationException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Transfers the whole input to the output, copying the rest through a buffer once transferTo stops making
+   * progress, as it does when the output takes less than it is given
+   */
+  private void transfer(FileChannel input, WritableByteChannel output) throws IOException {
+    long size = input.size();
+    long position = 0;
+    while (position < size) {
+      long transferred = input.transferTo(position, size - position, output);
+      if (transferred <= 0) {
+        copy(input, position, size, output);
+        return;
+      }
+      position += transferred;
+    }
+  }
+
+  private void copy(FileChannel input, long position, long size, WritableByteChannel output) throws IOException {
+    ByteBuffer buffer = ByteBuffer.wrap(COPY_BUFFER.get());
+    while (position < size) {
+      buffer.clear();
+      buffer.limit((int) Math.min(buffer.capacity(), size - position));
+      int read = input.read(buffer, position);
+      if (read <= 0) {
+        throw new TIoException(path, "content ended at <" + position + "> of <" + size + "> bytes");
+      }
+      buffer.flip();
+      while (buffer.hasRemaining()) {
+        if (output.write(buffer) <= 0) {
+          throw new TIoException(path, "target stopped taking the content at <" + position + "> of <" + size + "> bytes");
+        }
+      }
+      position += read;
+    }
+  }
+
+  private static void copy(InputStream is, OutputStream os) throws IOException {
+    byte[] buffer = COPY_BUFFER.get();
     int read = is.read(buffer, 0, buffer.length);
     while (read > -1) {
       os.write(buffer, 0, read);
@@ -249,6 +337,22 @@ public class TFile extends TEntry {
     Input.with(inputStreamFactory()).read(processor);
   }
 
+  /**
+   * Map the file for random access.  Files larger than 2GB are mapped as a sequence of regions behind
+   * one long indexed view, and the regions are unmapped when the processor returns.  Files on a file system
+   * that cannot map, like the in-memory file system, are read into heap buffers instead.
+   *
+   * @param processor processor for the mapped content
+   * @throws TIoException error in mapping or processing the file
+   */
+  public void map(final MappedProcessor processor) throws TIoException {
+    read(new InputProcessor() {
+      public void process(InputManager inputManager) throws IOException {
+        processor.process(inputManager.mappedContent());
+      }
+    });
+  }
+
   /**
    * Read the file with a line processor
    *
@@ -1,27 +1,34 @@
 package net.sf.cotta;
 
 import java.io.File;
-import java.util.*;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Stack;
 
 
 /**
  * An object presentation of path to mainly used by the implemenation of Cotta classes.
  * The methods on TPath has been exposed through TFile and TDirectory
+ * <p/>
+ * A path is either backed by an element array, or linked to its parent path with only the last
+ * element stored in itself.  Paths created through {@link #join(String)} are linked so that all
+ * the children of a directory share the path of the directory instead of copying its elements.
  */
 public final class TPath implements Comparable<TPath> {
   private final String headElement;
-  private final String[] elements;
+  private final String[] elements; // null for a linked path
   private final int offset;
   private final int count;
+  private final TPath parentNode; // only set for a linked path
+  private final String name; // only set for a linked path
   private int hash; // Default to 0
-  private static final String WINDOWS_SEPARATOR_PATTERN = "\\\\";
+  private volatile int[] prefixHashes; // hash of each prefix of a path backed by an element array
+  private static final char WINDOWS_SEPARATOR_CHAR = '\\';
   private static final char NATIVE_SEPERATOR_CHAR = '/';
-  private static final String NATIVE_SEPARATOR = "/";
   private static final String ROOT_HEAD = "";
   private static final String WINDOWS_NETWORK_ROOT_HEAD = "\\\\";
   private static final String CURRENT_DIR_HEAD = ".";
+  private static volatile ParseCache parseCache;
 
   /**
    * Creates an instance of TPath with the given path elements
@@ -37,6 +44,8 @@ public final class TPath implements Comparable<TPath> {
     this.offset = 0;
     this.count = size;
     this.headElement = headElement;
+    this.parentNode = null;
+    this.name = null;
   }
 
   /**
@@ -52,6 +61,36 @@ public final class TPath implements Comparable<TPath> {
     this.offset = offset;
     this.count = count;
     this.headElement = headElement;
+    this.parentNode = null;
+    this.name = null;
+  }
+
+  /**
+   * Creates the path from the elements without copying them.  The head element needs to be
+   * one of the interned head constants for the relative and root checks to work
+   *
+   * @param headElement interned head element
+   * @param elements path elements
+   * @return the path
+   */
+  static TPath fromElements(String headElement, String[] elements) {
+    return new TPath(headElement, 0, elements.length, elements);
+  }
+
+  /**
+   * Links the path to the parent path, sharing all the elements of the parent.
+   *
+   * @param parentNode the parent path
+   * @param name the last element
+   */
+  private TPath(TPath parentNode, String name) {
+    this.elements = null;
+    this.offset = 0;
+    this.count = parentNode.count + 1;
+    this.headElement = parentNode.headElement;
+    this.parentNode = parentNode;
+    this.name = name;
+    this.hash = 29 * parentNode.hashCode() + name.hashCode();
   }
 
   /**
@@ -74,6 +113,9 @@ public final class TPath implements Comparable<TPath> {
     if (count == 0) {
       return headElement;
     }
+    if (elements == null) {
+      return name;
+    }
     return elements[offset + count - 1];
   }
 
@@ -88,6 +130,9 @@ public final class TPath implements Comparable<TPath> {
     if (count == 0) {
       return null;
     }
+    if (elements == null) {
+      return parentNode;
+    }
     return subpath(0, count - 1);
   }
 
@@ -101,7 +146,8 @@ public final class TPath implements Comparable<TPath> {
   }
 
   /**
-   * Join with a path element to form a new path.  Used by TDirectory to get subdirectory or file
+   * Join with a path element to form a new path.  Used by TDirectory to get subdirectory or file.
+   * The resulting path is linked to the current path, so no elements are copied
    *
    * @param name The name of the path element to join
    * @return The resulting path under current path
@@ -109,10 +155,7 @@ public final class TPath implements Comparable<TPath> {
    * @see TDirectory#dir(String)
    */
   public TPath join(String name) {
-    String[] newElements = new String[count + 1];
-    System.arraycopy(elements, offset, newElements, 0, count);
-    newElements[count] = name;
-    return new TPath(headElement, newElements);
+    return new TPath(this, name);
   }
 
   /**
@@ -126,14 +169,38 @@ public final class TPath implements Comparable<TPath> {
    * @see TDirectory#dir(TPath)
    */
   public TPath join(TPath path) {
+    if (path.count == 1 && !isReference(path.lastElementName()) && !containsReference()) {
+      return join(path.lastElementName());
+    }
     return append(path).normalize();
   }
 
+  private boolean containsReference() {
+    TPath node = this;
+    while (node.elements == null) {
+      if (isReference(node.name)) {
+        return true;
+      }
+      node = node.parentNode;
+    }
+    for (int i = node.offset; i < node.offset + node.count; i++) {
+      if (isReference(node.elements[i])) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private boolean isReference(String element) {
+    return isCurrentDirectoryReference(element) || isParentDirectoryReference(element);
+  }
+
   private TPath normalize() {
     Stack<String> result = new Stack<String>();
-    int off = offset;
+    TPath flat = flat();
+    int off = flat.offset;
     for (int i = 0; i < count; i++ ) {
-      String element = elements[off++];
+      String element = flat.elements[off++];
       if (isCurrentDirectoryReference(element)) {
         // do nothing
       } else if (isParentDirectoryReference(element)) {
@@ -160,20 +227,21 @@ public final class TPath implements Comparable<TPath> {
    * @return The result of the append
    */
   public TPath append(TPath path) {
+    if (path.count == 1) {
+      return join(path.lastElementName());
+    }
     int length = count + path.count;
     String[] joined = new String[length];
-    System.arraycopy(elements, offset, joined, 0, count);
-    System.arraycopy(path.elements, path.offset, joined, count, path.count);
-    return new TPath(headElement, joined);
+    copyElements(joined, 0);
+    path.copyElements(joined, count);
+    return new TPath(headElement, 0, length, joined);
   }
 
   public TPath intern() {
-    if (offset == 0 && count == elements.length) {
+    if (elements != null && offset == 0 && count == elements.length) {
       return this;
     }
-    String[] newElements = new String[count];
-    System.arraycopy(elements, offset, newElements, 0, count);
-    return new TPath(headElement, newElements);
+    return new TPath(headElement, 0, count, toElementArray());
   }
 
   public boolean equals(Object o) {
@@ -182,32 +250,64 @@ public final class TPath implements Comparable<TPath> {
     if (o instanceof TPath) {
       TPath tPath = (TPath) o;
       if (headElement == tPath.headElement || headElement.equals(tPath.headElement)) {
-        int n = count;
-        if (n == tPath.count) {
-          String[] e1 = elements;
-          String[] e2 = tPath.elements;
-          int i = offset;
-          int j = tPath.offset;
-          while (n-- != 0) {
-            if (!e1[i++].equals(e2[j++])) {
-              return false;
-            }
-          }
-          return true;
-        }
+        return count == tPath.count && sameElements(this, tPath, count);
       }
     }
     return false;
   }
 
+  /**
+   * Compares the first n elements of the two paths, starting from the n-th element and going backwards,
+   * so that linked paths stop comparing as soon as they reach a common parent.  A linked path
+   * passed in needs to have exactly n elements.
+   *
+   * @param one path one
+   * @param two path two
+   * @param n number of elements to compare
+   * @return true if the first n elements are equal
+   */
+  private static boolean sameElements(TPath one, TPath two, int n) {
+    while (n > 0) {
+      if (one == two) {
+        return true;
+      }
+      String e1;
+      String e2;
+      if (one.elements == null) {
+        e1 = one.name;
+        one = one.parentNode;
+      }
+      else {
+        e1 = one.elements[one.offset + n - 1];
+      }
+      if (two.elements == null) {
+        e2 = two.name;
+        two = two.parentNode;
+      }
+      else {
+        e2 = two.elements[two.offset + n - 1];
+      }
+      if (!e1.equals(e2)) {
+        return false;
+      }
+      n--;
+    }
+    return true;
+  }
+
   public int hashCode() {
     int h = hash;
     if (h == 0) {
-      h = 29 * h + headElement.hashCode();
+      if (elements == null) {
+        h = 29 * parentNode.hashCode() + name.hashCode();
+      }
+      else {
+        h = 29 * h + headElement.hashCode();
 
-      int off = offset;
-      for (int i = 0; i < count; i++) {
-        h = 29 * h + elements[off++].hashCode();
+        int off = offset;
+        for (int i = 0; i < count; i++) {
+          h = 29 * h + elements[off++].hashCode();
+        }
       }
       hash = h;
     }
@@ -226,48 +326,131 @@ public final class TPath implements Comparable<TPath> {
   }
 
   /**
-   * Parses a path string into a TPath object.  Both '/' and '\' are treated as the file separator
+   * Parses a path string into a TPath object.  Both '/' and '\' are treated as the file separator.
+   * If the parse cache is enabled, the same path string will resolve to the same TPath instance
+   * as long as it stays in the cache
    *
    * @param pathString The path string that represents the path
    * @return The path object that match to the path string
    * @throws IllegalArgumentException if the path string is null
+   * @see #enableParseCache(int)
    */
   public static TPath parse(String pathString) {
     if (pathString == null || pathString.length() == 0) {
       throw new IllegalArgumentException("null or empty path string is not allowed");
     }
-    Pattern currentDir = Pattern.compile("(\\.)|(\\.(\\\\|/)(.*))");
-    Pattern windowsRoot = Pattern.compile("([A-Z|a-z]:)[\\\\|/]?(.*)");
+    ParseCache cache = parseCache;
+    if (cache == null) {
+      return parsePathString(pathString);
+    }
+    TPath path = cache.lookup(pathString);
+    if (path == null) {
+      path = parsePathString(pathString);
+      cache.store(pathString, path);
+    }
+    return path;
+  }
+
+  /**
+   * Enables the process wide cache of parsed paths.  The cache is keyed by the raw path string
+   * and evicts the least recently used entry once it holds more than the given number of entries.
+   *
+   * @param maxEntries maximum number of paths to keep in the cache
+   * @throws IllegalArgumentException if the maximum number of entries is not positive
+   */
+  public static void enableParseCache(int maxEntries) {
+    if (maxEntries <= 0) {
+      throw new IllegalArgumentException("parse cache size needs to be positive:" + maxEntries);
+    }
+    parseCache = new ParseCache(maxEntries);
+  }
+
+  /**
+   * Disables the parse cache and releases all the cached paths
+   */
+  public static void disableParseCache() {
+    parseCache = null;
+  }
+
+  /**
+   * Scans the path string once to determine the head element, then splits the rest into elements
+   * without creating any intermediate strings.
+   *
+   * @param pathString the non-empty path string
+   * @return the parsed path
+   */
+  private static TPath parsePathString(String pathString) {
+    int length = pathString.length();
+    char first = pathString.charAt(0);
     String headElement;
-    Matcher matcher;
+    int start;
     if (pathString.startsWith(WINDOWS_NETWORK_ROOT_HEAD)) {
       headElement = WINDOWS_NETWORK_ROOT_HEAD;
-      pathString = pathString.substring(WINDOWS_NETWORK_ROOT_HEAD.length());
+      start = WINDOWS_NETWORK_ROOT_HEAD.length();
     }
-    else if (pathString.startsWith("\\") || pathString.startsWith("/")) {
+    else if (isSeparator(first)) {
       headElement = ROOT_HEAD;
-      pathString = pathString.substring(1);
+      start = 1;
     }
-    else if ((matcher = currentDir.matcher(pathString)).matches()) {
+    else if (first == '.' && (length == 1 || isSeparator(pathString.charAt(1)))) {
       headElement = CURRENT_DIR_HEAD;
-      pathString = matcher.group(4);
-      if (pathString == null) {
-        pathString = "";
-      }
+      start = 1;
     }
-    else if ((matcher = windowsRoot.matcher(pathString)).matches()) {
-      headElement = matcher.group(1);
-      pathString = matcher.group(2);
+    else if (length > 1 && pathString.charAt(1) == ':' && isDriveLetter(first)) {
+      headElement = pathString.substring(0, 2);
+      start = 2;
     }
     else {
       headElement = CURRENT_DIR_HEAD;
+      start = 0;
+    }
+    String[] elements = splitElements(pathString, start);
+    return new TPath(headElement, 0, elements.length, elements);
+  }
+
+  private static String[] splitElements(String pathString, int start) {
+    String[] elements = new String[countElements(pathString, start)];
+    int length = pathString.length();
+    int index = 0;
+    int elementStart = -1;
+    for (int i = start; i < length; i++) {
+      if (isSeparator(pathString.charAt(i))) {
+        if (elementStart != -1) {
+          elements[index++] = pathString.substring(elementStart, i);
+          elementStart = -1;
+        }
+      }
+      else if (elementStart == -1) {
+        elementStart = i;
+      }
     }
-    pathString = pathString.replaceAll(WINDOWS_SEPARATOR_PATTERN, NATIVE_SEPARATOR);
-    List<String> list = new ArrayList<String>();
-    for (StringTokenizer tokenizer = new StringTokenizer(pathString, NATIVE_SEPARATOR); tokenizer.hasMoreTokens();) {
-      list.add(tokenizer.nextToken());
+    if (elementStart != -1) {
+      elements[index] = pathString.substring(elementStart, length);
     }
-    return new TPath(headElement, list.toArray(new String[list.size()]));
+    return elements;
+  }
+
+  private static int countElements(String pathString, int start) {
+    int count = 0;
+    boolean inElement = false;
+    for (int i = start; i < pathString.length(); i++) {
+      if (isSeparator(pathString.charAt(i))) {
+        inElement = false;
+      }
+      else if (!inElement) {
+        inElement = true;
+        count++;
+      }
+    }
+    return count;
+  }
+
+  private static boolean isSeparator(char c) {
+    return c == NATIVE_SEPERATOR_CHAR || c == WINDOWS_SEPARATOR_CHAR;
+  }
+
+  private static boolean isDriveLetter(char c) {
+    return (c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z');
   }
 
   public String toPathString() {
@@ -292,9 +475,10 @@ public final class TPath implements Comparable<TPath> {
     else {
       buffer.append(headElement);
     }
-    int off = offset;
+    TPath flat = flat();
+    int off = flat.offset;
     for (int i = 0; i < count; i++) {
-      buffer.append(seperator).append(elements[off++]);
+      buffer.append(seperator).append(flat.elements[off++]);
     }
     return buffer.toString();
   }
@@ -309,10 +493,12 @@ public final class TPath implements Comparable<TPath> {
    * @see TDirectory#isChildOf(TDirectory)
    */
   public boolean isChildOf(TPath path) {
-    if (count <= path.count) {
+    if (count <= path.count || !headElement.equals(path.headElement)) {
       return false;
     }
-    return checkCommonElements(path) == path.count;
+    TPath prefix = nodeAt(path.count);
+    return prefix == path
+        || (prefix.prefixHash(path.count) == path.hashCode() && sameElements(prefix, path, path.count));
   }
 
   private boolean isParentDirectoryReference(String element) {
@@ -349,17 +535,41 @@ public final class TPath implements Comparable<TPath> {
     for (int i = 0; i < numberOfThatExcessElements; i++) {
       relativePath[i] = "..";
     }
-    System.arraycopy(elements, index, relativePath, numberOfThatExcessElements, numberOfThisExcessElements);
+    TPath flat = flat();
+    System.arraycopy(flat.elements, flat.offset + index, relativePath, numberOfThatExcessElements, numberOfThisExcessElements);
     return new TPath(CURRENT_DIR_HEAD, relativePath);
   }
 
+  /**
+   * Finds the number of common elements by a binary search over the prefix hashes, and only
+   * compares the elements to confirm the match.  An unequal prefix hash means the prefixes
+   * are different, so the elements are only compared once unless the hashes collide.
+   *
+   * @param path the other path
+   * @return number of common elements
+   */
   private int checkCommonElements(TPath path) {
     if (!headElement.equals(path.headElement)) {
       return 0;
     }
+    int low = 0;
+    int high = Math.min(count, path.count);
+    while (low < high) {
+      int middle = (low + high + 1) >>> 1;
+      if (prefixHash(middle) == path.prefixHash(middle)) {
+        low = middle;
+      } else {
+        high = middle - 1;
+      }
+    }
+    if (sameElements(nodeAt(low), path.nodeAt(low), low)) {
+      return low;
+    }
+    TPath one = flat();
+    TPath two = path.flat();
     int i = 0;
     int max = Math.min(count, path.count);
-    while (i < max && elements[offset + i].equals(path.elements[path.offset + i])) {
+    while (i < max && one.elements[one.offset + i].equals(two.elements[two.offset + i])) {
       i++;
     }
     return i;
@@ -372,13 +582,18 @@ public final class TPath implements Comparable<TPath> {
    * @return comparing result
    */
   public int compareTo(TPath that) {
+    if (parentNode != null && parentNode == that.parentNode) {
+      return name.compareTo(that.name);
+    }
+    TPath one = flat();
+    TPath two = that.flat();
     int len1 = count;
     int len2 = that.count;
     int n = Math.min(len1, len2);
-    String v1[] = elements;
-    String v2[] = that.elements;
-    int i = offset;
-    int j = that.offset;
+    String v1[] = one.elements;
+    String v2[] = two.elements;
+    int i = one.offset;
+    int j = two.offset;
 
     if (i == j) {
       int k = i;
@@ -416,16 +631,69 @@ public final class TPath implements Comparable<TPath> {
     if (beginIndex == 0 && endIndex == count) {
       return this;
     }
-    else {
-      String head;
-      if (beginIndex == 0) {
-        head = this.headElement;
+    else if (beginIndex == 0) {
+      TPath node = this;
+      while (node.elements == null && node.count > endIndex) {
+        node = node.parentNode;
       }
-      else {
-        head = CURRENT_DIR_HEAD;
+      if (node.count == endIndex) {
+        return node;
       }
-      return new TPath(head, offset + beginIndex, endIndex - beginIndex, elements);
+      TPath prefix = new TPath(headElement, node.offset, endIndex, node.elements);
+      prefix.prefixHashes = node.prefixHashes;
+      return prefix;
+    }
+    else {
+      TPath flat = flat();
+      return new TPath(CURRENT_DIR_HEAD, flat.offset + beginIndex, endIndex - beginIndex, flat.elements);
+    }
+  }
+
+  /**
+   * The hash code of the prefix with the given number of elements, which is the same as
+   * the hash code of subpath(0, length).  The prefix hashes of a path backed by an element array
+   * are calculated once, and a linked path gets them from its parents.
+   *
+   * @param length number of elements of the prefix
+   * @return the hash code of the prefix
+   */
+  int prefixHash(int length) {
+    TPath node = nodeAt(length);
+    if (node.count == length) {
+      return node.hashCode();
     }
+    return node.prefixHashes()[length];
+  }
+
+  /**
+   * Walks up the linked parents until the path has the given number of elements or is backed
+   * by an element array
+   *
+   * @param length the number of elements
+   * @return the linked path with exactly the number of elements, or a path backed by an array with
+   *         at least the number of elements
+   */
+  private TPath nodeAt(int length) {
+    TPath node = this;
+    while (node.elements == null && node.count > length) {
+      node = node.parentNode;
+    }
+    return node;
+  }
+
+  private int[] prefixHashes() {
+    int[] hashes = prefixHashes;
+    if (hashes == null) {
+      hashes = new int[count + 1];
+      int h = headElement.hashCode();
+      hashes[0] = h;
+      for (int i = 0; i < count; i++) {
+        h = 29 * h + elements[offset + i].hashCode();
+        hashes[i + 1] = h;
+      }
+      prefixHashes = hashes;
+    }
+    return hashes;
   }
 
   public TPath subpath(int beginIndex) {
@@ -433,20 +701,31 @@ public final class TPath implements Comparable<TPath> {
   }
 
   public TPath trim() {
+    TPath flat = flat();
     int len = count;
     int st = 0;
 
-    while (st < len && isCurrentDirectoryReference(elements[offset + st])) {
+    while (st < len && isCurrentDirectoryReference(flat.elements[flat.offset + st])) {
       st++;
     }
-    while (st < len && isCurrentDirectoryReference(elements[offset + len - 1])) {
+    while (st < len && isCurrentDirectoryReference(flat.elements[flat.offset + len - 1])) {
       len--;
     }
     return (st > 0 || len < count) ? subpath(st, len) : this;
   }
 
   public String elementAt(int i) {
-    return elements[i];
+    if (i < 0 || i >= count) {
+      throw new ArrayIndexOutOfBoundsException(i);
+    }
+    TPath node = this;
+    while (node.elements == null) {
+      if (node.count == i + 1) {
+        return node.name;
+      }
+      node = node.parentNode;
+    }
+    return node.elements[node.offset + i];
   }
 
   public int length() {
@@ -455,7 +734,52 @@ public final class TPath implements Comparable<TPath> {
 
   String[] toElementArray() {
     String[] result = new String[count];
-    System.arraycopy(elements, offset, result, 0, count);
+    copyElements(result, 0);
     return result;
   }
+
+  private void copyElements(String[] target, int targetOffset) {
+    TPath node = this;
+    while (node.elements == null) {
+      target[targetOffset + node.count - 1] = node.name;
+      node = node.parentNode;
+    }
+    System.arraycopy(node.elements, node.offset, target, targetOffset, node.count);
+  }
+
+  /**
+   * Returns the path backed by an element array, which is the path itself unless it is a linked path.
+   *
+   * @return path backed by an element array
+   */
+  private TPath flat() {
+    if (elements != null) {
+      return this;
+    }
+    return new TPath(headElement, 0, count, toElementArray());
+  }
+
+  /**
+   * Bounded LRU cache of parsed paths keyed by the raw path string.  TPath is immutable so the
+   * cached instances can be shared freely.
+   */
+  private static final class ParseCache {
+    private final Map<String, TPath> paths;
+
+    ParseCache(final int maxEntries) {
+      paths = new LinkedHashMap<String, TPath>(16, 0.75f, true) {
+        protected boolean removeEldestEntry(Map.Entry<String, TPath> eldest) {
+          return size() > maxEntries;
+        }
+      };
+    }
+
+    synchronized TPath lookup(String pathString) {
+      return paths.get(pathString);
+    }
+
+    synchronized void store(String pathString, TPath path) {
+      paths.put(pathString, path);
+    }
+  }
 }
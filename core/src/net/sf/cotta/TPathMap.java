@@ -0,0 +1,291 @@
+package net.sf.cotta;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * A map keyed by TPath that keeps the keys in a trie of path elements.  Besides the normal map operations,
+ * it finds the key that is the closest ancestor of a path, and iterates or removes all the keys under a path,
+ * all in time proportional to the depth of the path.
+ * <p/>
+ * The iterators do not support removal, use {@link #remove(Object)} or {@link #removeSubtree(TPath)} instead.
+ *
+ * @param <V> type of the values
+ * @see TPathSet
+ */
+public class TPathMap<V> extends AbstractMap<TPath, V> {
+  private final Map<String, Node<V>> roots = new HashMap<String, Node<V>>();
+
+  public int size() {
+    int size = 0;
+    for (Node<V> root : roots.values()) {
+      size += root.size;
+    }
+    return size;
+  }
+
+  public boolean containsKey(Object key) {
+    Node<V> node = key instanceof TPath ? find((TPath) key) : null;
+    return node != null && node.hasValue;
+  }
+
+  public V get(Object key) {
+    Node<V> node = key instanceof TPath ? find((TPath) key) : null;
+    return node != null ? node.value : null;
+  }
+
+  public V put(TPath path, V value) {
+    Node<V> root = roots.get(path.headElement());
+    if (root == null) {
+      root = new Node<V>();
+      root.rootPath = path.root();
+      roots.put(path.headElement(), root);
+    }
+    String[] elements = path.toElementArray();
+    Node<V> node = root;
+    for (String element : elements) {
+      node = node.childFor(element);
+    }
+    V previous = node.value;
+    if (!node.hasValue) {
+      node.hasValue = true;
+      adjustSize(root, elements, elements.length, 1);
+    }
+    node.value = value;
+    return previous;
+  }
+
+  public V remove(Object key) {
+    if (!(key instanceof TPath)) {
+      return null;
+    }
+    TPath path = (TPath) key;
+    Node<V> node = find(path);
+    if (node == null || !node.hasValue) {
+      return null;
+    }
+    V previous = node.value;
+    node.value = null;
+    node.hasValue = false;
+    detach(path, 1);
+    return previous;
+  }
+
+  public void clear() {
+    roots.clear();
+  }
+
+  /**
+   * Removes the path and all the paths under it
+   *
+   * @param path the path of the subtree to remove
+   * @return number of entries removed
+   */
+  public int removeSubtree(TPath path) {
+    Node<V> node = find(path);
+    if (node == null || node.size == 0) {
+      return 0;
+    }
+    int removed = node.size;
+    detach(path, removed);
+    return removed;
+  }
+
+  /**
+   * Finds the entry of which the key is the given path or its closest ancestor
+   *
+   * @param path path to match
+   * @return the entry with the longest matching key, or null if none of the keys is a prefix of the path
+   */
+  public Map.Entry<TPath, V> longestPrefixMatch(TPath path) {
+    Node<V> node = roots.get(path.headElement());
+    if (node == null) {
+      return null;
+    }
+    Node<V> match = node.hasValue ? node : null;
+    int matchLength = 0;
+    int length = path.length();
+    String[] elements = length == 0 ? null : path.toElementArray();
+    for (int i = 0; i < length && node != null; i++) {
+      node = node.child(elements[i]);
+      if (node != null && node.hasValue) {
+        match = node;
+        matchLength = i + 1;
+      }
+    }
+    return match == null ? null : new SimpleImmutableEntry<TPath, V>(path.subpath(0, matchLength), match.value);
+  }
+
+  /**
+   * Checks if any of the keys is the path or its ancestor
+   *
+   * @param path path to check
+   * @return true if the path or any of its ancestors is a key
+   */
+  public boolean containsPrefixOf(TPath path) {
+    return longestPrefixMatch(path) != null;
+  }
+
+  /**
+   * The entries of the path and all the paths under it.  The keys are joined from the given path as
+   * the trie is walked.
+   *
+   * @param path the path of the subtree
+   * @return the entries in the subtree
+   */
+  public Iterable<Map.Entry<TPath, V>> subtree(final TPath path) {
+    final Node<V> node = find(path);
+    if (node == null) {
+      return Collections.emptySet();
+    }
+    return new Iterable<Map.Entry<TPath, V>>() {
+      public Iterator<Map.Entry<TPath, V>> iterator() {
+        return new EntryIterator<V>(Collections.singletonMap(path, node));
+      }
+    };
+  }
+
+  public Set<Map.Entry<TPath, V>> entrySet() {
+    return new AbstractSet<Map.Entry<TPath, V>>() {
+      public Iterator<Map.Entry<TPath, V>> iterator() {
+        Map<TPath, Node<V>> start = new HashMap<TPath, Node<V>>(roots.size());
+        for (Node<V> root : roots.values()) {
+          start.put(root.rootPath, root);
+        }
+        return new EntryIterator<V>(start);
+      }
+
+      public int size() {
+        return TPathMap.this.size();
+      }
+    };
+  }
+
+  private Node<V> find(TPath path) {
+    Node<V> node = roots.get(path.headElement());
+    int length = path.length();
+    if (node == null || length == 0) {
+      return node;
+    }
+    String[] elements = path.toElementArray();
+    for (int i = 0; i < length && node != null; i++) {
+      node = node.child(elements[i]);
+    }
+    return node;
+  }
+
+  /**
+   * Takes the number of entries off the path and its ancestors, and prunes the nodes left
+   * with no entries, starting from the node of the path
+   */
+  private void detach(TPath path, int removed) {
+    Node<V> root = roots.get(path.headElement());
+    String[] elements = path.toElementArray();
+    adjustSize(root, elements, elements.length, -removed);
+    if (root.size == 0) {
+      roots.remove(path.headElement());
+      return;
+    }
+    Node<V> parent = root;
+    for (String element : elements) {
+      Node<V> child = parent.child(element);
+      if (child.size == 0) {
+        parent.children.remove(element);
+        return;
+      }
+      parent = child;
+    }
+  }
+
+  private void adjustSize(Node<V> root, String[] elements, int length, int delta) {
+    Node<V> node = root;
+    node.size += delta;
+    for (int i = 0; i < length; i++) {
+      node = node.child(elements[i]);
+      node.size += delta;
+    }
+  }
+
+  private static class Node<V> {
+    private Map<String, Node<V>> children;
+    private V value;
+    private boolean hasValue;
+    private int size; // number of entries in the subtree, including this node
+    private TPath rootPath; // only set for the root nodes
+
+    Node<V> child(String element) {
+      return children == null ? null : children.get(element);
+    }
+
+    Node<V> childFor(String element) {
+      if (children == null) {
+        children = new HashMap<String, Node<V>>();
+      }
+      Node<V> child = children.get(element);
+      if (child == null) {
+        child = new Node<V>();
+        children.put(element, child);
+      }
+      return child;
+    }
+  }
+
+  /**
+   * Depth first iterator over the entries under the given nodes
+   */
+  private static class EntryIterator<V> implements Iterator<Map.Entry<TPath, V>> {
+    private final Deque<Node<V>> nodes = new ArrayDeque<Node<V>>();
+    private final Deque<TPath> paths = new ArrayDeque<TPath>();
+    private Map.Entry<TPath, V> next;
+
+    EntryIterator(Map<TPath, Node<V>> start) {
+      for (Map.Entry<TPath, Node<V>> entry : start.entrySet()) {
+        nodes.push(entry.getValue());
+        paths.push(entry.getKey());
+      }
+      advance();
+    }
+
+    private void advance() {
+      next = null;
+      while (next == null && !nodes.isEmpty()) {
+        Node<V> node = nodes.pop();
+        TPath path = paths.pop();
+        if (node.children != null) {
+          for (Map.Entry<String, Node<V>> child : node.children.entrySet()) {
+            nodes.push(child.getValue());
+            paths.push(path.join(child.getKey()));
+          }
+        }
+        if (node.hasValue) {
+          next = new SimpleImmutableEntry<TPath, V>(path, node.value);
+        }
+      }
+    }
+
+    public boolean hasNext() {
+      return next != null;
+    }
+
+    public Map.Entry<TPath, V> next() {
+      if (next == null) {
+        throw new NoSuchElementException();
+      }
+      Map.Entry<TPath, V> result = next;
+      advance();
+      return result;
+    }
+
+    public void remove() {
+      throw new UnsupportedOperationException("use TPathMap.remove or TPathMap.removeSubtree");
+    }
+  }
+}
@@ -0,0 +1,335 @@
+package net.sf.cotta;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A glob pattern compiled to match against the elements of a TPath, without building the path string.
+ * <ul>
+ * <li><code>*</code> matches any number of characters within one element</li>
+ * <li><code>?</code> matches one character</li>
+ * <li><code>[abc]</code>, <code>[a-z]</code> and <code>[!a-z]</code> match one character in or not in the class</li>
+ * <li><code>**</code> as a whole element matches any number of elements, including none</li>
+ * </ul>
+ * Both '/' and '\' separate the elements, the same as {@link TPath#parse(String)}, so there is no escape character.
+ * The pattern is anchored at its head element: an absolute pattern only matches absolute paths with the same head,
+ * and a relative pattern only matches relative paths.  Use {@link #compile(TPath, String)} to match under a directory.
+ * <p/>
+ * As a filter it accepts the files and directories that match the pattern.  {@link #subtreeFilter()} accepts the
+ * directories under which a match is still possible, so that a walker can skip the rest.
+ */
+public class TPathMatcher implements TEntryFilter {
+  private final String headElement;
+  private final ElementPattern[] patterns; // null for "**"
+  private final String glob;
+
+  private TPathMatcher(String headElement, ElementPattern[] patterns, String glob) {
+    this.headElement = headElement;
+    this.patterns = patterns;
+    this.glob = glob;
+  }
+
+  /**
+   * Compiles the glob pattern
+   *
+   * @param glob glob pattern
+   * @return the compiled matcher
+   * @throws IllegalArgumentException if the pattern has an unclosed character class
+   */
+  public static TPathMatcher compile(String glob) {
+    TPath path = TPath.parse(glob);
+    return new TPathMatcher(path.headElement(), compile(path.toElementArray(), 0), glob);
+  }
+
+  /**
+   * Compiles the relative glob pattern to match the paths under the base directory.  The elements of
+   * the base directory are matched literally.
+   *
+   * @param base base directory
+   * @param glob relative glob pattern
+   * @return the compiled matcher
+   * @throws IllegalArgumentException if the pattern is not relative or has an unclosed character class
+   */
+  public static TPathMatcher compile(TPath base, String glob) {
+    TPath path = TPath.parse(glob);
+    if (!path.isRelative()) {
+      throw new IllegalArgumentException("pattern needs to be relative to the base:" + glob);
+    }
+    String[] baseElements = base.toElementArray();
+    ElementPattern[] patterns = compile(path.toElementArray(), baseElements.length);
+    for (int i = 0; i < baseElements.length; i++) {
+      patterns[i] = new ElementPattern(baseElements[i]);
+    }
+    String baseString = base.toPathString();
+    String separator = baseString.endsWith("/") ? "" : "/";
+    return new TPathMatcher(base.headElement(), patterns, baseString + separator + glob);
+  }
+
+  private static ElementPattern[] compile(String[] elements, int offset) {
+    ElementPattern[] patterns = new ElementPattern[offset + elements.length];
+    for (int i = 0; i < elements.length; i++) {
+      patterns[offset + i] = "**".equals(elements[i]) ? null : ElementPattern.compile(elements[i]);
+    }
+    return patterns;
+  }
+
+  /**
+   * Checks if the path matches the pattern
+   *
+   * @param path path to check
+   * @return true if the path matches
+   */
+  public boolean matches(TPath path) {
+    boolean[] states = statesAfter(path);
+    return states != null && states[patterns.length];
+  }
+
+  /**
+   * Checks if any path under the directory can match the pattern.  A walker can skip the whole subtree
+   * of a directory for which this returns false.
+   *
+   * @param directory path of the directory
+   * @return true if a path under the directory may match
+   */
+  public boolean mayMatchUnder(TPath directory) {
+    boolean[] states = statesAfter(directory);
+    if (states == null) {
+      return false;
+    }
+    for (int i = 0; i < patterns.length; i++) {
+      if (states[i]) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  public boolean accept(TFile file) {
+    return matches(file.toPath());
+  }
+
+  public boolean accept(TDirectory directory) {
+    return matches(directory.toPath());
+  }
+
+  /**
+   * Filter that accepts the directories under which a path may match
+   *
+   * @return the directory filter
+   * @see #mayMatchUnder(TPath)
+   */
+  public TDirectoryFilter subtreeFilter() {
+    return new TDirectoryFilter() {
+      public boolean accept(TDirectory directory) {
+        return mayMatchUnder(directory.toPath());
+      }
+    };
+  }
+
+  public String toString() {
+    return glob;
+  }
+
+  /**
+   * Runs the path elements through the pattern, where state i means the first i element patterns
+   * have been matched
+   *
+   * @return the states reached after all the elements, or null if none
+   */
+  private boolean[] statesAfter(TPath path) {
+    if (!headElement.equals(path.headElement())) {
+      return null;
+    }
+    int count = patterns.length;
+    boolean[] states = new boolean[count + 1];
+    boolean[] next = new boolean[count + 1];
+    states[0] = true;
+    skipAnyDepth(states);
+    for (String element : path.toElementArray()) {
+      boolean reached = false;
+      for (int i = 0; i < count; i++) {
+        if (!states[i]) {
+          continue;
+        }
+        if (patterns[i] == null) {
+          next[i] = true;
+          reached = true;
+        } else if (patterns[i].matches(element)) {
+          next[i + 1] = true;
+          reached = true;
+        }
+      }
+      if (!reached) {
+        return null;
+      }
+      boolean[] swap = states;
+      states = next;
+      next = swap;
+      Arrays.fill(next, false);
+      skipAnyDepth(states);
+    }
+    return states;
+  }
+
+  /**
+   * "**" can match no element, so reaching it also reaches the state after it
+   */
+  private void skipAnyDepth(boolean[] states) {
+    for (int i = 0; i < patterns.length; i++) {
+      if (states[i] && patterns[i] == null) {
+        states[i + 1] = true;
+      }
+    }
+  }
+
+  /**
+   * Pattern for one element
+   */
+  private static class ElementPattern {
+    private static final int LITERAL = 0;
+    private static final int ANY_CHAR = 1;
+    private static final int ANY_CHARS = 2;
+    private static final int CHAR_CLASS = 3;
+
+    private final String literal; // set when there is no wildcard
+    private final int[] types;
+    private final char[] chars;
+    private final char[][] ranges; // pairs of the first and last characters of the class
+    private final boolean[] negated;
+
+    ElementPattern(String literal) {
+      this.literal = literal;
+      this.types = null;
+      this.chars = null;
+      this.ranges = null;
+      this.negated = null;
+    }
+
+    private ElementPattern(int[] types, char[] chars, char[][] ranges, boolean[] negated) {
+      this.literal = null;
+      this.types = types;
+      this.chars = chars;
+      this.ranges = ranges;
+      this.negated = negated;
+    }
+
+    static ElementPattern compile(String element) {
+      if (element.indexOf('*') < 0 && element.indexOf('?') < 0 && element.indexOf('[') < 0) {
+        return new ElementPattern(element);
+      }
+      int length = element.length();
+      int[] types = new int[length];
+      char[] chars = new char[length];
+      char[][] ranges = new char[length][];
+      boolean[] negated = new boolean[length];
+      int count = 0;
+      for (int i = 0; i < length; i++) {
+        char c = element.charAt(i);
+        if (c == '*') {
+          if (count == 0 || types[count - 1] != ANY_CHARS) {
+            types[count++] = ANY_CHARS;
+          }
+        } else if (c == '?') {
+          types[count++] = ANY_CHAR;
+        } else if (c == '[') {
+          int end = element.indexOf(']', i + 2);
+          if (end < 0) {
+            throw new IllegalArgumentException("unclosed character class in <" + element + ">");
+          }
+          int start = i + 1;
+          if (element.charAt(start) == '!' || element.charAt(start) == '^') {
+            negated[count] = true;
+            start++;
+            if (end == start) {
+              end = element.indexOf(']', start + 1);
+              if (end < 0) {
+                throw new IllegalArgumentException("unclosed character class in <" + element + ">");
+              }
+            }
+          }
+          ranges[count] = compileClass(element, start, end);
+          types[count++] = CHAR_CLASS;
+          i = end;
+        } else {
+          chars[count] = c;
+          types[count++] = LITERAL;
+        }
+      }
+      int[] compactTypes = new int[count];
+      System.arraycopy(types, 0, compactTypes, 0, count);
+      return new ElementPattern(compactTypes, chars, ranges, negated);
+    }
+
+    /**
+     * Compiles the characters of a class into pairs of first and last characters
+     */
+    private static char[] compileClass(String element, int start, int end) {
+      List<Character> pairs = new ArrayList<Character>();
+      for (int i = start; i < end; i++) {
+        char first = element.charAt(i);
+        char last = first;
+        if (i + 2 < end && element.charAt(i + 1) == '-') {
+          last = element.charAt(i + 2);
+          i += 2;
+        }
+        pairs.add(first);
+        pairs.add(last);
+      }
+      char[] result = new char[pairs.size()];
+      for (int i = 0; i < result.length; i++) {
+        result[i] = pairs.get(i);
+      }
+      return result;
+    }
+
+    /**
+     * Matches the element, backtracking only to the last '*'
+     */
+    boolean matches(String element) {
+      if (literal != null) {
+        return literal.equals(element);
+      }
+      int count = types.length;
+      int length = element.length();
+      int p = 0;
+      int s = 0;
+      int starP = -1;
+      int starS = 0;
+      while (s < length) {
+        if (p < count && types[p] != ANY_CHARS && matchesChar(p, element.charAt(s))) {
+          p++;
+          s++;
+        } else if (p < count && types[p] == ANY_CHARS) {
+          starP = p++;
+          starS = s;
+        } else if (starP >= 0) {
+          p = starP + 1;
+          s = ++starS;
+        } else {
+          return false;
+        }
+      }
+      while (p < count && types[p] == ANY_CHARS) {
+        p++;
+      }
+      return p == count;
+    }
+
+    private boolean matchesChar(int index, char c) {
+      switch (types[index]) {
+        case LITERAL:
+          return chars[index] == c;
+        case ANY_CHAR:
+          return true;
+        default:
+          char[] pairs = ranges[index];
+          boolean inClass = false;
+          for (int i = 0; i < pairs.length && !inClass; i += 2) {
+            inClass = c >= pairs[i] && c <= pairs[i + 1];
+          }
+          return inClass != negated[index];
+      }
+    }
+  }
+}
@@ -0,0 +1,109 @@
+package net.sf.cotta;
+
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * A set of TPath backed by {@link TPathMap}, which checks if a path is under any of the paths in the set,
+ * and iterates or removes the paths under a path, in time proportional to the depth of the path.
+ * <p/>
+ * The iterators do not support removal.
+ *
+ * @see TPathMap
+ */
+public class TPathSet extends AbstractSet<TPath> {
+  private final TPathMap<Boolean> map = new TPathMap<Boolean>();
+
+  public TPathSet() {
+  }
+
+  public TPathSet(Iterable<TPath> paths) {
+    for (TPath path : paths) {
+      add(path);
+    }
+  }
+
+  public boolean add(TPath path) {
+    return map.put(path, Boolean.TRUE) == null;
+  }
+
+  public boolean contains(Object o) {
+    return map.containsKey(o);
+  }
+
+  public boolean remove(Object o) {
+    return map.remove(o) != null;
+  }
+
+  public int size() {
+    return map.size();
+  }
+
+  public void clear() {
+    map.clear();
+  }
+
+  public Iterator<TPath> iterator() {
+    return map.keySet().iterator();
+  }
+
+  /**
+   * Checks if the path or any of its ancestors is in the set
+   *
+   * @param path path to check
+   * @return true if the path or any of its ancestors is in the set
+   */
+  public boolean containsPrefixOf(TPath path) {
+    return map.containsPrefixOf(path);
+  }
+
+  /**
+   * Finds the path in the set that is the given path or its closest ancestor
+   *
+   * @param path path to match
+   * @return the longest matching path in the set, or null if there is none
+   */
+  public TPath longestPrefixOf(TPath path) {
+    Map.Entry<TPath, Boolean> entry = map.longestPrefixMatch(path);
+    return entry == null ? null : entry.getKey();
+  }
+
+  /**
+   * The paths in the set that are the given path or under it
+   *
+   * @param path the path of the subtree
+   * @return the paths in the subtree
+   */
+  public Iterable<TPath> subtree(TPath path) {
+    final Iterable<Map.Entry<TPath, Boolean>> entries = map.subtree(path);
+    return new Iterable<TPath>() {
+      public Iterator<TPath> iterator() {
+        final Iterator<Map.Entry<TPath, Boolean>> iterator = entries.iterator();
+        return new Iterator<TPath>() {
+          public boolean hasNext() {
+            return iterator.hasNext();
+          }
+
+          public TPath next() {
+            return iterator.next().getKey();
+          }
+
+          public void remove() {
+            throw new UnsupportedOperationException("use TPathSet.remove or TPathSet.removeSubtree");
+          }
+        };
+      }
+    };
+  }
+
+  /**
+   * Removes the path and all the paths under it
+   *
+   * @param path the path of the subtree to remove
+   * @return number of paths removed
+   */
+  public int removeSubtree(TPath path) {
+    return map.removeSubtree(path);
+  }
+}
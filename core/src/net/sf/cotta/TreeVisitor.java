@@ -0,0 +1,12 @@
+package net.sf.cotta;
+
+/**
+ * Visitor of the entries found by TreeWalker, which decides how the walk carries on
+ *
+ * @see TreeWalker
+ */
+public interface TreeVisitor {
+  VisitResult visit(TDirectory directory) throws TIoException;
+
+  VisitResult visit(TFile file) throws TIoException;
+}
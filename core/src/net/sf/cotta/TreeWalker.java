@@ -0,0 +1,188 @@
+package net.sf.cotta;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Walker of a directory tree that runs in a loop instead of recursion, so that the depth of the tree is not
+ * limited by the stack.  The visitor decides after each entry whether to carry on, to skip the subtree of a
+ * directory, or to stop.  The files of a directory are visited before its sub-directories, and the directory
+ * being walked is not visited itself.
+ * <p/>
+ * The entries are created one at a time from the paths of the listing, and a directory is only listed when the
+ * walk gets to it.  Walking depth first keeps only the listings of the directories on the current path, but as
+ * the file system lists a directory as a whole, the memory used is proportional to the depth of the tree times
+ * the number of entries in a directory.  Walking breadth first keeps the directories yet to be listed, which
+ * grows with the width of the tree.
+ *
+ * @see TreeVisitor
+ * @see VisitResult
+ */
+public class TreeWalker {
+  private final TDirectory directory;
+  private final boolean depthFirst;
+  private TDirectoryFilter directoryFilter = TDirectoryFilter.ALL;
+  private TFileFilter fileFilter = TFileFilter.ALL;
+  private int maxDepth = Integer.MAX_VALUE;
+
+  private TreeWalker(TDirectory directory, boolean depthFirst) {
+    this.directory = directory;
+    this.depthFirst = depthFirst;
+  }
+
+  public static TreeWalker depthFirst(TDirectory directory) {
+    return new TreeWalker(directory, true);
+  }
+
+  public static TreeWalker breadthFirst(TDirectory directory) {
+    return new TreeWalker(directory, false);
+  }
+
+  /**
+   * Sets filter for file and directory.  The entries not accepted are not visited, and the directories
+   * not accepted are not walked into.
+   *
+   * @param directoryFilter directory filter
+   * @param fileFilter      file filter
+   * @return current instance
+   */
+  public TreeWalker filteredBy(TDirectoryFilter directoryFilter, TFileFilter fileFilter) {
+    this.directoryFilter = directoryFilter;
+    this.fileFilter = fileFilter;
+    return this;
+  }
+
+  /**
+   * Sets the maximum depth of the walk, where the entries directly under the directory are at depth 1
+   *
+   * @param maxDepth maximum depth of the entries to visit
+   * @return current instance
+   * @throws IllegalArgumentException if the depth is negative
+   */
+  public TreeWalker maxDepth(int maxDepth) {
+    if (maxDepth < 0) {
+      throw new IllegalArgumentException("maximum depth cannot be negative:" + maxDepth);
+    }
+    this.maxDepth = maxDepth;
+    return this;
+  }
+
+  /**
+   * Walks the tree
+   *
+   * @param visitor visitor of the entries
+   * @return false if the walk was terminated by the visitor
+   * @throws TIoException error in listing a directory, or from the visitor
+   */
+  public boolean walk(TreeVisitor visitor) throws TIoException {
+    if (!directory.exists()) {
+      throw new TDirectoryNotFoundException(directory.toPath());
+    }
+    if (maxDepth == 0) {
+      return true;
+    }
+    Deque<Level> levels = new ArrayDeque<Level>();
+    levels.add(new Level(directory, 0));
+    return depthFirst ? walkDepthFirst(levels, visitor) : walkBreadthFirst(levels, visitor);
+  }
+
+  private boolean walkDepthFirst(Deque<Level> stack, TreeVisitor visitor) throws TIoException {
+    stack.peek().list();
+    while (!stack.isEmpty()) {
+      Level level = stack.peek();
+      if (level.hasFile()) {
+        if (visitFile(level.nextFile(), visitor) == VisitResult.TERMINATE) {
+          return false;
+        }
+      } else if (level.hasDir()) {
+        TDirectory subDirectory = level.nextDir();
+        if (!level.hasDir()) {
+          stack.pop();
+        }
+        VisitResult result = visitDirectory(subDirectory, visitor);
+        if (result == VisitResult.TERMINATE) {
+          return false;
+        }
+        if (result == VisitResult.CONTINUE && level.depth + 1 < maxDepth) {
+          Level child = new Level(subDirectory, level.depth + 1);
+          child.list();
+          stack.push(child);
+        }
+      } else {
+        stack.pop();
+      }
+    }
+    return true;
+  }
+
+  private boolean walkBreadthFirst(Deque<Level> queue, TreeVisitor visitor) throws TIoException {
+    while (!queue.isEmpty()) {
+      Level level = queue.poll();
+      level.list();
+      while (level.hasFile()) {
+        if (visitFile(level.nextFile(), visitor) == VisitResult.TERMINATE) {
+          return false;
+        }
+      }
+      while (level.hasDir()) {
+        TDirectory subDirectory = level.nextDir();
+        VisitResult result = visitDirectory(subDirectory, visitor);
+        if (result == VisitResult.TERMINATE) {
+          return false;
+        }
+        if (result == VisitResult.CONTINUE && level.depth + 1 < maxDepth) {
+          queue.add(new Level(subDirectory, level.depth + 1));
+        }
+      }
+    }
+    return true;
+  }
+
+  private VisitResult visitFile(TFile file, TreeVisitor visitor) throws TIoException {
+    return fileFilter.accept(file) ? visitor.visit(file) : VisitResult.CONTINUE;
+  }
+
+  private VisitResult visitDirectory(TDirectory subDirectory, TreeVisitor visitor) throws TIoException {
+    return directoryFilter.accept(subDirectory) ? visitor.visit(subDirectory) : VisitResult.SKIP_SUBTREE;
+  }
+
+  /**
+   * A directory in the walk with the cursors into its listing, which is only read when the walk gets to it
+   */
+  private static class Level {
+    private final TDirectory directory;
+    private final int depth;
+    private List<TPath> files;
+    private List<TPath> dirs;
+    private int fileIndex;
+    private int dirIndex;
+
+    Level(TDirectory directory, int depth) {
+      this.directory = directory;
+      this.depth = depth;
+    }
+
+    void list() throws TIoException {
+      PathContent content = directory.filesystem().list(directory.toPath());
+      files = content.files();
+      dirs = content.dirs();
+    }
+
+    boolean hasFile() {
+      return fileIndex < files.size();
+    }
+
+    TFile nextFile() {
+      return directory.factory().file(files.get(fileIndex++));
+    }
+
+    boolean hasDir() {
+      return dirIndex < dirs.size();
+    }
+
+    TDirectory nextDir() {
+      return directory.factory().dir(dirs.get(dirIndex++));
+    }
+  }
+}
@@ -0,0 +1,22 @@
+package net.sf.cotta;
+
+/**
+ * The result of visiting an entry during a walk, telling the walker how to carry on
+ *
+ * @see TreeVisitor
+ * @see TreeWalker
+ */
+public enum VisitResult {
+  /**
+   * Carry on with the walk, walking into the directory just visited
+   */
+  CONTINUE,
+  /**
+   * Carry on with the walk without walking into the directory just visited.  Same as CONTINUE for a file
+   */
+  SKIP_SUBTREE,
+  /**
+   * Stop the walk
+   */
+  TERMINATE
+}
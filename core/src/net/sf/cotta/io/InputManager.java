@@ -4,11 +4,8 @@ import net.sf.cotta.TIoException;
 import net.sf.cotta.TPath;
 
 import java.io.*;
-import java.lang.reflect.Method;
 import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
-import java.security.AccessController;
-import java.security.PrivilegedAction;
 import java.util.ArrayList;
 
 /**
@@ -59,6 +56,26 @@ public class InputManager extends ResourceManager<InputProcessor> {
     return channel;
   }
 
+  /**
+   * Maps the content of the input channel, which is unmapped when the processing is done
+   *
+   * @return the mapped content
+   * @throws TIoException error in mapping the content
+   * @see MappedContent
+   */
+  public MappedContent mappedContent() throws TIoException {
+    FileChannel channel = channel();
+    try {
+      MappedContent content = MappedContent.map(channel);
+      registerResource(content);
+      return content;
+    } catch (TIoException e) {
+      throw e;
+    } catch (IOException e) {
+      throw new TIoException(path(), "Mapping content failed", e);
+    }
+  }
+
   protected void process(final InputProcessor processor) throws IOException {
     processor.process(this);
   }
@@ -73,24 +90,11 @@ public class InputManager extends ResourceManager<InputProcessor> {
    * orinigar bug</a> for its source and context.
    *
    * @param buffer the buffer to clean up
+   * @see Unmapper
+   * @see #mappedContent()
    */
-  @SuppressWarnings("unchecked")
   public void clean(final MappedByteBuffer buffer) {
-    AccessController.doPrivileged(new PrivilegedAction() {
-      public Object run() {
-        try {
-          Method getCleanerMethod = buffer.getClass
-              ().getMethod("cleaner");
-          getCleanerMethod.setAccessible(true);
-          sun.misc.Cleaner cleaner =
-              (sun.misc.Cleaner) getCleanerMethod.invoke(buffer);
-          cleaner.clean();
-        } catch (Exception e) {
-          e.printStackTrace();
-        }
-        return null;
-      }
-    });
+    Unmapper.unmap(buffer);
   }
 
   /**
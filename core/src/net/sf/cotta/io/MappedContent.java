@@ -0,0 +1,251 @@
+package net.sf.cotta.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Read only view of the content of a file indexed by long, backed by a sequence of mapped regions so that
+ * files larger than 2GB can be accessed randomly.  The multi-byte values are read in big-endian order, the
+ * same as ByteBuffer.
+ * <p/>
+ * When the channel cannot be mapped, like the channels of the in-memory file system, the content is read
+ * into heap buffers instead.  Closing the view unmaps the regions, after which any access throws
+ * IllegalStateException instead of touching the released memory.  The reads hold a read lock that closing
+ * waits for, so a read on another thread either finishes before the regions are unmapped or throws, and the
+ * slices of mapped regions are copies, as they would otherwise outlive the view.
+ *
+ * @see net.sf.cotta.TFile#map(MappedProcessor)
+ * @see Unmapper
+ */
+public class MappedContent implements Closeable {
+  static final int DEFAULT_REGION_SHIFT = 30;
+
+  private final ByteBuffer[] regions;
+  private final int shift;
+  private final long mask;
+  private final long size;
+  private final boolean mapped;
+  private final ReadWriteLock lock = new ReentrantReadWriteLock();
+  private boolean closed;
+
+  private MappedContent(ByteBuffer[] regions, int shift, long size, boolean mapped) {
+    this.regions = regions;
+    this.shift = shift;
+    this.mask = (1L << shift) - 1;
+    this.size = size;
+    this.mapped = mapped;
+  }
+
+  /**
+   * Maps the whole content of the channel in 1GB regions
+   *
+   * @param channel channel to map
+   * @return the mapped content
+   * @throws IOException error in mapping or reading the channel
+   */
+  public static MappedContent map(FileChannel channel) throws IOException {
+    return map(channel, DEFAULT_REGION_SHIFT);
+  }
+
+  static MappedContent map(FileChannel channel, int regionShift) throws IOException {
+    long size = channel.size();
+    long regionSize = 1L << regionShift;
+    ByteBuffer[] regions = new ByteBuffer[(int) ((size + regionSize - 1) >>> regionShift)];
+    boolean mapped = true;
+    int mappedCount = 0;
+    try {
+      for (int i = 0; i < regions.length; i++) {
+        long position = (long) i << regionShift;
+        int length = (int) Math.min(regionSize, size - position);
+        if (mapped) {
+          try {
+            regions[i] = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+            mappedCount++;
+            continue;
+          } catch (UnsupportedOperationException e) {
+            mapped = false;
+          }
+        }
+        regions[i] = read(channel, position, length);
+      }
+    } catch (IOException e) {
+      unmap(regions, mappedCount);
+      throw e;
+    } catch (RuntimeException e) {
+      unmap(regions, mappedCount);
+      throw e;
+    }
+    return new MappedContent(regions, regionShift, size, mapped);
+  }
+
+  private static void unmap(ByteBuffer[] regions, int count) {
+    for (int i = 0; i < count; i++) {
+      Unmapper.unmap(regions[i]);
+    }
+  }
+
+  private static ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(length);
+    while (buffer.hasRemaining()) {
+      int read = channel.read(buffer, position + buffer.position());
+      if (read < 0) {
+        throw new IOException("channel ended at <" + (position + buffer.position()) + "> before its size");
+      }
+    }
+    buffer.flip();
+    return buffer.asReadOnlyBuffer();
+  }
+
+  public long size() {
+    return size;
+  }
+
+  /**
+   * Checks if the regions are mapped from the file rather than read into heap buffers
+   *
+   * @return true if the content is mapped
+   */
+  public boolean isMapped() {
+    return mapped;
+  }
+
+  public byte get(long index) {
+    lock.readLock().lock();
+    try {
+      checkIndex(index, 1);
+      return regions[(int) (index >>> shift)].get((int) (index & mask));
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Copies the bytes starting at the position into the array
+   *
+   * @param position position of the first byte
+   * @param dst      destination array
+   * @param offset   offset in the destination array
+   * @param length   number of bytes to copy
+   */
+  public void get(long position, byte[] dst, int offset, int length) {
+    lock.readLock().lock();
+    try {
+      checkIndex(position, length);
+      copy(position, dst, offset, length);
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  private void copy(long position, byte[] dst, int offset, int length) {
+    while (length > 0) {
+      ByteBuffer region = regions[(int) (position >>> shift)].duplicate();
+      int start = (int) (position & mask);
+      int count = Math.min(length, region.limit() - start);
+      region.position(start);
+      region.get(dst, offset, count);
+      position += count;
+      offset += count;
+      length -= count;
+    }
+  }
+
+  public int getInt(long position) {
+    lock.readLock().lock();
+    try {
+      checkIndex(position, 4);
+      int start = (int) (position & mask);
+      ByteBuffer region = regions[(int) (position >>> shift)];
+      if (start + 4 <= region.limit()) {
+        return region.getInt(start);
+      }
+      return (int) readAcross(position, 4);
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  public long getLong(long position) {
+    lock.readLock().lock();
+    try {
+      checkIndex(position, 8);
+      int start = (int) (position & mask);
+      ByteBuffer region = regions[(int) (position >>> shift)];
+      if (start + 8 <= region.limit()) {
+        return region.getLong(start);
+      }
+      return readAcross(position, 8);
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * A read only buffer of the bytes starting at the position.  The buffer shares the heap buffer when the
+   * content is read into heap buffers and the bytes are in one region, and is a copy otherwise, so it stays
+   * usable after the view is closed.
+   *
+   * @param position position of the first byte
+   * @param length   number of bytes
+   * @return the buffer
+   */
+  public ByteBuffer slice(long position, int length) {
+    lock.readLock().lock();
+    try {
+      checkIndex(position, length);
+      int start = (int) (position & mask);
+      ByteBuffer region = regions[(int) (position >>> shift)];
+      if (!mapped && start + length <= region.limit()) {
+        ByteBuffer slice = region.duplicate();
+        slice.position(start);
+        slice.limit(start + length);
+        return slice.slice().asReadOnlyBuffer();
+      }
+      byte[] bytes = new byte[length];
+      copy(position, bytes, 0, length);
+      return ByteBuffer.wrap(bytes).asReadOnlyBuffer();
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Unmaps the regions once the reads in progress are done.  It is safe to call more than once.
+   */
+  public void close() {
+    lock.writeLock().lock();
+    try {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      if (mapped) {
+        unmap(regions, regions.length);
+      }
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  private long readAcross(long position, int length) {
+    long value = 0;
+    for (int i = 0; i < length; i++) {
+      long index = position + i;
+      value = (value << 8) | (regions[(int) (index >>> shift)].get((int) (index & mask)) & 0xff);
+    }
+    return value;
+  }
+
+  private void checkIndex(long position, int length) {
+    if (closed) {
+      throw new IllegalStateException("mapped content has been closed");
+    }
+    if (position < 0 || length < 0 || position + length > size) {
+      throw new IndexOutOfBoundsException("position <" + position + "> length <" + length + "> size <" + size + ">");
+    }
+  }
+}
@@ -0,0 +1,12 @@
+package net.sf.cotta.io;
+
+import java.io.IOException;
+
+/**
+ * Processor of the mapped content of a file.  The content is unmapped when the processor returns.
+ *
+ * @see net.sf.cotta.TFile#map(MappedProcessor)
+ */
+public interface MappedProcessor {
+  void process(MappedContent content) throws IOException;
+}
@@ -0,0 +1,88 @@
+package net.sf.cotta.io;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+
+/**
+ * Releases the memory of a direct or mapped byte buffer right away instead of waiting for the garbage
+ * collector, so that a mapped file can be deleted or remapped.  On Java 9 and later it uses
+ * <code>sun.misc.Unsafe.invokeCleaner</code>, which is the mechanism the JDK keeps available for this;
+ * on earlier versions it runs the cleaner of the buffer.
+ * <p/>
+ * The buffer must not be accessed after it is unmapped, as that would read released memory.
+ */
+public final class Unmapper {
+  private static final Object UNSAFE;
+  private static final Method INVOKE_CLEANER;
+  private static final Method CLEANER;
+  private static final Method CLEAN;
+
+  static {
+    Object unsafe = null;
+    Method invokeCleaner = null;
+    Method cleaner = null;
+    Method clean = null;
+    try {
+      Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+      invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+      Field field = unsafeClass.getDeclaredField("theUnsafe");
+      field.setAccessible(true);
+      unsafe = field.get(null);
+    } catch (Exception e) {
+      invokeCleaner = null;
+      try {
+        cleaner = Class.forName("sun.nio.ch.DirectBuffer").getMethod("cleaner");
+        clean = Class.forName("sun.misc.Cleaner").getMethod("clean");
+      } catch (Exception e2) {
+        cleaner = null;
+        clean = null;
+      }
+    }
+    UNSAFE = unsafe;
+    INVOKE_CLEANER = invokeCleaner;
+    CLEANER = cleaner;
+    CLEAN = clean;
+  }
+
+  private Unmapper() {
+  }
+
+  /**
+   * Checks if buffers can be unmapped on this JVM
+   *
+   * @return true if unmapping is supported
+   */
+  public static boolean isSupported() {
+    return INVOKE_CLEANER != null || CLEAN != null;
+  }
+
+  /**
+   * Unmaps the buffer.  Only the buffer returned by the mapping can be unmapped, not its duplicates or slices.
+   *
+   * @param buffer the direct or mapped buffer to unmap
+   * @return true if the buffer has been unmapped, false if it is not direct or unmapping is not supported,
+   *         in which case the memory is released by the garbage collector
+   */
+  public static boolean unmap(ByteBuffer buffer) {
+    if (!buffer.isDirect()) {
+      return false;
+    }
+    try {
+      if (INVOKE_CLEANER != null) {
+        INVOKE_CLEANER.invoke(UNSAFE, buffer);
+        return true;
+      }
+      if (CLEAN != null) {
+        Object cleaner = CLEANER.invoke(buffer);
+        if (cleaner != null) {
+          CLEAN.invoke(cleaner);
+          return true;
+        }
+      }
+    } catch (Exception e) {
+      return false;
+    }
+    return false;
+  }
+}
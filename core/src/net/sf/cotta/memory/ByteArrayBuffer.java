@@ -16,7 +16,11 @@ import java.nio.channels.WritableByteChannel;
  * Contributed by:
  * Sergey Abramov
  * http://coldcore.com
+ *
+ * @deprecated the in-memory file system uses PagedBuffer, which does not copy the content as it grows
+ * @see PagedBuffer
  */
+@Deprecated
 public class ByteArrayBuffer {
 
   private int size = 0;
@@ -195,10 +199,8 @@ public class ByteArrayBuffer {
     if (sizeToCopy <= 0) {
       return 0;
     }
-    ByteBuffer buffer = ByteBuffer.allocate((int) sizeToCopy);
-    copyTo(buffer, (int) position, (int) (count));
-    buffer.rewind();
-    return target.write(buffer);
+    flush();
+    return target.write(ByteBuffer.wrap(buffer, (int) position, (int) sizeToCopy));
   }
 
 
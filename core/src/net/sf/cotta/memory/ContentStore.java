@@ -0,0 +1,156 @@
+package net.sf.cotta.memory;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Store of the file contents of a file system by their bytes, so that the files with the same content share one
+ * set of pages.  A content is looked up by its size and checksum when the stream or channel that wrote it is
+ * closed, and takes the pages of the entry with the same bytes, or becomes a new entry.
+ * <p/>
+ * Each entry counts the buffers holding its pages, and accounts for the pages once for all of them.  A buffer
+ * lets go of its entry when it is changed, which copies the pages it changes, or when its file is deleted or
+ * overwritten.  The entry leaves the store when the last buffer lets go of it.
+ */
+class ContentStore {
+  private final ConcurrentMap<Key, Entry> entries = new ConcurrentHashMap<Key, Entry>();
+
+  /**
+   * Puts the content of the buffer in the store, sharing the pages of the entry with the same bytes if there
+   * is one.  Nothing happens if the buffer is empty or already holds an entry.
+   *
+   * @param buffer content of a file
+   */
+  void intern(PagedBuffer buffer) {
+    if (buffer.entry() != null || buffer.size() == 0) {
+      return;
+    }
+    MemoryAccount account = buffer.account();
+    PagedBuffer stored = buffer.share();
+    stored.detach();
+    Key key = new Key(stored.size(), stored.checksum());
+    Entry entry = entries.get(key);
+    while (true) {
+      if (entry == null) {
+        Entry created = new Entry(key, stored, account);
+        entry = entries.putIfAbsent(key, created);
+        if (entry == null) {
+          created.allocated(1);
+          take(buffer, created);
+          return;
+        }
+      }
+      if (entry.acquire()) {
+        take(buffer, entry);
+        return;
+      }
+      entries.remove(key, entry);
+      entry = entries.get(key);
+    }
+  }
+
+  /**
+   * Makes the target a copy of the source by sharing the pages of the source, so the copy costs as much as
+   * copying the page table.  The target holds the entry of the source as well.
+   *
+   * @param source content of the file copied
+   * @param target empty content of the copy
+   */
+  void copy(PagedBuffer source, PagedBuffer target) {
+    Entry entry = source.entry();
+    target.shareFrom(source);
+    if (entry != null && source.entry() == entry && entry.acquire()) {
+      target.join(entry);
+    }
+  }
+
+  int size() {
+    return entries.size();
+  }
+
+  private void take(PagedBuffer buffer, Entry entry) {
+    if (!buffer.dedupFrom(entry)) {
+      entry.release();
+    }
+  }
+
+  /**
+   * Content kept once in the store, with the number of buffers holding it
+   */
+  class Entry {
+    private final Key key;
+    private final PagedBuffer buffer;
+    private final MemoryAccount account;
+    private final AtomicInteger references = new AtomicInteger(1);
+
+    private Entry(Key key, PagedBuffer buffer, MemoryAccount account) {
+      this.key = key;
+      this.buffer = buffer;
+      this.account = account;
+    }
+
+    PagedBuffer buffer() {
+      return buffer;
+    }
+
+    int references() {
+      return references.get();
+    }
+
+    /**
+     * Adds a reference unless the entry has already been let go of by all its buffers
+     *
+     * @return true if the reference was added
+     */
+    boolean acquire() {
+      while (true) {
+        int count = references.get();
+        if (count == 0) {
+          return false;
+        }
+        if (references.compareAndSet(count, count + 1)) {
+          return true;
+        }
+      }
+    }
+
+    void release() {
+      if (references.decrementAndGet() == 0) {
+        entries.remove(key, this);
+        allocated(-1);
+      }
+    }
+
+    private void allocated(int sign) {
+      if (account != null) {
+        account.allocated(sign * buffer.capacity());
+      }
+    }
+  }
+
+  private static class Key {
+    private final long size;
+    private final long checksum;
+
+    Key(long size, long checksum) {
+      this.size = size;
+      this.checksum = checksum;
+    }
+
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof Key)) {
+        return false;
+      }
+      Key key = (Key) o;
+      return size == key.size && checksum == key.checksum;
+    }
+
+    public int hashCode() {
+      return (int) (checksum ^ (size * 31));
+    }
+  }
+}
@@ -0,0 +1,244 @@
+package net.sf.cotta.memory;
+
+import net.sf.cotta.TIoException;
+import net.sf.cotta.TPath;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Random access file channel over the content of an in-memory file.  Reads and writes go straight to the pages
+ * of the content, a write past the end grows the content, and the position can be moved past the end.
+ * <p/>
+ * The operations that use or move the position of the channel are synchronized on the channel, so that the
+ * channel can be shared by threads like other file channels.  The reads and writes at a given position do not
+ * take the lock.
+ *
+ * @see PagedBuffer
+ */
+class InMemoryFileChannel extends FileChannel {
+  private static final int TRANSFER_SIZE = 8192;
+
+  private final PagedBuffer content;
+  private final boolean writable;
+  private final MemoryAccount account;
+  private final TPath path;
+  private final ContentStore store;
+  private long position;
+
+  InMemoryFileChannel(PagedBuffer content, long position, boolean writable, MemoryAccount account, TPath path,
+                      ContentStore store) {
+    this.content = content;
+    this.position = position;
+    this.writable = writable;
+    this.account = account;
+    this.path = path;
+    this.store = store;
+  }
+
+  PagedBuffer getContent() {
+    return content;
+  }
+
+  public synchronized int read(ByteBuffer dst) throws IOException {
+    int read = read(dst, position);
+    if (read > 0) {
+      position += read;
+    }
+    return read;
+  }
+
+  public int read(ByteBuffer dst, long position) throws IOException {
+    ensureOpen();
+    checkPosition(position);
+    if (!dst.hasRemaining()) {
+      return 0;
+    }
+    if (position >= content.size()) {
+      return -1;
+    }
+    return (int) content.copyTo(dst, position, dst.remaining());
+  }
+
+  public synchronized long read(ByteBuffer[] dsts, int offset, int length) throws IOException {
+    checkRange(dsts.length, offset, length);
+    ensureOpen();
+    long total = 0;
+    for (int i = offset; i < offset + length; i++) {
+      int read = read(dsts[i]);
+      if (read == -1) {
+        return total == 0 ? -1 : total;
+      }
+      total += read;
+      if (dsts[i].hasRemaining()) {
+        break;
+      }
+    }
+    return total;
+  }
+
+  public synchronized int write(ByteBuffer src) throws IOException {
+    int written = write(src, position);
+    position += written;
+    return written;
+  }
+
+  public int write(ByteBuffer src, long position) throws IOException {
+    ensureWritable();
+    checkPosition(position);
+    checkRoom(position + src.remaining() - content.size());
+    return content.write(position, src);
+  }
+
+  public synchronized long write(ByteBuffer[] srcs, int offset, int length) throws IOException {
+    checkRange(srcs.length, offset, length);
+    ensureWritable();
+    long total = 0;
+    for (int i = offset; i < offset + length; i++) {
+      total += write(srcs[i]);
+    }
+    return total;
+  }
+
+  public synchronized long position() throws IOException {
+    ensureOpen();
+    return position;
+  }
+
+  public synchronized FileChannel position(long newPosition) throws IOException {
+    ensureOpen();
+    checkPosition(newPosition);
+    this.position = newPosition;
+    return this;
+  }
+
+  public long size() throws IOException {
+    ensureOpen();
+    return content.size();
+  }
+
+  public synchronized FileChannel truncate(long size) throws IOException {
+    ensureWritable();
+    if (size < 0) {
+      throw new IllegalArgumentException("size cannot be negative:" + size);
+    }
+    content.truncate(size);
+    position = Math.min(position, size);
+    return this;
+  }
+
+  public void force(boolean metaData) throws IOException {
+    ensureOpen();
+  }
+
+  /**
+   * Writes the bytes to the target channel, or shares the pages with the target when the whole content goes to
+   * an empty file of the same file system that keeps a content store.  The position of the target moves past the
+   * bytes either way.
+   */
+  public long transferTo(long position, long count, WritableByteChannel target) throws IOException {
+    ensureOpen();
+    checkPosition(position);
+    if (position == 0 && count >= content.size() && target instanceof InMemoryFileChannel &&
+        ((InMemoryFileChannel) target).copyOf(content)) {
+      return content.size();
+    }
+    return content.copyTo(target, position, count);
+  }
+
+  /**
+   * Reads from the source into the content at the position, going through a small buffer, until the count is
+   * reached or the source has no more bytes to give
+   */
+  public long transferFrom(ReadableByteChannel src, long position, long count) throws IOException {
+    ensureWritable();
+    checkPosition(position);
+    if (position > content.size()) {
+      return 0;
+    }
+    ByteBuffer buffer = ByteBuffer.allocate((int) Math.max(0, Math.min(count, TRANSFER_SIZE)));
+    long transferred = 0;
+    while (transferred < count) {
+      buffer.clear();
+      buffer.limit((int) Math.min(buffer.capacity(), count - transferred));
+      int read = src.read(buffer);
+      if (read <= 0) {
+        break;
+      }
+      buffer.flip();
+      transferred += write(buffer, position + transferred);
+    }
+    return transferred;
+  }
+
+  public MappedByteBuffer map(MapMode mode, long position, long size) throws IOException {
+    ensureOpen();
+    if (!writable && mode != MapMode.READ_ONLY) {
+      throw new NonWritableChannelException();
+    }
+    throw new UnsupportedOperationException("map is not supported for in-memory file channel because MappedByteBuffer can not be instantiated directly from outside the package");
+  }
+
+  public FileLock lock(long position, long size, boolean shared) throws IOException {
+    throw new UnsupportedOperationException("lock is not supported for in-memory file channel because tryLock is not supported");
+  }
+
+  public FileLock tryLock(long position, long size, boolean shared) throws IOException {
+    throw new UnsupportedOperationException("tryLock is not supported for in-memory file channel because FileLock can not be instantiated from outside the package");
+  }
+
+  protected void implCloseChannel() throws IOException {
+    if (writable && store != null) {
+      store.intern(content);
+    }
+  }
+
+  private synchronized boolean copyOf(PagedBuffer source) throws IOException {
+    if (store == null || !writable || !isOpen() || position != 0 || content.size() != 0 ||
+        account == null || source.account() != account) {
+      return false;
+    }
+    checkRoom(source.size());
+    store.copy(source, content);
+    position = content.size();
+    return true;
+  }
+
+  private void ensureOpen() throws ClosedChannelException {
+    if (!isOpen()) {
+      throw new ClosedChannelException();
+    }
+  }
+
+  private void ensureWritable() throws ClosedChannelException {
+    ensureOpen();
+    if (!writable) {
+      throw new NonWritableChannelException();
+    }
+  }
+
+  private void checkRoom(long growth) throws TIoException {
+    if (account != null) {
+      account.checkRoom(growth, path);
+    }
+  }
+
+  private static void checkPosition(long position) {
+    if (position < 0) {
+      throw new IllegalArgumentException("position cannot be negative:" + position);
+    }
+  }
+
+  private static void checkRange(int arrayLength, int offset, int length) {
+    if (offset < 0 || length < 0 || offset > arrayLength - length) {
+      throw new IndexOutOfBoundsException("offset <" + offset + "> length <" + length + "> array <" + arrayLength + ">");
+    }
+  }
+}
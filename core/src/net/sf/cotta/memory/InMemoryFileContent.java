@@ -1,68 +1,840 @@
 package net.sf.cotta.memory;
 
+import net.sf.cotta.TIoException;
+import net.sf.cotta.TPath;
 import net.sf.cotta.system.FileContent;
 
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Set;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
 
+/**
+ * Content of an in-memory file.  A content that has not been used for a while can be compressed, after which it
+ * is decompressed the next time it is opened, or its length is all that is asked for.
+ * <p/>
+ * When the file system has a memory budget, a content can also be spilled to a file on disk.  It is then read
+ * from the spill file, and read back into memory when it is opened while there is room for it in the budget.
+ */
 class InMemoryFileContent implements FileContent {
-  private ByteArrayBuffer content;
+  static final int MIN_COMPRESSED_SIZE = 512;
+  private static final int INFLATE_CHUNK = 8192;
+
+  private volatile PagedBuffer content;
+  private volatile Compressed compressed; // the content while it is compressed, null otherwise
+  private volatile File spilled; // the file holding the content while it is spilled, null otherwise
   private int increment;
-  private long lastModified;
+  private PageAllocator allocator;
+  private boolean shared;
+  private MemoryAccount account;
+  private ContentStore store;
+  private SpillArea spill;
+  private volatile long lastModified;
+  private volatile long lastAccessed = System.currentTimeMillis();
+  private int writers; // streams and channels open for writing, guarded by this
 
   InMemoryFileContent(int initialCapacity, int increment) {
-    content = new ByteArrayBuffer(initialCapacity, increment);
+    this(initialCapacity, increment, PageAllocator.HEAP);
+  }
+
+  InMemoryFileContent(int initialCapacity, int increment, PageAllocator allocator) {
+    this(initialCapacity, increment, allocator, false, null, null, null);
+  }
+
+  /**
+   * Creates the content
+   *
+   * @param initialCapacity initial capacity of the buffer
+   * @param increment       capacity of a page when it is started
+   * @param allocator       allocator of the pages
+   * @param shared          true if the content is read and written by several threads
+   * @param account         account of the memory of the file system, or null
+   * @param store           store that the content is put in when it is written, or null
+   * @param spill           area that the content is spilled to over the memory budget, or null
+   */
+  InMemoryFileContent(int initialCapacity, int increment, PageAllocator allocator, boolean shared,
+                      MemoryAccount account, ContentStore store, SpillArea spill) {
+    this.allocator = allocator;
     this.increment = increment;
+    this.shared = shared;
+    this.account = account;
+    this.store = store;
+    this.spill = spill;
+    content = newBuffer(initialCapacity);
+  }
+
+  private PagedBuffer newBuffer(int initialCapacity) {
+    return shared ?
+        new SharedPagedBuffer(initialCapacity, increment, PagedBuffer.DEFAULT_PAGE_SIZE, allocator, account) :
+        new PagedBuffer(initialCapacity, increment, PagedBuffer.DEFAULT_PAGE_SIZE, allocator, account);
   }
 
   void setContent(String content) {
     setContent(content, System.currentTimeMillis());
   }
 
-  void setContent(String content, long timestamp) {
-    this.content = new ByteArrayBuffer(content.getBytes(), increment);
+  synchronized void setContent(String content, long timestamp) {
+    byte[] bytes = content.getBytes();
+    release();
+    this.content = newBuffer(bytes.length).append(bytes);
     this.lastModified = timestamp;
+    this.lastAccessed = System.currentTimeMillis();
+  }
+
+  /**
+   * Takes the content out of the memory account as the file is deleted or overwritten, and frees it when
+   * its pages are reused by the allocator.  The streams and channels still open on the content see it as
+   * empty afterwards in that case.  The spill file of the content is deleted.
+   */
+  synchronized void release() {
+    Compressed held = compressed;
+    if (held != null) {
+      compressed = null;
+      compressedChanged(held, -1);
+    }
+    File file = spilled;
+    if (file != null) {
+      spilled = null;
+      spilledChanged(-file.length());
+      file.delete();
+    }
+    releaseBuffer(content);
+  }
+
+  private void releaseBuffer(PagedBuffer buffer) {
+    if (allocator.reusesPages()) {
+      buffer.release();
+    } else {
+      buffer.detach();
+    }
+  }
+
+  /**
+   * Creates a copy that shares the pages of this content until either of them changes them.  A spilled content
+   * is copied to another spill file.
+   */
+  synchronized InMemoryFileContent copy() {
+    InMemoryFileContent copy = new InMemoryFileContent(0, increment, allocator, shared, account, store, spill);
+    Compressed held = compressed;
+    File file = spilled;
+    if (file != null) {
+      try {
+        copy.spilled = spill.copy(file);
+      } catch (IOException e) {
+        throw new IllegalStateException("cannot copy spilled content <" + file + ">", e);
+      }
+      spilledChanged(file.length());
+    } else if (held != null) {
+      copy.compressed = held;
+      compressedChanged(held, 1);
+    } else {
+      copy.content = content.share();
+    }
+    copy.lastModified = lastModified;
+    copy.lastAccessed = lastAccessed;
+    return copy;
+  }
+
+  /**
+   * Adds the memory taken by the content to the totals, as it is kept in pages, compressed or spilled
+   *
+   * @param totals  totals to add to
+   * @param entries entries of the content store whose pages have been added already
+   */
+  synchronized void countIn(MemoryAccount totals, Set<ContentStore.Entry> entries) {
+    File file = spilled;
+    Compressed held = compressed;
+    if (file != null) {
+      totals.spilled(file.length());
+    } else if (held != null) {
+      totals.compressed(held.size, held.bytes.length);
+    }
+    content.countIn(totals, entries);
+  }
+
+  PagedBuffer getContentBuffer() {
+    return buffer();
+  }
+
+  /**
+   * Length of the content, which does not decompress it or read it back from disk
+   */
+  long length() {
+    File file = spilled;
+    if (file != null) {
+      return file.length();
+    }
+    Compressed held = compressed;
+    return held != null ? held.size : content.size();
+  }
+
+  boolean isCompressed() {
+    return compressed != null;
+  }
+
+  boolean isSpilled() {
+    return spilled != null;
+  }
+
+  /**
+   * Spills the content to disk unless it is being written, is held by other files through the content store,
+   * or is not in the pages.  The streams still reading the content keep reading the pages.
+   *
+   * @return true if the content was spilled
+   * @throws IOException error writing the spill file
+   */
+  synchronized boolean spillIfIdle() throws IOException {
+    if (spilled != null || compressed != null || writers > 0 || content.size() == 0) {
+      return false;
+    }
+    ContentStore.Entry entry = content.entry();
+    if (entry != null && entry.references() > 1) {
+      return false;
+    }
+    spillBuffer();
+    return true;
+  }
+
+  /**
+   * Writes the pages to a spill file and lets go of them, guarded by this
+   */
+  private void spillBuffer() throws IOException {
+    PagedBuffer buffer = content;
+    File file = spill.createFile();
+    try {
+      OutputStream out = new FileOutputStream(file);
+      try {
+        buffer.copyTo(out, 0, buffer.size());
+      } finally {
+        out.close();
+      }
+    } catch (IOException e) {
+      file.delete();
+      throw e;
+    }
+    spilled = file;
+    spilledChanged(buffer.size());
+    content = newBuffer(0);
+    buffer.detach();
+  }
+
+  /**
+   * Reads the spill file back into the pages and deletes it, guarded by this
+   */
+  private void pageBack() throws IOException {
+    File file = spilled;
+    long size = file.length();
+    PagedBuffer loaded = newBuffer((int) Math.min(size, PagedBuffer.DEFAULT_PAGE_SIZE));
+    FileChannel channel = new FileInputStream(file).getChannel();
+    try {
+      ByteBuffer chunk = ByteBuffer.allocate(INFLATE_CHUNK);
+      while (channel.read(chunk) > 0) {
+        chunk.flip();
+        loaded.copyFrom(chunk);
+        chunk.clear();
+      }
+    } finally {
+      channel.close();
+    }
+    content = loaded;
+    spilled = null;
+    spilledChanged(-size);
+    file.delete();
+  }
+
+  /**
+   * The spill file to read the content from, or null when the content is in memory, reading it back into
+   * memory first if it fits in the budget and nothing is writing to it
+   */
+  private synchronized File spillFileForReading(TPath path) throws TIoException {
+    lastAccessed = System.currentTimeMillis();
+    File file = spilled;
+    if (file == null || writers > 0 || (spill != null && !spill.fits(file.length()))) {
+      return file;
+    }
+    try {
+      pageBack();
+    } catch (IOException e) {
+      throw new TIoException(path, "cannot read spilled content back", e);
+    }
+    return null;
+  }
+
+  /**
+   * Compresses the content if it has not been used since the time, and nothing is writing to it.  The
+   * content is left alone when it is small, when it is held by other files through the content store, or when
+   * it does not compress to less than seven eighths of its size.  The streams still reading the content keep
+   * reading the uncompressed bytes.
+   *
+   * @param idleSince time the content needs to have been left alone since
+   * @return true if the content was compressed
+   */
+  synchronized boolean compressIfIdle(long idleSince) {
+    PagedBuffer buffer = content;
+    long size = buffer.size();
+    if (compressed != null || writers > 0 || lastAccessed > idleSince ||
+        size < MIN_COMPRESSED_SIZE || size > Integer.MAX_VALUE) {
+      return false;
+    }
+    ContentStore.Entry entry = buffer.entry();
+    if (entry != null && entry.references() > 1) {
+      return false;
+    }
+    byte[] bytes = deflate(buffer);
+    if (bytes.length > size - size / 8) {
+      return false;
+    }
+    Compressed held = new Compressed(bytes, size);
+    compressed = held;
+    compressedChanged(held, 1);
+    content = newBuffer(0);
+    buffer.detach();
+    return true;
   }
 
-  ByteArrayBuffer getContentBuffer() {
+  /**
+   * The buffer of the content, decompressing the content first if it is compressed
+   */
+  private PagedBuffer buffer() {
+    lastAccessed = System.currentTimeMillis();
+    if (compressed != null) {
+      inflate();
+    }
     return content;
   }
 
+  private synchronized void inflate() {
+    Compressed held = compressed;
+    if (held == null) {
+      return;
+    }
+    PagedBuffer inflated = newBuffer((int) Math.min(held.size, PagedBuffer.DEFAULT_PAGE_SIZE));
+    Inflater inflater = new Inflater();
+    try {
+      inflater.setInput(held.bytes);
+      byte[] chunk = new byte[INFLATE_CHUNK];
+      while (!inflater.finished()) {
+        int count = inflater.inflate(chunk);
+        if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+          throw new IllegalStateException("compressed content is cut short");
+        }
+        inflated.append(chunk, 0, count);
+      }
+    } catch (DataFormatException e) {
+      throw new IllegalStateException("compressed content is corrupt", e);
+    } finally {
+      inflater.end();
+    }
+    content = inflated;
+    compressed = null;
+    compressedChanged(held, -1);
+  }
+
+  private static byte[] deflate(PagedBuffer buffer) {
+    Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    try {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream((int) (buffer.size() / 4));
+      DeflaterOutputStream out = new DeflaterOutputStream(bytes, deflater, INFLATE_CHUNK);
+      buffer.copyTo(out, 0, buffer.size());
+      out.finish();
+      return bytes.toByteArray();
+    } catch (IOException e) {
+      throw new IllegalStateException("cannot compress content in memory", e);
+    } finally {
+      deflater.end();
+    }
+  }
+
+  private void spilledChanged(long delta) {
+    if (account != null) {
+      account.spilled(delta);
+    }
+  }
+
+  private void compressedChanged(Compressed held, int sign) {
+    if (account != null) {
+      account.compressed(sign * held.size, sign * held.bytes.length);
+    }
+  }
+
+  /**
+   * Counts a new writer, decompressing the content first
+   *
+   * @return the spill file to append to, or null when the content is in memory
+   */
+  private synchronized File openWriter() {
+    buffer();
+    writers++;
+    return spilled;
+  }
+
+  /**
+   * Spills the content for the only stream writing to it, which carries on writing to the spill file
+   *
+   * @return the channel of the spill file, or null if other streams or channels are writing to the content
+   */
+  private synchronized FileChannel spillForWriting() throws IOException {
+    if (writers != 1 || spilled != null) {
+      return null;
+    }
+    spillBuffer();
+    return openSpillFile(spilled);
+  }
+
+  private static FileChannel openSpillFile(File file) throws IOException {
+    FileChannel channel = new RandomAccessFile(file, "rw").getChannel();
+    channel.position(channel.size());
+    return channel;
+  }
+
+  private synchronized void closeWriter() {
+    writers--;
+  }
+
+  /**
+   * Counts a new writer for an output channel, reading a spilled content back into memory first
+   */
+  private synchronized void openChannelWriter(TPath path) throws TIoException {
+    if (spilled != null) {
+      try {
+        pageBack();
+      } catch (IOException e) {
+        throw new TIoException(path, "cannot read spilled content back", e);
+      }
+    }
+    buffer();
+    writers++;
+  }
+
   public OutputStream outputStream() {
+    try {
+      return outputStream(null);
+    } catch (TIoException e) {
+      throw new IllegalStateException(e.getMessage(), e);
+    }
+  }
+
+  /**
+   * Output stream that appends to the content
+   *
+   * @param path path of the file, for the exceptions thrown by the stream
+   * @return the output stream
+   * @throws TIoException error opening the spill file of the content
+   * @see ContentOutputStream
+   */
+  OutputStream outputStream(TPath path) throws TIoException {
+    File file = openWriter();
     lastModified = System.currentTimeMillis();
-    return new OutputStream() {
+    try {
+      return new ContentOutputStream(path, file);
+    } catch (IOException e) {
+      closeWriter();
+      throw new TIoException(path, "cannot open spilled content", e);
+    }
+  }
 
-      public void write(int b) {
-        content.append((byte) b);
-      }
+  public InputStream inputStream() {
+    try {
+      return inputStream(null);
+    } catch (TIoException e) {
+      throw new IllegalStateException(e.getMessage(), e);
+    }
+  }
 
-      public void write(byte[] b, int off, int len) throws IOException {
-        content.append(b, off, len);
+  InputStream inputStream(TPath path) throws TIoException {
+    File file = spillFileForReading(path);
+    if (file != null) {
+      try {
+        return new FileInputStream(file);
+      } catch (IOException e) {
+        throw new TIoException(path, "cannot open spilled content", e);
       }
+    }
+    return new ContentInputStream(buffer());
+  }
+
+  public FileChannel inputChannel() {
+    try {
+      return inputChannel(null);
+    } catch (TIoException e) {
+      throw new IllegalStateException(e.getMessage(), e);
+    }
+  }
 
-      public void write(byte[] b) throws IOException {
-        content.append(b);
+  FileChannel inputChannel(TPath path) throws TIoException {
+    File file = spillFileForReading(path);
+    if (file != null) {
+      try {
+        return new FileInputStream(file).getChannel();
+      } catch (IOException e) {
+        throw new TIoException(path, "cannot open spilled content", e);
       }
-    };
+    }
+    return new InMemoryInputFileChannel(buffer());
   }
 
-  public InputStream inputStream() {
-    return new InputStream() {
-      private int position = 0;
+  /**
+   * Output channel of the content.  The channel of a stream of this content shares the position and the spill
+   * file of the stream, and is closed with it, like the channel of a {@link FileOutputStream}.
+   *
+   * @param path   path of the file
+   * @param stream stream opened on the file, or null
+   * @return the channel
+   * @throws TIoException error reading a spilled content back
+   */
+  FileChannel outputChannel(TPath path, OutputStream stream) throws TIoException {
+    if (stream instanceof ContentOutputStream && ((ContentOutputStream) stream).owner() == this) {
+      return ((ContentOutputStream) stream).channel();
+    }
+    return outputChannel(path);
+  }
 
-      public int read() {
-        return (position == content.size()) ? -1 : content.byteAt(position++) & 0xFF;
+  FileChannel outputChannel(TPath path) throws TIoException {
+    openChannelWriter(path);
+    lastModified = System.currentTimeMillis();
+    return new InMemoryOutputFileChannel(content, account, path, store) {
+      protected void implCloseChannel() throws IOException {
+        super.implCloseChannel();
+        closeWriter();
       }
     };
   }
 
-  public FileChannel inputChannel() {
-    return new InMemoryInputFileChannel(content);
+  private void checkRoom(long growth, TPath path) throws TIoException {
+    if (account != null) {
+      account.checkRoom(growth, path);
+    }
   }
 
   public long lastModified() {
     return lastModified;
   }
+
+  /**
+   * Output stream that appends to the content, checking each write against the quota of the file system.  When
+   * a write would take the pages over the memory budget, the contents not in use are spilled first, and then
+   * this content if that does not make enough room, after which the stream writes to the spill file.  The
+   * content is put in the content store of the file system when the stream is closed.
+   * <p/>
+   * Once the channel of the stream is taken, the stream writes through the channel, so that the two share the
+   * position.
+   */
+  private class ContentOutputStream extends OutputStream {
+    private final TPath path;
+    private FileChannel disk; // channel of the spill file once the content is spilled
+    private File diskFile;
+    private StreamChannel channel;
+    private boolean closed;
+
+    ContentOutputStream(TPath path, File spillFile) throws IOException {
+      this.path = path;
+      if (spillFile != null) {
+        disk = openSpillFile(spillFile);
+        diskFile = spillFile;
+      }
+    }
+
+    InMemoryFileContent owner() {
+      return InMemoryFileContent.this;
+    }
+
+    FileChannel channel() {
+      if (channel == null) {
+        channel = new StreamChannel(this, content, path);
+      }
+      return channel;
+    }
+
+    public void write(int b) throws IOException {
+      if (channel != null) {
+        writeChannel(ByteBuffer.wrap(new byte[]{(byte) b}));
+      } else if (inMemory(1)) {
+        content.append((byte) b);
+      } else {
+        writeDisk(ByteBuffer.wrap(new byte[]{(byte) b}), -1);
+      }
+    }
+
+    public void write(byte[] b, int off, int len) throws IOException {
+      if (channel != null) {
+        writeChannel(ByteBuffer.wrap(b, off, len));
+      } else if (inMemory(len)) {
+        content.append(b, off, len);
+      } else {
+        writeDisk(ByteBuffer.wrap(b, off, len), -1);
+      }
+    }
+
+    public void write(byte[] b) throws IOException {
+      write(b, 0, b.length);
+    }
+
+    private void writeChannel(ByteBuffer src) throws IOException {
+      while (src.hasRemaining()) {
+        channel.write(src);
+      }
+    }
+
+    /**
+     * Checks the write against the quota, and makes room for it when it would go over the memory budget
+     *
+     * @return true if the write goes to the pages, false if it goes to the spill file
+     */
+    boolean inMemory(long growth) throws IOException {
+      checkRoom(growth, path);
+      if (disk == null && spill != null && spill.overBudget(growth)) {
+        spill.makeRoom(growth);
+        if (spill.overBudget(growth)) {
+          disk = spillForWriting();
+          diskFile = spilled;
+        }
+      }
+      return disk == null;
+    }
+
+    /**
+     * Writes to the spill file at the position, or at the position of the file when it is negative
+     */
+    int writeDisk(ByteBuffer src, long position) throws IOException {
+      long before = disk.size();
+      checkRoom((position < 0 ? disk.position() : position) + src.remaining() - before, path);
+      int written = 0;
+      while (src.hasRemaining()) {
+        written += position < 0 ? disk.write(src) : disk.write(src, position + written);
+      }
+      diskChanged(disk.size() - before);
+      return written;
+    }
+
+    /**
+     * Counts the bytes written to the spill file, unless the content has let go of the file meanwhile
+     */
+    void diskChanged(long delta) {
+      synchronized (InMemoryFileContent.this) {
+        if (spilled == diskFile) {
+          spilledChanged(delta);
+        }
+      }
+    }
+
+    public void close() throws IOException {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      if (channel != null) {
+        channel.close();
+      }
+      if (disk != null) {
+        disk.close();
+      }
+      closeWriter();
+      if (disk == null && store != null) {
+        store.intern(content);
+      }
+      if (spill != null && spill.overBudget(0)) {
+        spill.makeRoom(0);
+      }
+    }
+  }
+
+  /**
+   * Channel of a stream, which works on the pages of the content until the content is spilled, and on the spill
+   * file of the stream afterwards.  It shares the pages of a whole file transferred to it through the content
+   * store, as the stream puts the content in the store when it is closed anyway.
+   */
+  private class StreamChannel extends InMemoryOutputFileChannel {
+    private final ContentOutputStream stream;
+
+    StreamChannel(ContentOutputStream stream, PagedBuffer buffer, TPath path) {
+      super(buffer, account, path, store);
+      this.stream = stream;
+    }
+
+    /**
+     * The spill file channel, spilling the content first if the growth takes the pages over the budget
+     */
+    private FileChannel disk(long growth) throws IOException {
+      if (stream.disk == null && growth > 0) {
+        long position = super.position();
+        if (!stream.inMemory(growth)) {
+          stream.disk.position(position);
+        }
+      }
+      return stream.disk;
+    }
+
+    public synchronized int read(ByteBuffer dst) throws IOException {
+      FileChannel disk = stream.disk;
+      return disk != null ? disk.read(dst) : super.read(dst);
+    }
+
+    public int read(ByteBuffer dst, long position) throws IOException {
+      FileChannel disk = stream.disk;
+      return disk != null ? disk.read(dst, position) : super.read(dst, position);
+    }
+
+    public synchronized int write(ByteBuffer src) throws IOException {
+      FileChannel disk = disk(position() + src.remaining() - size());
+      return disk != null ? stream.writeDisk(src, -1) : super.write(src);
+    }
+
+    public int write(ByteBuffer src, long position) throws IOException {
+      FileChannel disk = disk(position + src.remaining() - size());
+      return disk != null ? stream.writeDisk(src, position) : super.write(src, position);
+    }
+
+    public synchronized long position() throws IOException {
+      FileChannel disk = stream.disk;
+      return disk != null ? disk.position() : super.position();
+    }
+
+    public synchronized FileChannel position(long newPosition) throws IOException {
+      FileChannel disk = stream.disk;
+      if (disk != null) {
+        disk.position(newPosition);
+        return this;
+      }
+      return super.position(newPosition);
+    }
+
+    public long size() throws IOException {
+      FileChannel disk = stream.disk;
+      return disk != null ? disk.size() : super.size();
+    }
+
+    public synchronized FileChannel truncate(long size) throws IOException {
+      FileChannel disk = stream.disk;
+      if (disk != null) {
+        long before = disk.size();
+        disk.truncate(size);
+        stream.diskChanged(disk.size() - before);
+        return this;
+      }
+      return super.truncate(size);
+    }
+
+    public long transferTo(long position, long count, WritableByteChannel target) throws IOException {
+      FileChannel disk = stream.disk;
+      return disk != null ? disk.transferTo(position, count, target) : super.transferTo(position, count, target);
+    }
+
+    public long transferFrom(ReadableByteChannel src, long position, long count) throws IOException {
+      FileChannel disk = stream.disk;
+      if (disk != null) {
+        long before = disk.size();
+        long transferred = disk.transferFrom(src, position, count);
+        stream.diskChanged(disk.size() - before);
+        return transferred;
+      }
+      return super.transferFrom(src, position, count);
+    }
+
+    public void force(boolean metaData) throws IOException {
+      FileChannel disk = stream.disk;
+      if (disk != null) {
+        disk.force(metaData);
+      }
+      super.force(metaData);
+    }
+
+    /**
+     * Leaves the spill file and the content store to the stream, which closes the channel
+     */
+    protected void implCloseChannel() {
+    }
+  }
+
+  /**
+   * Deflated bytes of a content with the size of the content
+   */
+  private static class Compressed {
+    private final byte[] bytes;
+    private final long size;
+
+    Compressed(byte[] bytes, long size) {
+      this.bytes = bytes;
+      this.size = size;
+    }
+  }
+
+  /**
+   * Input stream that reads the buffer it was opened on, copying straight from the pages
+   */
+  static class ContentInputStream extends InputStream {
+    private final PagedBuffer buffer;
+    private long position;
+    private long mark;
+
+    ContentInputStream(PagedBuffer buffer) {
+      this.buffer = buffer;
+    }
+
+    public int read() {
+      return position >= buffer.size() ? -1 : buffer.byteAt(position++) & 0xFF;
+    }
+
+    public int read(byte[] b, int off, int len) {
+      if (off < 0 || len < 0 || len > b.length - off) {
+        throw new IndexOutOfBoundsException("offset <" + off + "> length <" + len + "> array <" + b.length + ">");
+      }
+      if (len == 0) {
+        return 0;
+      }
+      int read = buffer.get(position, b, off, len);
+      if (read == 0) {
+        return -1;
+      }
+      position += read;
+      return read;
+    }
+
+    public long skip(long n) {
+      long skipped = Math.max(0, Math.min(n, buffer.size() - position));
+      position += skipped;
+      return skipped;
+    }
+
+    public int available() {
+      return (int) Math.min(Integer.MAX_VALUE, Math.max(0, buffer.size() - position));
+    }
+
+    public boolean markSupported() {
+      return true;
+    }
+
+    public synchronized void mark(int readLimit) {
+      mark = position;
+    }
+
+    public synchronized void reset() {
+      position = mark;
+    }
+
+    /**
+     * Writes the rest of the content to the output stream one page at a time
+     *
+     * @param out the output stream
+     * @return number of bytes written
+     * @throws IOException error from the output stream
+     */
+    public long transferTo(OutputStream out) throws IOException {
+      long written = buffer.copyTo(out, position, buffer.size() - position);
+      position += written;
+      return written;
+    }
+  }
 }
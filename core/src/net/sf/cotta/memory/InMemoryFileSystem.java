@@ -1,34 +1,47 @@
 package net.sf.cotta.memory;
 
 import net.sf.cotta.system.FileSystem;
+import net.sf.cotta.EntryAttributes;
 import net.sf.cotta.PathContent;
 import net.sf.cotta.PathSeparator;
 import net.sf.cotta.TFileNotFoundException;
 import net.sf.cotta.TIoException;
 import net.sf.cotta.TPath;
 import net.sf.cotta.io.OutputMode;
+import net.sf.cotta.system.ConcurrentDirectoryIndex;
 import net.sf.cotta.system.ContentManager;
 import net.sf.cotta.system.DirectoryIndex;
 import net.sf.cotta.system.FileContent;
 import net.sf.cotta.system.HashBasedDirectoryIndex;
+import net.sf.cotta.system.NodeBasedDirectoryIndex;
 import net.sf.cotta.system.TreeBasedDirectoryIndex;
 
 import java.io.File;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
 /**
  * A file system whose directory structure and file contents are stored in memory.
  * It can be backed by a hash-based directory index or a tree-based one, with hash-based
- * being the default.
+ * being the default.  The concurrent index makes the file system safe to share between
+ * threads: the file contents can then be read by many threads while one thread writes.
+ * The node-based index keys its entries by the directory node they are in, so moving a
+ * directory does not touch the entries under it.
  *
  * @see net.sf.cotta.memory.InMemoryFileSystemBuilder for more flexibility in building an instance.
  */
 public class InMemoryFileSystem implements FileSystem, ContentManager<InMemoryFileContent> {
-  public enum IndexType { HASH_BASED, TREE_BASED }
+  public enum IndexType { HASH_BASED, TREE_BASED, CONCURRENT, NODE_BASED }
 
   static final PathSeparator DEFAULT_PATH_SEPARATOR = PathSeparator.Unix;
   static final ListingOrder DEFAULT_LISTING_ORDER = ListingOrder.NULL;
@@ -37,6 +50,17 @@ public class InMemoryFileSystem implements FileSystem, ContentManager<InMemoryFi
   private int fileInitialCapacity = 0;
   private int fileSizeIncrement = 16;
   private final DirectoryIndex<InMemoryFileContent> dirIndex;
+  private final PageAllocator allocator;
+  private final boolean sharedContent;
+  private final MemoryAccount account = new MemoryAccount();
+  private final ContentStore store;
+  private volatile long compressionIdleTime;
+  private volatile long nextCompression;
+  private final SpillArea spill = new SpillArea(account) {
+    void makeRoom(long growth) throws IOException {
+      spillLargest(growth);
+    }
+  };
 
   public InMemoryFileSystem() {
     this(DEFAULT_PATH_SEPARATOR);
@@ -61,12 +85,63 @@ public class InMemoryFileSystem implements FileSystem, ContentManager<InMemoryFi
    * @param index the desired directory index type
    */
   InMemoryFileSystem(PathSeparator separator, ListingOrder order, IndexType index) {
+    this(separator, order, index, false);
+  }
+
+  /**
+   * Constructor used by {@link net.sf.cotta.memory.InMemoryFileSystemBuilder}
+   * @param separator the desired path separator
+   * @param order the desired listing order
+   * @param index the desired directory index type
+   * @param compactPaths true to keep the paths of a hash-based index in their compact encoding
+   * @see net.sf.cotta.CompactPath
+   */
+  InMemoryFileSystem(PathSeparator separator, ListingOrder order, IndexType index, boolean compactPaths) {
+    this(separator, order, index, compactPaths, false);
+  }
+
+  /**
+   * Constructor used by {@link net.sf.cotta.memory.InMemoryFileSystemBuilder}
+   * @param separator the desired path separator
+   * @param order the desired listing order
+   * @param index the desired directory index type
+   * @param compactPaths true to keep the paths of a hash-based or concurrent index in their compact encoding
+   * @param offHeapContent true to keep the file contents in direct buffers outside of the heap
+   */
+  InMemoryFileSystem(PathSeparator separator, ListingOrder order, IndexType index, boolean compactPaths, boolean offHeapContent) {
+    this(separator, order, index, compactPaths, offHeapContent, false);
+  }
+
+  /**
+   * Constructor used by {@link net.sf.cotta.memory.InMemoryFileSystemBuilder}
+   * @param separator the desired path separator
+   * @param order the desired listing order
+   * @param index the desired directory index type
+   * @param compactPaths true to keep the paths of a hash-based or concurrent index in their compact encoding
+   * @param offHeapContent true to keep the file contents in direct buffers outside of the heap
+   * @param deduplicate true to keep the files with the same content in one set of pages
+   * @see ContentStore
+   */
+  InMemoryFileSystem(PathSeparator separator, ListingOrder order, IndexType index, boolean compactPaths,
+                     boolean offHeapContent, boolean deduplicate) {
+    if (offHeapContent && deduplicate) {
+      throw new IllegalArgumentException("deduplication needs the file contents on the heap");
+    }
+    this.store = deduplicate ? new ContentStore() : null;
+    this.allocator = offHeapContent ? new SlabAllocator() : PageAllocator.HEAP;
+    this.sharedContent = index == IndexType.CONCURRENT;
     if (index == IndexType.HASH_BASED) {
-      this.dirIndex = new HashBasedDirectoryIndex<InMemoryFileContent>(separator, order, this);
+      this.dirIndex = new HashBasedDirectoryIndex<InMemoryFileContent>(separator, order, this, compactPaths);
     }
     else if (index == IndexType.TREE_BASED) {
       this.dirIndex = new TreeBasedDirectoryIndex<InMemoryFileContent>(separator, order, this);
     }
+    else if (index == IndexType.CONCURRENT) {
+      this.dirIndex = new ConcurrentDirectoryIndex<InMemoryFileContent>(separator, order, this, compactPaths);
+    }
+    else if (index == IndexType.NODE_BASED) {
+      this.dirIndex = new NodeBasedDirectoryIndex<InMemoryFileContent>(separator, order, this);
+    }
     else {
       throw new IllegalArgumentException("unrecognized index type: " + index);
     }
@@ -80,8 +155,217 @@ public class InMemoryFileSystem implements FileSystem, ContentManager<InMemoryFi
     this.fileSizeIncrement = value;
   }
 
+  /**
+   * Limits the number of bytes that the file contents can take.  A write that would go over the limit fails
+   * with a disk full exception, and leaves the file as it was before the write.
+   *
+   * @param bytes the limit, or 0 for no limit
+   */
+  public void setQuota(long bytes) {
+    if (bytes < 0) {
+      throw new IllegalArgumentException("quota cannot be negative:" + bytes);
+    }
+    account.setQuota(bytes);
+  }
+
+  /**
+   * Compresses the file contents that have not been read or written for the time.  The file system looks for
+   * such contents at most once in that time, as the files are created or opened for writing, and a compressed
+   * content is decompressed the next time it is opened.  The contents need to be on the heap.
+   *
+   * @param millis time in milliseconds a content is left alone before it is compressed, or 0 not to compress
+   * @see #compressIdleContent()
+   */
+  public void setCompressionIdleTime(long millis) {
+    if (millis < 0) {
+      throw new IllegalArgumentException("idle time cannot be negative:" + millis);
+    }
+    if (millis > 0 && allocator.reusesPages()) {
+      throw new IllegalStateException("compression needs the file contents on the heap");
+    }
+    this.compressionIdleTime = millis;
+    this.nextCompression = System.currentTimeMillis() + millis;
+  }
+
+  /**
+   * Keeps the pages of the file contents within the budget by spilling the largest contents to files in the
+   * directory.  A content being written spills itself when the contents not in use do not make enough room,
+   * and goes on being written to disk.  A spilled content is read from its spill file, and read back into
+   * memory when it is opened while there is room for it.  The spill files are deleted with their files, and
+   * when the virtual machine exits.  The budget needs the file contents on the heap, as the streams still
+   * reading a spilled content keep its pages.
+   *
+   * @param bytes     the budget for the pages, or 0 not to spill
+   * @param directory directory to keep the spill files in
+   * @throws IllegalStateException if the file contents are kept off the heap
+   */
+  public void setMemoryBudget(long bytes, File directory) {
+    if (bytes < 0) {
+      throw new IllegalArgumentException("memory budget cannot be negative:" + bytes);
+    }
+    if (bytes > 0 && directory == null) {
+      throw new IllegalArgumentException("memory budget needs a directory to spill to");
+    }
+    if (bytes > 0 && allocator.reusesPages()) {
+      throw new IllegalStateException("memory budget needs the file contents on the heap");
+    }
+    spill.setBudget(bytes, directory);
+  }
+
+  /**
+   * Spills the contents not in use, largest first, until the pages fit in the budget with the growth
+   */
+  private void spillLargest(long growth) throws IOException {
+    synchronized (spill) {
+      if (!spill.overBudget(growth)) {
+        return;
+      }
+      List<InMemoryFileContent> contents = new ArrayList<InMemoryFileContent>();
+      for (InMemoryFileContent content : allContents()) {
+        if (!content.isSpilled() && content.length() > 0) {
+          contents.add(content);
+        }
+      }
+      Collections.sort(contents, new Comparator<InMemoryFileContent>() {
+        public int compare(InMemoryFileContent one, InMemoryFileContent two) {
+          return Long.compare(two.length(), one.length());
+        }
+      });
+      for (InMemoryFileContent content : contents) {
+        if (!spill.overBudget(growth)) {
+          return;
+        }
+        content.spillIfIdle();
+      }
+    }
+  }
+
+  /**
+   * Compresses the file contents that have been left alone for the compression idle time, or all of them when
+   * there is no idle time set.  This walks all the files.
+   *
+   * @return number of files compressed
+   * @see #setCompressionIdleTime(long)
+   */
+  public int compressIdleContent() {
+    if (allocator.reusesPages()) {
+      return 0;
+    }
+    long idleSince = System.currentTimeMillis() - compressionIdleTime;
+    int compressed = 0;
+    for (InMemoryFileContent content : allContents()) {
+      if (content.compressIfIdle(idleSince)) {
+        compressed++;
+      }
+    }
+    return compressed;
+  }
+
+  /**
+   * The contents of all the files, found by walking the directories from the roots
+   */
+  private List<InMemoryFileContent> allContents() {
+    List<InMemoryFileContent> contents = new ArrayList<InMemoryFileContent>(dirIndex.fileCount());
+    collectContents(TPath.parse("/"), contents);
+    collectContents(TPath.parse("."), contents);
+    return contents;
+  }
+
+  private void collectContents(TPath dir, List<InMemoryFileContent> contents) {
+    PathContent listing = dirIndex.list(dir);
+    for (TPath file : listing.files()) {
+      InMemoryFileContent content = dirIndex.fileContent(file);
+      if (content != null) {
+        contents.add(content);
+      }
+    }
+    for (TPath subDir : listing.dirs()) {
+      collectContents(subDir, contents);
+    }
+  }
+
+  private void compressIfDue() {
+    long idleTime = compressionIdleTime;
+    if (idleTime > 0) {
+      long now = System.currentTimeMillis();
+      if (now >= nextCompression) {
+        nextCompression = now + idleTime;
+        compressIdleContent();
+      }
+    }
+  }
+
+  /**
+   * The memory taken by the file system at this moment.  The totals are kept up to date as the files change,
+   * so this does not walk the files.
+   *
+   * @return the memory statistics
+   */
+  public MemoryStats stats() {
+    long offHeapBytes = allocator instanceof SlabAllocator ? ((SlabAllocator) allocator).slabBytes() : 0;
+    return new MemoryStats(account.contentBytes(), account.allocatedBytes(), offHeapBytes,
+        account.compressedContentBytes(), account.compressedBytes(), account.spilledBytes(),
+        dirIndex.fileCount(), dirIndex.dirCount(), account.quota());
+  }
+
   public InMemoryFileContent createFileContent() {
-    return new InMemoryFileContent(fileInitialCapacity, fileSizeIncrement);
+    return new InMemoryFileContent(fileInitialCapacity, fileSizeIncrement, allocator, sharedContent, account, store, spill);
+  }
+
+  public InMemoryFileContent copyFileContent(InMemoryFileContent content) {
+    return content.copy();
+  }
+
+  /**
+   * Takes a snapshot of the files and directories, which can be restored any number of times.  Nothing is
+   * copied when the snapshot is taken: the directories and the pages of the files are copied when they are
+   * changed afterwards.  Only the tree-based index keeps snapshots.
+   *
+   * @return the snapshot
+   * @throws UnsupportedOperationException if the file system does not use the tree-based index
+   * @see #restore(Snapshot)
+   */
+  public Snapshot snapshot() {
+    TreeBasedDirectoryIndex.Snapshot<InMemoryFileContent> tree = treeIndex().snapshot();
+    return new Snapshot(this, tree);
+  }
+
+  /**
+   * Puts the files and directories back to the snapshot.  The file contents created since the snapshot, and
+   * not kept by another snapshot, are released like the contents of deleted files.  The memory totals are then
+   * counted again from the file contents, as the contents kept by the snapshot may have been compressed,
+   * spilled or read back since.
+   *
+   * @param snapshot snapshot taken from this file system
+   * @throws IllegalArgumentException if the snapshot was taken from another file system
+   */
+  public void restore(Snapshot snapshot) {
+    if (snapshot.fileSystem != this) {
+      throw new IllegalArgumentException("snapshot was taken from another file system");
+    }
+    for (InMemoryFileContent dropped : treeIndex().restore(snapshot.tree)) {
+      dropped.release();
+    }
+    MemoryAccount totals = new MemoryAccount();
+    Set<ContentStore.Entry> entries = new HashSet<ContentStore.Entry>();
+    for (InMemoryFileContent content : allContents()) {
+      content.countIn(totals, entries);
+    }
+    account.reset(totals);
+  }
+
+  /**
+   * The number of distinct contents kept by the content store, or 0 without deduplication
+   */
+  int storedContentCount() {
+    return store != null ? store.size() : 0;
+  }
+
+  private TreeBasedDirectoryIndex<InMemoryFileContent> treeIndex() {
+    if (!(dirIndex instanceof TreeBasedDirectoryIndex)) {
+      throw new UnsupportedOperationException("snapshots need the tree-based index");
+    }
+    return (TreeBasedDirectoryIndex<InMemoryFileContent>) dirIndex;
   }
 
   public boolean fileExists(TPath path) {
@@ -89,6 +373,7 @@ public class InMemoryFileSystem implements FileSystem, ContentManager<InMemoryFi
   }
 
   public void createFile(TPath path) throws TIoException {
+    compressIfDue();
     dirIndex.createFile(path).setContent("");
   }
 
@@ -97,7 +382,11 @@ public class InMemoryFileSystem implements FileSystem, ContentManager<InMemoryFi
   }
 
   public void deleteFile(TPath path) throws TFileNotFoundException {
+    InMemoryFileContent content = dirIndex.writableFileContent(path);
     dirIndex.deleteFile(path);
+    if (content != null) {
+      content.release();
+    }
   }
 
   public boolean dirExists(TPath path) {
@@ -109,11 +398,11 @@ public class InMemoryFileSystem implements FileSystem, ContentManager<InMemoryFi
   }
 
   public InputStream createInputStream(TPath path) throws TIoException {
-    return retrieveFileContent(path).inputStream();
+    return retrieveFileContent(path).inputStream(path);
   }
 
-  private FileContent retrieveFileContent(TPath path) throws TFileNotFoundException {
-    FileContent content = dirIndex.fileContent(path);
+  private InMemoryFileContent retrieveFileContent(TPath path) throws TFileNotFoundException {
+    InMemoryFileContent content = dirIndex.fileContent(path);
     if (content == null) {
       throw new TFileNotFoundException(path);
     }
@@ -121,18 +410,23 @@ public class InMemoryFileSystem implements FileSystem, ContentManager<InMemoryFi
   }
 
   public OutputStream createOutputStream(TPath path, OutputMode mode) throws TIoException {
-    InMemoryFileContent content = dirIndex.fileContent(path);
+    compressIfDue();
+    InMemoryFileContent content = dirIndex.writableFileContent(path);
     if (content == null) {
       content = dirIndex.createFile(path);
     }
     if (mode.isOverwrite()) {
       content.setContent("");
     }
-    return content.outputStream();
+    return content.outputStream(path);
   }
 
   public FileChannel createOutputChannel(TPath path, OutputStream outputStream) throws TIoException {
-    return null;
+    InMemoryFileContent content = dirIndex.writableFileContent(path);
+    if (content == null) {
+      throw new TFileNotFoundException(path);
+    }
+    return content.outputChannel(path, outputStream);
   }
 
   public void deleteDirectory(TPath path) throws TIoException {
@@ -152,13 +446,21 @@ public class InMemoryFileSystem implements FileSystem, ContentManager<InMemoryFi
   }
 
   public long fileLength(TPath path) {
-    return dirIndex.fileContent(path).getContentBuffer().size();
+    return dirIndex.fileContent(path).length();
   }
 
   public long fileLastModified(TPath path) {
     return dirIndex.fileContent(path).lastModified();
   }
 
+  public EntryAttributes attributes(TPath path) {
+    InMemoryFileContent content = dirIndex.fileContent(path);
+    if (content != null) {
+      return EntryAttributes.file(content.length(), content.lastModified());
+    }
+    return dirIndex.dirExists(path) ? EntryAttributes.directory(0) : EntryAttributes.MISSING;
+  }
+
   public int compare(TPath path1, TPath path2) {
     return dirIndex.compare(path1, path2);
   }
@@ -187,8 +489,22 @@ public class InMemoryFileSystem implements FileSystem, ContentManager<InMemoryFi
     return "memory://" + pathString(path);
   }
 
-  public FileChannel createInputChannel(TPath path) throws TFileNotFoundException {
-    return retrieveFileContent(path).inputChannel();
+  public FileChannel createInputChannel(TPath path) throws TIoException {
+    return retrieveFileContent(path).inputChannel(path);
   }
 
+  /**
+   * Files and directories of an in-memory file system at one point in time
+   *
+   * @see InMemoryFileSystem#snapshot()
+   */
+  public static final class Snapshot {
+    private final InMemoryFileSystem fileSystem;
+    private final TreeBasedDirectoryIndex.Snapshot<InMemoryFileContent> tree;
+
+    private Snapshot(InMemoryFileSystem fileSystem, TreeBasedDirectoryIndex.Snapshot<InMemoryFileContent> tree) {
+      this.fileSystem = fileSystem;
+      this.tree = tree;
+    }
+  }
 }
@@ -2,11 +2,20 @@ package net.sf.cotta.memory;
 
 import net.sf.cotta.PathSeparator;
 
+import java.io.File;
+
 public class InMemoryFileSystemBuilder {
 
   private PathSeparator separator = InMemoryFileSystem.DEFAULT_PATH_SEPARATOR;
   private ListingOrder order = InMemoryFileSystem.DEFAULT_LISTING_ORDER;
   private InMemoryFileSystem.IndexType index = InMemoryFileSystem.DEFAULT_INDEX_TYPE;
+  private boolean compactPaths = false;
+  private boolean offHeapContent = false;
+  private long quota = 0;
+  private boolean deduplicate = false;
+  private long compressionIdleTime = 0;
+  private long memoryBudget = 0;
+  private File spillDirectory;
 
   public InMemoryFileSystemBuilder() {
   }
@@ -26,7 +35,92 @@ public class InMemoryFileSystemBuilder {
     return this;
   }
 
+  /**
+   * Keeps the paths of the hash-based directory index in their compact encoding, which
+   * takes much less memory for a large number of files at the cost of slower lookups
+   *
+   * @param compactPaths true to use compact paths
+   * @return the builder
+   * @see net.sf.cotta.CompactPath
+   */
+  public InMemoryFileSystemBuilder withCompactPaths(boolean compactPaths) {
+    this.compactPaths = compactPaths;
+    return this;
+  }
+
+  /**
+   * Keeps the file contents in direct buffer slabs outside of the heap, so that the heap only holds the
+   * directory index.  The memory of a file is freed when it is deleted or overwritten, and the streams
+   * still open on it see it as empty.
+   *
+   * @param offHeapContent true to keep the file contents off the heap
+   * @return the builder
+   */
+  public InMemoryFileSystemBuilder withOffHeapContent(boolean offHeapContent) {
+    this.offHeapContent = offHeapContent;
+    return this;
+  }
+
+  /**
+   * Limits the number of bytes that the file contents can take, the writes that would go over it fail
+   * with a disk full exception
+   *
+   * @param bytes the limit, or 0 for no limit
+   * @return the builder
+   * @see InMemoryFileSystem#setQuota(long)
+   */
+  public InMemoryFileSystemBuilder withQuota(long bytes) {
+    this.quota = bytes;
+    return this;
+  }
+
+  /**
+   * Keeps the files with the same content in one set of pages, which are copied when a file changes them.
+   * A file is matched by its bytes when the stream that writes it is closed, and copying a file within the
+   * file system shares its pages without reading them.  The contents need to be on the heap.
+   *
+   * @param deduplicate true to share the pages of the files with the same content
+   * @return the builder
+   */
+  public InMemoryFileSystemBuilder withDeduplication(boolean deduplicate) {
+    this.deduplicate = deduplicate;
+    return this;
+  }
+
+  /**
+   * Compresses the file contents that have not been read or written for the time, and decompresses them the
+   * next time they are opened.  The contents need to be on the heap.
+   *
+   * @param millis time in milliseconds a content is left alone before it is compressed, or 0 not to compress
+   * @return the builder
+   * @see InMemoryFileSystem#setCompressionIdleTime(long)
+   */
+  public InMemoryFileSystemBuilder withCompressionIdleTime(long millis) {
+    this.compressionIdleTime = millis;
+    return this;
+  }
+
+  /**
+   * Keeps the pages of the file contents within the budget by spilling the largest contents to files in the
+   * directory, from where they are read back when there is room for them again
+   *
+   * @param bytes     the budget for the pages, or 0 not to spill
+   * @param directory directory to keep the spill files in
+   * @return the builder
+   * @see InMemoryFileSystem#setMemoryBudget(long, File)
+   */
+  public InMemoryFileSystemBuilder withMemoryBudget(long bytes, File directory) {
+    this.memoryBudget = bytes;
+    this.spillDirectory = directory;
+    return this;
+  }
+
   public InMemoryFileSystem build() {
-    return new InMemoryFileSystem(separator, order, index);
+    InMemoryFileSystem fileSystem =
+        new InMemoryFileSystem(separator, order, index, compactPaths, offHeapContent, deduplicate);
+    fileSystem.setQuota(quota);
+    fileSystem.setCompressionIdleTime(compressionIdleTime);
+    fileSystem.setMemoryBudget(memoryBudget, spillDirectory);
+    return fileSystem;
   }
 }
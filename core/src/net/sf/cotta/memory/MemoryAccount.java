@@ -0,0 +1,97 @@
+package net.sf.cotta.memory;
+
+import net.sf.cotta.TIoException;
+import net.sf.cotta.TPath;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Running totals of the memory taken by the file contents of one file system, updated by the buffers as they
+ * change, and the quota that the writes are checked against.  The compressed contents are counted apart from
+ * the buffers, by their size before and after compression, and so are the contents spilled to disk.
+ */
+class MemoryAccount {
+  private final AtomicLong contentBytes = new AtomicLong();
+  private final AtomicLong allocatedBytes = new AtomicLong();
+  private final AtomicLong compressedContentBytes = new AtomicLong();
+  private final AtomicLong compressedBytes = new AtomicLong();
+  private final AtomicLong spilledBytes = new AtomicLong();
+  private volatile long quota;
+
+  void contentChanged(long delta) {
+    if (delta != 0) {
+      contentBytes.addAndGet(delta);
+    }
+  }
+
+  void allocated(long delta) {
+    if (delta != 0) {
+      allocatedBytes.addAndGet(delta);
+    }
+  }
+
+  void compressed(long contentDelta, long compressedDelta) {
+    compressedContentBytes.addAndGet(contentDelta);
+    compressedBytes.addAndGet(compressedDelta);
+  }
+
+  void spilled(long delta) {
+    if (delta != 0) {
+      spilledBytes.addAndGet(delta);
+    }
+  }
+
+  long contentBytes() {
+    return contentBytes.get();
+  }
+
+  long allocatedBytes() {
+    return allocatedBytes.get();
+  }
+
+  long compressedContentBytes() {
+    return compressedContentBytes.get();
+  }
+
+  long compressedBytes() {
+    return compressedBytes.get();
+  }
+
+  long spilledBytes() {
+    return spilledBytes.get();
+  }
+
+  long quota() {
+    return quota;
+  }
+
+  void setQuota(long quota) {
+    this.quota = quota;
+  }
+
+  /**
+   * Replaces the totals by the ones counted again from the contents, as the contents are put back to a snapshot
+   */
+  void reset(MemoryAccount totals) {
+    contentBytes.set(totals.contentBytes());
+    allocatedBytes.set(totals.allocatedBytes());
+    compressedContentBytes.set(totals.compressedContentBytes());
+    compressedBytes.set(totals.compressedBytes());
+    spilledBytes.set(totals.spilledBytes());
+  }
+
+  /**
+   * Checks that the content can grow by the number of bytes without going over the quota.  The check and the
+   * write are not atomic, so threads writing at the same time can go over the quota by their last write.
+   *
+   * @param growth number of bytes the content grows by
+   * @param path   path of the file being written
+   * @throws TIoException if the quota would be exceeded
+   */
+  void checkRoom(long growth, TPath path) throws TIoException {
+    long limit = quota;
+    if (limit > 0 && growth > 0 && contentBytes.get() + compressedContentBytes.get() + spilledBytes.get() + growth > limit) {
+      throw new TIoException(path, "Disk is full");
+    }
+  }
+}
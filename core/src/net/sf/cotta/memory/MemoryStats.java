@@ -0,0 +1,106 @@
+package net.sf.cotta.memory;
+
+/**
+ * Memory taken by an in-memory file system at one point in time
+ *
+ * @see InMemoryFileSystem#stats()
+ */
+public final class MemoryStats {
+  private final long contentBytes;
+  private final long allocatedBytes;
+  private final long offHeapBytes;
+  private final long compressedContentBytes;
+  private final long compressedBytes;
+  private final long spilledBytes;
+  private final int fileCount;
+  private final int directoryCount;
+  private final long quota;
+
+  MemoryStats(long contentBytes, long allocatedBytes, long offHeapBytes, long compressedContentBytes,
+              long compressedBytes, long spilledBytes, int fileCount, int directoryCount, long quota) {
+    this.contentBytes = contentBytes;
+    this.allocatedBytes = allocatedBytes;
+    this.offHeapBytes = offHeapBytes;
+    this.compressedContentBytes = compressedContentBytes;
+    this.compressedBytes = compressedBytes;
+    this.spilledBytes = spilledBytes;
+    this.fileCount = fileCount;
+    this.directoryCount = directoryCount;
+    this.quota = quota;
+  }
+
+  /**
+   * @return number of bytes in the file contents kept in pages, which leaves out the compressed and spilled ones
+   */
+  public long contentBytes() {
+    return contentBytes;
+  }
+
+  /**
+   * @return number of bytes in the pages allocated for the file contents, where the pages shared by the files
+   *         with the same content through deduplication are counted once
+   */
+  public long allocatedBytes() {
+    return allocatedBytes;
+  }
+
+  /**
+   * @return number of bytes allocated but not used by the file contents yet, which is negative when
+   *         deduplication saves more than the slack
+   */
+  public long slackBytes() {
+    return allocatedBytes - contentBytes;
+  }
+
+  /**
+   * @return number of bytes reserved outside of the heap, 0 unless the contents are kept off the heap
+   */
+  public long offHeapBytes() {
+    return offHeapBytes;
+  }
+
+  /**
+   * @return number of bytes in the file contents that are compressed, before compression
+   */
+  public long compressedContentBytes() {
+    return compressedContentBytes;
+  }
+
+  /**
+   * @return number of bytes taken by the compressed file contents
+   */
+  public long compressedBytes() {
+    return compressedBytes;
+  }
+
+  /**
+   * @return number of bytes in the file contents spilled to disk
+   */
+  public long spilledBytes() {
+    return spilledBytes;
+  }
+
+  public int fileCount() {
+    return fileCount;
+  }
+
+  /**
+   * @return number of directories, not counting the roots
+   */
+  public int directoryCount() {
+    return directoryCount;
+  }
+
+  /**
+   * @return the limit of the content bytes, or 0 for no limit
+   */
+  public long quota() {
+    return quota;
+  }
+
+  public String toString() {
+    return "MemoryStats{content=" + contentBytes + ", allocated=" + allocatedBytes + ", offHeap=" + offHeapBytes +
+        ", compressedContent=" + compressedContentBytes + ", compressed=" + compressedBytes + ", spilled=" + spilledBytes +
+        ", files=" + fileCount + ", directories=" + directoryCount + ", quota=" + quota + "}";
+  }
+}
@@ -0,0 +1,49 @@
+package net.sf.cotta.memory;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Allocator of the pages of PagedBuffer
+ *
+ * @see PagedBuffer
+ * @see SlabAllocator
+ */
+interface PageAllocator {
+  /**
+   * Allocates pages on the heap, leaving freed pages to the garbage collector
+   */
+  PageAllocator HEAP = new PageAllocator() {
+    public ByteBuffer allocate(int capacity) {
+      return ByteBuffer.allocate(capacity);
+    }
+
+    public void free(ByteBuffer page) {
+    }
+
+    public boolean reusesPages() {
+      return false;
+    }
+  };
+
+  /**
+   * Allocates a page
+   *
+   * @param capacity minimum capacity of the page
+   * @return the page, positioned at zero with the limit at its capacity
+   */
+  ByteBuffer allocate(int capacity);
+
+  /**
+   * Gives back a page that is no longer used
+   *
+   * @param page the page allocated by this allocator
+   */
+  void free(ByteBuffer page);
+
+  /**
+   * Checks if freed pages are handed out again, in which case a buffer must not be read after it is released
+   *
+   * @return true if freed pages are reused
+   */
+  boolean reusesPages();
+}
@@ -0,0 +1,677 @@
+package net.sf.cotta.memory;
+
+import net.sf.cotta.ByteArrayIndexOutOfBoundsException;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+/**
+ * Byte buffer made of fixed size pages, used as the content of the in-memory files.  Appending never copies
+ * the content already written, the position of a byte is a long, and any byte is found with a shift and a mask.
+ * <p/>
+ * All pages but the last one are full.  The last page starts small and doubles until it reaches the page size,
+ * so small files only take about their own size, and a large file takes at most one partly used page on top
+ * of its size.  The pages are on the heap unless the buffer is created with an off-heap allocator.
+ * <p/>
+ * A buffer can share its pages with a copy, after which a page is copied the first time either buffer changes it.
+ * Shared pages are never given back to the allocator, they are left to the garbage collector.
+ * <p/>
+ * While the buffer holds an entry of the content store, its pages are the pages of the entry, which the entry
+ * accounts for once for all its buffers.  The buffer accounts for its pages again when it lets go of the entry.
+ *
+ * @see ByteArrayBuffer
+ */
+public class PagedBuffer {
+  public static final int DEFAULT_PAGE_SIZE = 64 * 1024;
+  public static final int DEFAULT_INCREMENT = 16;
+
+  private static final ByteBuffer[] NO_PAGES = new ByteBuffer[0];
+
+  private final PageAllocator allocator;
+  private MemoryAccount account; // null when the memory is not accounted for
+  private final int pageShift;
+  private final int pageSize;
+  private final int increment;
+  private ByteBuffer[] pages = NO_PAGES;
+  private boolean[] sharedPages; // null until the pages are shared
+  private volatile ContentStore.Entry entry; // entry of the content store holding the same bytes, if any
+  private int pageCount;
+  private long size;
+
+  public PagedBuffer() {
+    this(0);
+  }
+
+  public PagedBuffer(int initialCapacity) {
+    this(initialCapacity, DEFAULT_INCREMENT);
+  }
+
+  public PagedBuffer(int initialCapacity, int increment) {
+    this(initialCapacity, increment, DEFAULT_PAGE_SIZE);
+  }
+
+  /**
+   * Creates the buffer
+   *
+   * @param initialCapacity capacity of the first page
+   * @param increment       minimum capacity of a page when it is started
+   * @param pageSize        size of the pages, rounded up to a power of two
+   */
+  public PagedBuffer(int initialCapacity, int increment, int pageSize) {
+    this(initialCapacity, increment, pageSize, PageAllocator.HEAP);
+  }
+
+  PagedBuffer(int initialCapacity, int increment, int pageSize, PageAllocator allocator) {
+    this(initialCapacity, increment, pageSize, allocator, null);
+  }
+
+  PagedBuffer(int initialCapacity, int increment, int pageSize, PageAllocator allocator, MemoryAccount account) {
+    if (pageSize <= 0) {
+      throw new IllegalArgumentException("page size needs to be positive:" + pageSize);
+    }
+    this.allocator = allocator;
+    this.account = account;
+    this.pageShift = 32 - Integer.numberOfLeadingZeros(pageSize - 1);
+    this.pageSize = 1 << pageShift;
+    this.increment = Math.max(1, Math.min(increment, this.pageSize));
+    if (initialCapacity > 0) {
+      addPage(Math.min(initialCapacity, this.pageSize));
+    }
+  }
+
+  public PagedBuffer(byte[] content) {
+    this(content.length);
+    append(content);
+  }
+
+  public long size() {
+    return size;
+  }
+
+  public PagedBuffer append(byte b) {
+    leaveEntry();
+    ByteBuffer page = pageForAppend();
+    page.put(offset(size), b);
+    size++;
+    contentChanged(1);
+    return this;
+  }
+
+  public PagedBuffer append(byte[] b, int off, int len) {
+    contentChanged(len);
+    while (len > 0) {
+      ByteBuffer page = pageForAppend();
+      int offset = offset(size);
+      int count = Math.min(len, page.capacity() - offset);
+      if (page.hasArray()) {
+        System.arraycopy(b, off, page.array(), page.arrayOffset() + offset, count);
+      } else {
+        ByteBuffer view = page.duplicate();
+        view.position(offset);
+        view.put(b, off, count);
+      }
+      size += count;
+      off += count;
+      len -= count;
+    }
+    return this;
+  }
+
+  public PagedBuffer append(byte[] b) {
+    return append(b, 0, b.length);
+  }
+
+  /**
+   * Appends the bytes of the string in the default charset
+   */
+  public void append(String value) {
+    append(value.getBytes());
+  }
+
+  public void append(String value, String charsetName) throws IOException {
+    append(value.getBytes(charsetName));
+  }
+
+  /**
+   * Appends the remaining bytes of the source buffer
+   *
+   * @param src source buffer
+   * @return number of bytes appended
+   */
+  public int copyFrom(ByteBuffer src) {
+    contentChanged(src.remaining());
+    return appendFrom(src);
+  }
+
+  private int appendFrom(ByteBuffer src) {
+    int total = src.remaining();
+    while (src.hasRemaining()) {
+      ByteBuffer page = pageForAppend();
+      int offset = offset(size);
+      int count = Math.min(src.remaining(), page.capacity() - offset);
+      ByteBuffer part = src.duplicate();
+      part.limit(part.position() + count);
+      ByteBuffer view = page.duplicate();
+      view.position(offset);
+      view.put(part);
+      src.position(src.position() + count);
+      size += count;
+    }
+    return total;
+  }
+
+  /**
+   * Writes the remaining bytes of the source buffer at the position, overwriting the bytes already there and
+   * growing the buffer when the write goes past the end.  A gap between the end and the position is filled
+   * with zeros.
+   *
+   * @param position position of the first byte to write
+   * @param src      source buffer
+   * @return number of bytes written
+   */
+  public int write(long position, ByteBuffer src) {
+    if (position < 0) {
+      throw new IllegalArgumentException("position cannot be negative:" + position);
+    }
+    leaveEntry();
+    int total = src.remaining();
+    long before = size;
+    if (position > size) {
+      appendZeros(position - size);
+    }
+    while (src.hasRemaining() && position < size) {
+      int offset = offset(position);
+      int count = (int) Math.min(Math.min(src.remaining(), pageSize - offset), size - position);
+      ByteBuffer part = src.duplicate();
+      part.limit(part.position() + count);
+      pageForWrite((int) (position >>> pageShift));
+      view(position, offset, count).put(part);
+      src.position(src.position() + count);
+      position += count;
+    }
+    appendFrom(src);
+    contentChanged(size - before);
+    return total;
+  }
+
+  /**
+   * Cuts the buffer down to the size, giving back the pages past the end.  Nothing happens if the buffer is
+   * not larger than the size.
+   *
+   * @param newSize size to cut the buffer to
+   */
+  public void truncate(long newSize) {
+    if (newSize < 0) {
+      throw new IllegalArgumentException("size cannot be negative:" + newSize);
+    }
+    if (newSize >= size) {
+      return;
+    }
+    leaveEntry();
+    int keep = (int) ((newSize + pageSize - 1) >>> pageShift);
+    for (int i = keep; i < pageCount; i++) {
+      allocated(-pages[i].capacity());
+      free(i);
+      pages[i] = null;
+    }
+    pageCount = keep;
+    contentChanged(newSize - size);
+    size = newSize;
+  }
+
+  public byte byteAt(long position) {
+    if (position < 0 || position >= size) {
+      throw new ByteArrayIndexOutOfBoundsException(toInt(position), toInt(size));
+    }
+    return pages[(int) (position >>> pageShift)].get(offset(position));
+  }
+
+  /**
+   * Copies the bytes starting at the position into the array
+   *
+   * @param position position of the first byte
+   * @param dst      destination array
+   * @param off      offset in the destination array
+   * @param len      maximum number of bytes to copy
+   * @return number of bytes copied, which is less than the length at the end of the buffer
+   */
+  public int get(long position, byte[] dst, int off, int len) {
+    int copied = 0;
+    while (copied < len && position < size) {
+      ByteBuffer page = pages[(int) (position >>> pageShift)];
+      int offset = offset(position);
+      int count = (int) Math.min(Math.min(len - copied, pageSize - offset), size - position);
+      if (page.hasArray()) {
+        System.arraycopy(page.array(), page.arrayOffset() + offset, dst, off + copied, count);
+      } else {
+        ByteBuffer view = page.duplicate();
+        view.position(offset);
+        view.get(dst, off + copied, count);
+      }
+      copied += count;
+      position += count;
+    }
+    return copied;
+  }
+
+  /**
+   * Copies the bytes starting at the position into the destination buffer, straight from the pages
+   *
+   * @param dst   destination buffer
+   * @param start position of the first byte
+   * @param count maximum number of bytes to copy
+   * @return number of bytes copied
+   */
+  public long copyTo(ByteBuffer dst, long start, int count) {
+    long end = Math.min(size, start + count);
+    long position = start;
+    while (position < end) {
+      int offset = offset(position);
+      int length = (int) Math.min(pageSize - offset, end - position);
+      dst.put(view(position, offset, length));
+      position += length;
+    }
+    return Math.max(0, end - start);
+  }
+
+  /**
+   * Writes the bytes starting at the position to the channel, one page at a time, stopping when the channel
+   * takes less than it is given
+   *
+   * @param target   target channel
+   * @param position position of the first byte
+   * @param count    maximum number of bytes to write
+   * @return number of bytes written
+   * @throws IOException error from the channel
+   */
+  public long copyTo(WritableByteChannel target, long position, long count) throws IOException {
+    long end = Math.min(size, position + count);
+    long written = 0;
+    while (position < end) {
+      int offset = offset(position);
+      int length = (int) Math.min(pageSize - offset, end - position);
+      int result = target.write(view(position, offset, length));
+      written += result;
+      position += result;
+      if (result < length) {
+        break;
+      }
+    }
+    return written;
+  }
+
+  /**
+   * Writes the bytes starting at the position to the output stream one page at a time.  Heap pages are
+   * written directly, off-heap pages go through one page sized array.
+   *
+   * @param out      output stream
+   * @param position position of the first byte
+   * @param count    maximum number of bytes to write
+   * @return number of bytes written
+   * @throws IOException error from the output stream
+   */
+  public long copyTo(OutputStream out, long position, long count) throws IOException {
+    long end = Math.min(size, position + count);
+    long start = position;
+    byte[] transfer = null;
+    while (position < end) {
+      ByteBuffer page = pages[(int) (position >>> pageShift)];
+      int offset = offset(position);
+      int length = (int) Math.min(pageSize - offset, end - position);
+      if (page.hasArray()) {
+        out.write(page.array(), page.arrayOffset() + offset, length);
+      } else {
+        if (transfer == null) {
+          transfer = new byte[pageSize];
+        }
+        view(position, offset, length).get(transfer, 0, length);
+        out.write(transfer, 0, length);
+      }
+      position += length;
+    }
+    return Math.max(0, end - start);
+  }
+
+  public byte[] toByteArray() {
+    if (size > Integer.MAX_VALUE) {
+      throw new IllegalStateException("content of <" + size + "> bytes does not fit in an array");
+    }
+    byte[] result = new byte[(int) size];
+    get(0, result, 0, result.length);
+    return result;
+  }
+
+  /**
+   * Gives the pages back to the allocator and empties the buffer
+   */
+  void release() {
+    detach();
+    for (int i = 0; i < pageCount; i++) {
+      free(i);
+    }
+    pages = NO_PAGES;
+    sharedPages = null;
+    pageCount = 0;
+    size = 0;
+  }
+
+  /**
+   * Takes the buffer out of the memory account, as its file is deleted or overwritten.  The changes made
+   * afterwards by the streams still open on the buffer are not accounted for.
+   */
+  void detach() {
+    leaveEntry();
+    if (account != null) {
+      account.contentChanged(-size);
+      account.allocated(-capacity());
+      account = null;
+    }
+  }
+
+  /**
+   * Creates a copy of the buffer that shares its pages.  Taking the copy costs as much as copying the page
+   * table, and the pages are only copied when they are changed afterwards.
+   *
+   * @return the copy
+   */
+  PagedBuffer share() {
+    PagedBuffer copy = emptyCopy();
+    if (sharedPages == null) {
+      sharedPages = new boolean[pages.length];
+    }
+    Arrays.fill(sharedPages, 0, pageCount, true);
+    copy.pages = pages.clone();
+    copy.sharedPages = sharedPages.clone();
+    copy.pageCount = pageCount;
+    copy.size = size;
+    for (int i = 0; i < pageCount; i++) {
+      copy.allocated(pages[i].capacity());
+    }
+    copy.contentChanged(size);
+    return copy;
+  }
+
+  /**
+   * Replaces the content of this buffer by the content of the source, sharing the pages of the source
+   *
+   * @param source buffer to share the pages of
+   */
+  void shareFrom(PagedBuffer source) {
+    adopt(source.share());
+  }
+
+  /**
+   * Replaces the content of this buffer by the content of the entry if they have the same bytes, after
+   * which the buffer holds the entry until it is changed
+   *
+   * @param entry entry of the content store, already acquired for this buffer
+   * @return true if the buffer took the content of the entry
+   */
+  boolean dedupFrom(ContentStore.Entry entry) {
+    if (!contentEquals(entry.buffer())) {
+      return false;
+    }
+    adopt(entry.buffer().share());
+    join(entry);
+    return true;
+  }
+
+  /**
+   * Puts the buffer in the entry of the content store, when it has just been given the pages of the entry,
+   * which the entry accounts for from then on
+   */
+  void join(ContentStore.Entry entry) {
+    this.entry = entry;
+    allocated(-capacity());
+  }
+
+  ContentStore.Entry entry() {
+    return entry;
+  }
+
+  /**
+   * Adds the bytes and the pages of the buffer to the totals, unless it has been taken out of the account.  The
+   * pages of an entry of the content store are added for the first buffer holding the entry.
+   *
+   * @param totals  totals to add to
+   * @param entries entries whose pages have been added already
+   */
+  void countIn(MemoryAccount totals, Set<ContentStore.Entry> entries) {
+    if (account == null) {
+      return;
+    }
+    totals.contentChanged(size);
+    ContentStore.Entry held = entry;
+    if (held == null) {
+      totals.allocated(capacity());
+    } else if (entries.add(held)) {
+      totals.allocated(held.buffer().capacity());
+    }
+  }
+
+  /**
+   * Takes the pages of the copy in place of the pages of this buffer, moving the copy to the account of this
+   * buffer
+   */
+  void adopt(PagedBuffer copy) {
+    if (copy.pageSize != pageSize) {
+      throw new IllegalArgumentException("page size <" + copy.pageSize + "> does not match <" + pageSize + ">");
+    }
+    copy.detach();
+    contentChanged(-size);
+    allocated(-capacity());
+    for (int i = 0; i < pageCount; i++) {
+      free(i);
+    }
+    pages = copy.pages;
+    sharedPages = copy.sharedPages;
+    pageCount = copy.pageCount;
+    size = copy.size;
+    allocated(capacity());
+    contentChanged(size);
+  }
+
+  /**
+   * CRC32 checksum of the content, used with the size to look the content up in the content store
+   */
+  long checksum() {
+    CRC32 crc = new CRC32();
+    for (long position = 0; position < size; position += pageSize) {
+      crc.update(view(position, 0, (int) Math.min(pageSize, size - position)));
+    }
+    return crc.getValue();
+  }
+
+  /**
+   * Compares the bytes of the buffers page by page
+   */
+  boolean contentEquals(PagedBuffer other) {
+    if (other.size() != size || other.pageSize != pageSize) {
+      return false;
+    }
+    for (long position = 0; position < size; position += pageSize) {
+      int length = (int) Math.min(pageSize, size - position);
+      if (!view(position, 0, length).equals(other.view(position, 0, length))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * An empty buffer with the same settings, for {@link #share()}
+   */
+  PagedBuffer emptyCopy() {
+    return new PagedBuffer(0, increment, pageSize, allocator, account);
+  }
+
+  int increment() {
+    return increment;
+  }
+
+  int pageSize() {
+    return pageSize;
+  }
+
+  PageAllocator allocator() {
+    return allocator;
+  }
+
+  MemoryAccount account() {
+    return account;
+  }
+
+  /**
+   * Total capacity of the pages, of which the bytes past the size are the slack of the buffer
+   */
+  long capacity() {
+    long capacity = 0;
+    for (int i = 0; i < pageCount; i++) {
+      capacity += pages[i].capacity();
+    }
+    return capacity;
+  }
+
+  /**
+   * This method returns a string using the default charset.
+   */
+  public String toString() {
+    return new String(toByteArray());
+  }
+
+  public String toString(String charsetName) throws UnsupportedEncodingException {
+    return new String(toByteArray(), charsetName);
+  }
+
+  private int offset(long position) {
+    return ((int) position) & (pageSize - 1);
+  }
+
+  private ByteBuffer view(long position, int offset, int length) {
+    ByteBuffer view = pages[(int) (position >>> pageShift)].duplicate();
+    view.limit(offset + length);
+    view.position(offset);
+    return view;
+  }
+
+  /**
+   * The page where the next byte goes, starting a new page or growing the last page if it is full
+   */
+  private ByteBuffer pageForAppend() {
+    int index = (int) (size >>> pageShift);
+    int offset = offset(size);
+    if (index == pageCount) {
+      return addPage(index == 0 ? increment : Math.max(increment, pageSize >>> 3));
+    }
+    ByteBuffer page = pages[index];
+    if (offset == page.capacity()) {
+      ByteBuffer grown = allocator.allocate(Math.min(pageSize, page.capacity() * 2));
+      ByteBuffer content = page.duplicate();
+      content.clear();
+      grown.put(content);
+      grown.clear();
+      allocated(grown.capacity() - page.capacity());
+      free(index);
+      pages[index] = grown;
+      return grown;
+    }
+    return pageForWrite(index);
+  }
+
+  /**
+   * The page at the index, copied first if it is shared with another buffer
+   */
+  private ByteBuffer pageForWrite(int index) {
+    ByteBuffer page = pages[index];
+    if (sharedPages != null && sharedPages[index]) {
+      ByteBuffer copy = allocator.allocate(page.capacity());
+      ByteBuffer content = page.duplicate();
+      content.clear();
+      copy.put(content);
+      copy.clear();
+      pages[index] = copy;
+      sharedPages[index] = false;
+      page = copy;
+    }
+    return page;
+  }
+
+  /**
+   * Gives the page at the index back to the allocator unless it is shared
+   */
+  private void free(int index) {
+    if (sharedPages != null && sharedPages[index]) {
+      sharedPages[index] = false;
+    } else {
+      allocator.free(pages[index]);
+    }
+  }
+
+  private void appendZeros(long count) {
+    while (count > 0) {
+      ByteBuffer page = pageForAppend();
+      int offset = offset(size);
+      int length = (int) Math.min(count, page.capacity() - offset);
+      if (page.hasArray()) {
+        int start = page.arrayOffset() + offset;
+        Arrays.fill(page.array(), start, start + length, (byte) 0);
+      } else {
+        for (int i = 0; i < length; i++) {
+          page.put(offset + i, (byte) 0);
+        }
+      }
+      size += length;
+      count -= length;
+    }
+  }
+
+  private ByteBuffer addPage(int capacity) {
+    if (pageCount == pages.length) {
+      ByteBuffer[] grown = new ByteBuffer[Math.max(4, pages.length * 2)];
+      System.arraycopy(pages, 0, grown, 0, pageCount);
+      pages = grown;
+      if (sharedPages != null) {
+        sharedPages = Arrays.copyOf(sharedPages, grown.length);
+      }
+    }
+    ByteBuffer page = allocator.allocate(capacity);
+    pages[pageCount++] = page;
+    allocated(page.capacity());
+    return page;
+  }
+
+  private void contentChanged(long delta) {
+    leaveEntry();
+    if (account != null) {
+      account.contentChanged(delta);
+    }
+  }
+
+  /**
+   * Lets go of the entry of the content store before the buffer changes, accounting for the pages again
+   */
+  private void leaveEntry() {
+    ContentStore.Entry held = entry;
+    if (held != null) {
+      entry = null;
+      allocated(capacity());
+      held.release();
+    }
+  }
+
+  private void allocated(long delta) {
+    if (account != null) {
+      account.allocated(delta);
+    }
+  }
+
+  private static int toInt(long value) {
+    return (int) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, value));
+  }
+}
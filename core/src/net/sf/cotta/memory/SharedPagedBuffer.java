@@ -0,0 +1,190 @@
+package net.sf.cotta.memory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Paged buffer for the files of a file system shared by threads.  Any number of threads can read the buffer at
+ * the same time, while a change waits for the readers to finish and keeps the other threads out until it is done.
+ */
+class SharedPagedBuffer extends PagedBuffer {
+  private final Lock readLock;
+  private final Lock writeLock;
+
+  SharedPagedBuffer(int initialCapacity, int increment, int pageSize, PageAllocator allocator, MemoryAccount account) {
+    super(initialCapacity, increment, pageSize, allocator, account);
+    ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    this.readLock = lock.readLock();
+    this.writeLock = lock.writeLock();
+  }
+
+  public long size() {
+    readLock.lock();
+    try {
+      return super.size();
+    } finally {
+      readLock.unlock();
+    }
+  }
+
+  public PagedBuffer append(byte b) {
+    writeLock.lock();
+    try {
+      return super.append(b);
+    } finally {
+      writeLock.unlock();
+    }
+  }
+
+  public PagedBuffer append(byte[] b, int off, int len) {
+    writeLock.lock();
+    try {
+      return super.append(b, off, len);
+    } finally {
+      writeLock.unlock();
+    }
+  }
+
+  public int copyFrom(ByteBuffer src) {
+    writeLock.lock();
+    try {
+      return super.copyFrom(src);
+    } finally {
+      writeLock.unlock();
+    }
+  }
+
+  public int write(long position, ByteBuffer src) {
+    writeLock.lock();
+    try {
+      return super.write(position, src);
+    } finally {
+      writeLock.unlock();
+    }
+  }
+
+  public void truncate(long newSize) {
+    writeLock.lock();
+    try {
+      super.truncate(newSize);
+    } finally {
+      writeLock.unlock();
+    }
+  }
+
+  void detach() {
+    writeLock.lock();
+    try {
+      super.detach();
+    } finally {
+      writeLock.unlock();
+    }
+  }
+
+  void release() {
+    writeLock.lock();
+    try {
+      super.release();
+    } finally {
+      writeLock.unlock();
+    }
+  }
+
+  PagedBuffer share() {
+    writeLock.lock();
+    try {
+      return super.share();
+    } finally {
+      writeLock.unlock();
+    }
+  }
+
+  void adopt(PagedBuffer copy) {
+    writeLock.lock();
+    try {
+      super.adopt(copy);
+    } finally {
+      writeLock.unlock();
+    }
+  }
+
+  boolean dedupFrom(ContentStore.Entry entry) {
+    writeLock.lock();
+    try {
+      return super.dedupFrom(entry);
+    } finally {
+      writeLock.unlock();
+    }
+  }
+
+  long checksum() {
+    readLock.lock();
+    try {
+      return super.checksum();
+    } finally {
+      readLock.unlock();
+    }
+  }
+
+  PagedBuffer emptyCopy() {
+    return new SharedPagedBuffer(0, increment(), pageSize(), allocator(), account());
+  }
+
+  public byte byteAt(long position) {
+    readLock.lock();
+    try {
+      return super.byteAt(position);
+    } finally {
+      readLock.unlock();
+    }
+  }
+
+  public int get(long position, byte[] dst, int off, int len) {
+    readLock.lock();
+    try {
+      return super.get(position, dst, off, len);
+    } finally {
+      readLock.unlock();
+    }
+  }
+
+  public long copyTo(ByteBuffer dst, long start, int count) {
+    readLock.lock();
+    try {
+      return super.copyTo(dst, start, count);
+    } finally {
+      readLock.unlock();
+    }
+  }
+
+  public long copyTo(WritableByteChannel target, long position, long count) throws IOException {
+    readLock.lock();
+    try {
+      return super.copyTo(target, position, count);
+    } finally {
+      readLock.unlock();
+    }
+  }
+
+  public long copyTo(OutputStream out, long position, long count) throws IOException {
+    readLock.lock();
+    try {
+      return super.copyTo(out, position, count);
+    } finally {
+      readLock.unlock();
+    }
+  }
+
+  public byte[] toByteArray() {
+    readLock.lock();
+    try {
+      return super.toByteArray();
+    } finally {
+      readLock.unlock();
+    }
+  }
+}
@@ -0,0 +1,88 @@
+package net.sf.cotta.memory;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+
+/**
+ * Allocator of pages outside of the heap.  The pages are cut from direct buffer slabs in power of two size
+ * classes, and a freed page goes back to the free list of its class for the next allocation of that size.
+ * The slabs themselves are kept for the life of the allocator.
+ * <p/>
+ * Only the ByteBuffer object of each page stays on the heap, the content is in the slabs.  A request larger
+ * than a slab gets a direct buffer of its own, which is left to the garbage collector when it is freed.
+ */
+class SlabAllocator implements PageAllocator {
+  static final int DEFAULT_SLAB_SIZE = 1024 * 1024;
+  private static final int MIN_SHIFT = 4;
+
+  private final int slabSize;
+  private final ArrayDeque<ByteBuffer>[] freePages;
+  private final ByteBuffer[] slabs;
+  private long slabBytes;
+
+  SlabAllocator() {
+    this(DEFAULT_SLAB_SIZE);
+  }
+
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  SlabAllocator(int slabSize) {
+    this.slabSize = Integer.highestOneBit(Math.max(slabSize, 1 << MIN_SHIFT));
+    int classes = Integer.numberOfTrailingZeros(this.slabSize) + 1;
+    this.freePages = new ArrayDeque[classes];
+    this.slabs = new ByteBuffer[classes];
+    for (int i = 0; i < classes; i++) {
+      freePages[i] = new ArrayDeque<ByteBuffer>();
+    }
+  }
+
+  public synchronized ByteBuffer allocate(int capacity) {
+    if (capacity > slabSize) {
+      return ByteBuffer.allocateDirect(capacity);
+    }
+    int sizeClass = Math.max(MIN_SHIFT, 32 - Integer.numberOfLeadingZeros(Math.max(capacity, 1) - 1));
+    ByteBuffer page = freePages[sizeClass].poll();
+    if (page != null) {
+      page.clear();
+      return page;
+    }
+    return cut(sizeClass);
+  }
+
+  public synchronized void free(ByteBuffer page) {
+    int capacity = page.capacity();
+    if (capacity <= slabSize) {
+      freePages[Integer.numberOfTrailingZeros(capacity)].push(page);
+    }
+  }
+
+  public boolean reusesPages() {
+    return true;
+  }
+
+  /**
+   * Total size of the slabs, which is the memory taken outside of the heap apart from the oversized pages
+   *
+   * @return the size of the slabs in bytes
+   */
+  synchronized long slabBytes() {
+    return slabBytes;
+  }
+
+  /**
+   * Cuts a new page from the current slab of the size class, starting a new slab when it is used up
+   */
+  private ByteBuffer cut(int sizeClass) {
+    int pageSize = 1 << sizeClass;
+    ByteBuffer slab = slabs[sizeClass];
+    if (slab == null || slab.remaining() < pageSize) {
+      slab = ByteBuffer.allocateDirect(slabSize);
+      slabs[sizeClass] = slab;
+      slabBytes += slabSize;
+    }
+    slab.limit(slab.position() + pageSize);
+    ByteBuffer page = slab.slice();
+    slab.position(slab.limit());
+    slab.limit(slab.capacity());
+    return page;
+  }
+}
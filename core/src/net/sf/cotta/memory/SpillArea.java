@@ -0,0 +1,78 @@
+package net.sf.cotta.memory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Directory on disk that the file contents of an in-memory file system spill to when the pages of the file system
+ * take more memory than its budget.  Nothing is spilled until the budget is set.
+ */
+abstract class SpillArea {
+  private final MemoryAccount account;
+  private volatile long budget;
+  private volatile File directory;
+
+  SpillArea(MemoryAccount account) {
+    this.account = account;
+  }
+
+  void setBudget(long budget, File directory) {
+    this.directory = directory;
+    this.budget = budget;
+  }
+
+  long budget() {
+    return budget;
+  }
+
+  /**
+   * @param growth number of bytes the pages are about to grow by
+   * @return true if the pages would take more memory than the budget
+   */
+  boolean overBudget(long growth) {
+    long limit = budget;
+    return limit > 0 && account.allocatedBytes() + growth > limit;
+  }
+
+  /**
+   * @param size size of a spilled content
+   * @return true if the content can be read back into memory without going over the budget
+   */
+  boolean fits(long size) {
+    long limit = budget;
+    return limit <= 0 || account.allocatedBytes() + size <= limit;
+  }
+
+  /**
+   * Spills the contents that are not in use, largest first, until the pages are within the budget again
+   *
+   * @param growth number of bytes the pages are about to grow by
+   * @throws IOException error writing to the spill directory
+   */
+  abstract void makeRoom(long growth) throws IOException;
+
+  /**
+   * Creates a spill file, which is deleted when the file is deleted or overwritten, or at the latest when the
+   * virtual machine exits
+   *
+   * @return the file
+   * @throws IOException error creating the file
+   */
+  File createFile() throws IOException {
+    File dir = directory;
+    if (!dir.isDirectory() && !dir.mkdirs() && !dir.isDirectory()) {
+      throw new IOException("cannot create spill directory <" + dir + ">");
+    }
+    File file = File.createTempFile("cotta-", ".spill", dir);
+    file.deleteOnExit();
+    return file;
+  }
+
+  File copy(File source) throws IOException {
+    File file = createFile();
+    Files.copy(source.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    return file;
+  }
+}
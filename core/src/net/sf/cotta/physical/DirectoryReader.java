@@ -0,0 +1,72 @@
+package net.sf.cotta.physical;
+
+import net.sf.cotta.EntryAttributes;
+import net.sf.cotta.PathContent;
+import net.sf.cotta.TIoException;
+import net.sf.cotta.TPath;
+import net.sf.cotta.system.ListingHandler;
+
+import java.io.IOException;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.EnumSet;
+
+/**
+ * Reads the entries of a physical directory one level deep through Files.walkFileTree.  The type of each
+ * entry comes with the directory read where the platform provides it, like on Windows, and otherwise from
+ * one stat of the entry, instead of the stat for each type check done on java.io.File.  Symbolic links are
+ * followed, and entries that are neither a file nor a directory are skipped.
+ */
+final class DirectoryReader {
+  private DirectoryReader() {
+  }
+
+  static PathContent list(TPath path) throws TIoException {
+    final PathContent content = new PathContent(0);
+    read(path, new ListingHandler() {
+      public void entry(TPath entry, EntryAttributes attributes) {
+        if (attributes.isDirectory()) {
+          content.addDirectoryPath(entry);
+        } else {
+          content.addFilePath(entry);
+        }
+      }
+    });
+    return content;
+  }
+
+  static void read(final TPath path, final ListingHandler handler) throws TIoException {
+    final Path directory = Paths.get(path.toSystemPathString());
+    try {
+      Files.walkFileTree(directory, EnumSet.of(FileVisitOption.FOLLOW_LINKS), 1, new SimpleFileVisitor<Path>() {
+        public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) throws IOException {
+          if (file.equals(directory)) {
+            throw new TIoException(path, "listing dirs, not a directory");
+          }
+          if (attributes.isDirectory()) {
+            handler.entry(path.join(file.getFileName().toString()), EntryAttributes.directory(attributes.lastModifiedTime().toMillis()));
+          } else if (attributes.isRegularFile()) {
+            handler.entry(path.join(file.getFileName().toString()), EntryAttributes.file(attributes.size(), attributes.lastModifiedTime().toMillis()));
+          }
+          return FileVisitResult.CONTINUE;
+        }
+
+        public FileVisitResult visitFileFailed(Path file, IOException e) throws IOException {
+          if (file.equals(directory)) {
+            throw e;
+          }
+          return FileVisitResult.CONTINUE;
+        }
+      });
+    } catch (TIoException e) {
+      throw e;
+    } catch (IOException e) {
+      throw new TIoException(path, "listing dirs", e);
+    }
+  }
+}
@@ -0,0 +1,237 @@
+package net.sf.cotta.physical;
+
+import net.sf.cotta.EntryAttributes;
+import net.sf.cotta.PathContent;
+import net.sf.cotta.TIoException;
+import net.sf.cotta.TIoRuntimeException;
+import net.sf.cotta.TPath;
+import net.sf.cotta.io.OutputMode;
+import net.sf.cotta.system.FileSystem;
+import net.sf.cotta.system.ListingHandler;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * File system that represents the physical file through java.nio.file.  The existence, type, length and
+ * last modified time of an entry all come from one read of its attributes, where java.io.File goes
+ * to the file system once for each of them.  This matters on file systems where every call is a network
+ * round trip.
+ * <p/>
+ * Paths are compared, hashed and converted the same way as PhysicalFileSystem.
+ *
+ * @see PhysicalFileSystem
+ */
+public class NioFileSystem implements FileSystem {
+  public static final NioFileSystem instance = new NioFileSystem();
+
+  private NioFileSystem() {
+  }
+
+  private Path nioPath(TPath path) {
+    return Paths.get(path.toSystemPathString());
+  }
+
+  private File file(TPath path) {
+    return new File(path.toSystemPathString());
+  }
+
+  /**
+   * Reads the attributes of the path, following symbolic links
+   *
+   * @return the attributes, or null if the path does not exist or cannot be read
+   */
+  private BasicFileAttributes readAttributes(Path path) {
+    try {
+      return Files.readAttributes(path, BasicFileAttributes.class);
+    } catch (IOException e) {
+      return null;
+    }
+  }
+
+  public EntryAttributes attributes(TPath path) {
+    BasicFileAttributes attributes = readAttributes(nioPath(path));
+    if (attributes == null) {
+      return EntryAttributes.MISSING;
+    }
+    if (attributes.isDirectory()) {
+      return EntryAttributes.directory(attributes.lastModifiedTime().toMillis());
+    }
+    if (attributes.isRegularFile()) {
+      return EntryAttributes.file(attributes.size(), attributes.lastModifiedTime().toMillis());
+    }
+    return EntryAttributes.MISSING;
+  }
+
+  public boolean fileExists(TPath path) {
+    BasicFileAttributes attributes = readAttributes(nioPath(path));
+    return attributes != null && attributes.isRegularFile();
+  }
+
+  public boolean dirExists(TPath path) {
+    BasicFileAttributes attributes = readAttributes(nioPath(path));
+    return attributes != null && attributes.isDirectory();
+  }
+
+  public long fileLength(TPath path) {
+    BasicFileAttributes attributes = readAttributes(nioPath(path));
+    return attributes == null ? 0 : attributes.size();
+  }
+
+  public long fileLastModified(TPath path) {
+    BasicFileAttributes attributes = readAttributes(nioPath(path));
+    return attributes == null ? 0 : attributes.lastModifiedTime().toMillis();
+  }
+
+  public void createFile(TPath path) throws TIoException {
+    try {
+      Files.createFile(nioPath(path));
+    } catch (IOException e) {
+      throw new TIoException(path, "file creation failed", e);
+    }
+  }
+
+  public void deleteFile(TPath path) throws TIoException {
+    Path file = nioPath(path);
+    try {
+      Files.delete(file);
+    } catch (IOException e) {
+      throw new TIoException(path, "Deleting file failed:" + file.toAbsolutePath(), e);
+    }
+  }
+
+  /**
+   * Creates the directory and its missing parents, failing if the directory already exists
+   */
+  public void createDir(TPath path) throws TIoException {
+    Path directory = nioPath(path);
+    try {
+      try {
+        Files.createDirectory(directory);
+      } catch (NoSuchFileException e) {
+        Files.createDirectories(directory);
+      }
+    } catch (IOException e) {
+      throw new TIoException(path, "Creating directory failed", e);
+    }
+  }
+
+  private void ensureParentExists(TPath path) throws TIoException {
+    if (!dirExists(path.parent())) {
+      createDir(path.parent());
+    }
+  }
+
+  public PathContent list(TPath path) throws TIoException {
+    return DirectoryReader.list(path);
+  }
+
+  /**
+   * Lists the directory, passing each entry to the handler as the directory is read
+   *
+   * @param path    path of the directory
+   * @param handler handler of the entries
+   * @throws TIoException error in reading the directory, or from the handler
+   */
+  public void list(TPath path, ListingHandler handler) throws TIoException {
+    DirectoryReader.read(path, handler);
+  }
+
+  public InputStream createInputStream(TPath path) throws TIoException {
+    try {
+      return new FileInputStream(file(path));
+    } catch (FileNotFoundException e) {
+      throw new TIoException(path, "Creating inputstream failed", e);
+    }
+  }
+
+  public OutputStream createOutputStream(TPath path, OutputMode mode) throws TIoException {
+    ensureParentExists(path);
+    try {
+      return new FileOutputStream(file(path), mode.isAppend());
+    } catch (FileNotFoundException e) {
+      throw new TIoException(path, "Creating outputstream failed", e);
+    }
+  }
+
+  public FileChannel createOutputChannel(TPath path, OutputStream outputStream) throws TIoException {
+    return ((FileOutputStream) outputStream).getChannel();
+  }
+
+  public FileChannel createInputChannel(TPath path) throws TIoException {
+    try {
+      return FileChannel.open(nioPath(path), StandardOpenOption.READ);
+    } catch (IOException e) {
+      throw new TIoException(path, "Creating input channel failed", e);
+    }
+  }
+
+  public void deleteDirectory(TPath path) throws TIoException {
+    try {
+      Files.delete(nioPath(path));
+    } catch (IOException e) {
+      throw new TIoException(path, "Deleting directory failed", e);
+    }
+  }
+
+  public void moveFile(TPath source, TPath destination) throws TIoException {
+    move(source, destination);
+  }
+
+  public void moveDirectory(TPath source, TPath destination) throws TIoException {
+    move(source, destination);
+  }
+
+  private void move(TPath source, TPath destination) throws TIoException {
+    try {
+      Files.move(nioPath(source), nioPath(destination));
+    } catch (IOException e) {
+      throw new TIoException(source, "Moving file failed, target <" + destination.toPathString() + ">", e);
+    }
+  }
+
+  public String pathString(TPath path) {
+    return file(path).getPath();
+  }
+
+  public int compare(TPath path1, TPath path2) {
+    return file(path1).compareTo(file(path2));
+  }
+
+  public boolean equals(TPath path1, TPath path2) {
+    return file(path1).equals(file(path2));
+  }
+
+  public int hashCode(TPath path) {
+    return file(path).hashCode();
+  }
+
+  public URI toUri(TPath path) {
+    return toJavaFile(path).toURI();
+  }
+
+  public File toJavaFile(TPath path) {
+    return new File(pathString(path));
+  }
+
+  public String toCanonicalPath(TPath path) {
+    try {
+      return toJavaFile(path).getCanonicalPath();
+    } catch (IOException e) {
+      throw new TIoRuntimeException("toCanonicalPath", path, e);
+    }
+  }
+}
@@ -1,6 +1,7 @@
 package net.sf.cotta.physical;
 
 import net.sf.cotta.system.FileSystem;
+import net.sf.cotta.system.ListingHandler;
 import net.sf.cotta.*;
 import net.sf.cotta.io.OutputMode;
 
@@ -61,19 +62,18 @@ public class PhysicalFileSystem implements FileSystem {
   }
 
   public PathContent list(TPath path) throws TIoException {
-    File[] files = file(path).listFiles();
-    if (files == null) {
-      throw new TIoException(path, "listing dirs");
-    }
-    PathContent content = new PathContent(files.length);
-    for (File file : files) {
-      if (file.isDirectory()) {
-        content.addDirectoryPath(path.join(file.getName()));
-      } else if (file.isFile()) {
-        content.addFilePath(path.join(file.getName()));
-      }
-    }
-    return content;
+    return DirectoryReader.list(path);
+  }
+
+  /**
+   * Lists the directory, passing each entry to the handler as the directory is read
+   *
+   * @param path    path of the directory
+   * @param handler handler of the entries
+   * @throws TIoException error in reading the directory, or from the handler
+   */
+  public void list(TPath path, ListingHandler handler) throws TIoException {
+    DirectoryReader.read(path, handler);
   }
 
   public InputStream createInputStream(TPath path) throws TIoException {
@@ -127,6 +127,14 @@ public class PhysicalFileSystem implements FileSystem {
     return file(path).lastModified();
   }
 
+  public EntryAttributes attributes(TPath path) {
+    File file = file(path);
+    if (file.isFile()) {
+      return EntryAttributes.file(file.length(), file.lastModified());
+    }
+    return file.isDirectory() ? EntryAttributes.directory(file.lastModified()) : EntryAttributes.MISSING;
+  }
+
   public int compare(TPath path1, TPath path2) {
     return file(path1).compareTo(file(path2));
   }
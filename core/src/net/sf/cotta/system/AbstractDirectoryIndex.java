@@ -39,6 +39,10 @@ public abstract class AbstractDirectoryIndex<F extends FileContent> implements D
     return path.hashCode();
   }
 
+  public F writableFileContent(TPath path) {
+    return fileContent(path);
+  }
+
   protected final void sort(List<TPath> paths) {
     order.sort(paths);
   }
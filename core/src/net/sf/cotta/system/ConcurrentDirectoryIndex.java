@@ -0,0 +1,314 @@
+package net.sf.cotta.system;
+
+import net.sf.cotta.CompactPath;
+import net.sf.cotta.PathContent;
+import net.sf.cotta.PathSeparator;
+import net.sf.cotta.TDirectoryNotFoundException;
+import net.sf.cotta.TFileNotFoundException;
+import net.sf.cotta.TIoException;
+import net.sf.cotta.TPath;
+import net.sf.cotta.memory.ListingOrder;
+
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Directory index that can be shared by threads.  Like the hash-based index, it keeps an entry for every file
+ * and directory keyed by the full path, but in concurrent maps, so lookups and listings never take a lock.
+ * <p/>
+ * A change to the structure locks the directories it changes, using a fixed set of locks that the directories
+ * are striped over.  Changes in different directories hardly ever share a lock, and when a change needs two
+ * directories, the locks are always taken in the same order.  Moving a directory takes all the locks, as the
+ * move changes every directory under it, so other threads can see the tree half way through the move but cannot
+ * change it until the move is done.
+ *
+ * @see HashBasedDirectoryIndex
+ */
+public class ConcurrentDirectoryIndex<F extends FileContent> extends AbstractDirectoryIndex<F> {
+  private final ConcurrentMap<Object, HashBasedDirectoryIndex.DirectoryContent> createDirs =
+      new ConcurrentHashMap<Object, HashBasedDirectoryIndex.DirectoryContent>();
+  private final ConcurrentMap<Object, F> createFiles = new ConcurrentHashMap<Object, F>();
+  private final ReentrantLock[] stripes;
+  private final boolean compactKeys;
+
+  public ConcurrentDirectoryIndex(ContentManager<F> contentManager) {
+    this(PathSeparator.Unix, ListingOrder.NULL, contentManager, false);
+  }
+
+  public ConcurrentDirectoryIndex(PathSeparator separator, ListingOrder order, ContentManager<F> contentManager, boolean compactKeys) {
+    this(separator, order, contentManager, compactKeys, Runtime.getRuntime().availableProcessors() * 4);
+  }
+
+  /**
+   * Creates the index
+   *
+   * @param separator     path separator
+   * @param order         listing order
+   * @param contentManager manager that creates the file contents
+   * @param compactKeys   true to keep the paths in their compact encoding
+   * @param stripeCount   number of locks to stripe the directories over, rounded up to a power of two
+   */
+  public ConcurrentDirectoryIndex(PathSeparator separator, ListingOrder order, ContentManager<F> contentManager,
+                                  boolean compactKeys, int stripeCount) {
+    super(separator, order, contentManager);
+    this.compactKeys = compactKeys;
+    int count = Integer.highestOneBit(Math.max(16, stripeCount) * 2 - 1);
+    this.stripes = new ReentrantLock[count];
+    for (int i = 0; i < count; i++) {
+      stripes[i] = new ReentrantLock();
+    }
+    createDirs.put(key(TPath.parse("/")), newDirectoryContent());
+    createDirs.put(key(TPath.parse(".")), newDirectoryContent());
+  }
+
+  private Object key(TPath path) {
+    return compactKeys ? CompactPath.encode(path) : path;
+  }
+
+  private static HashBasedDirectoryIndex.DirectoryContent newDirectoryContent() {
+    return new HashBasedDirectoryIndex.DirectoryContent(
+        ConcurrentHashMap.<String>newKeySet(), ConcurrentHashMap.<String>newKeySet());
+  }
+
+  public boolean fileExists(TPath path) {
+    return createFiles.containsKey(key(path));
+  }
+
+  public boolean dirExists(TPath path) {
+    return createDirs.containsKey(key(path));
+  }
+
+  /**
+   * Lists the directory without locking it, so the listing may or may not include the changes made while
+   * listing.  A directory that does not exist, or no longer exists, lists as empty.
+   */
+  public PathContent list(TPath path) {
+    HashBasedDirectoryIndex.DirectoryContent content = createDirs.get(key(path));
+    if (content == null) {
+      return new PathContent(new ArrayList<TPath>(), new ArrayList<TPath>());
+    }
+    PathContent result = new PathContent(content.dirs(path), content.files(path));
+    sort(result.files());
+    sort(result.dirs());
+    return result;
+  }
+
+  public F fileContent(TPath path) {
+    return createFiles.get(key(path));
+  }
+
+  public int fileCount() {
+    return createFiles.size();
+  }
+
+  public int dirCount() {
+    return createDirs.size() - 2;
+  }
+
+  /**
+   * Creates the file, or returns the content of the file if another thread has just created it
+   */
+  public F createFile(TPath path) throws TIoException {
+    validateBeforeCreateFile(path);
+    TPath parent = path.parent();
+    ReentrantLock lock = lockFor(parent);
+    lock.lock();
+    try {
+      validateBeforeCreateFile(path);
+      HashBasedDirectoryIndex.DirectoryContent parentContent = createDirs.get(key(parent));
+      if (parentContent == null) {
+        throw new TIoException(path, "parent needs to be created first");
+      }
+      F fileContent = createFiles.get(key(path));
+      if (fileContent == null) {
+        fileContent = contentManager.createFileContent();
+        createFiles.put(key(path), fileContent);
+        parentContent.addFile(path);
+      }
+      return fileContent;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public void deleteFile(TPath path) throws TFileNotFoundException {
+    TPath parent = path.parent();
+    ReentrantLock lock = lockFor(parent);
+    lock.lock();
+    try {
+      if (createFiles.remove(key(path)) == null) {
+        throw new TFileNotFoundException(path);
+      }
+      createDirs.get(key(parent)).removeFile(path);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public void moveFile(TPath source, TPath destination) throws TIoException {
+    ReentrantLock[] locks = lockBoth(source.parent(), destination.parent());
+    try {
+      HashBasedDirectoryIndex.DirectoryContent destinationParent = createDirs.get(key(destination.parent()));
+      if (destinationParent == null) {
+        throw new TIoException(destination, "parent needs to be created first");
+      }
+      F file = createFiles.remove(key(source));
+      if (file == null) {
+        throw new TFileNotFoundException(source);
+      }
+      createFiles.put(key(destination), file);
+      createDirs.get(key(source.parent())).removeFile(source);
+      destinationParent.addFile(destination);
+    } finally {
+      unlock(locks);
+    }
+  }
+
+  /**
+   * Creates the directory and its missing parents.  A directory that another thread creates while this one
+   * is waiting for the lock is accepted as created.
+   */
+  public void createDir(TPath path) throws TIoException {
+    validateBeforeCreateDir(path);
+    TPath parent = path.parent();
+    ensureDirExists(parent);
+    ReentrantLock lock = lockFor(parent);
+    lock.lock();
+    try {
+      if (dirExists(path)) {
+        return;
+      }
+      validateBeforeCreateDir(path);
+      HashBasedDirectoryIndex.DirectoryContent parentContent = createDirs.get(key(parent));
+      if (parentContent == null) {
+        throw new TDirectoryNotFoundException(parent);
+      }
+      createDirs.put(key(path), newDirectoryContent());
+      parentContent.addDir(path);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public void deleteDir(TPath path) throws TIoException {
+    if (path.parent() == null) {
+      throw new TIoException(path, "cannot delete the root directory");
+    }
+    ReentrantLock[] locks = lockBoth(path.parent(), path);
+    try {
+      Object key = key(path);
+      HashBasedDirectoryIndex.DirectoryContent directoryContent = createDirs.get(key);
+      if (directoryContent == null) {
+        throw new TDirectoryNotFoundException(path);
+      }
+      if (!directoryContent.isEmpty()) {
+        throw new TIoException(path, "Directory not empty");
+      }
+      createDirs.remove(key);
+      createDirs.get(key(path.parent())).removeDir(path);
+    } finally {
+      unlock(locks);
+    }
+  }
+
+  /**
+   * Moves the directory entry by entry while holding all the locks, so that no other thread can create or
+   * delete anything under the source and leave the move part way done
+   */
+  public void moveDir(TPath source, TPath destination) throws TIoException {
+    lockAll();
+    try {
+      if (!dirExists(source)) {
+        throw new TDirectoryNotFoundException(source);
+      }
+      moveEntries(source, destination);
+    } finally {
+      unlock(stripes);
+    }
+  }
+
+  private void moveEntries(TPath source, TPath destination) throws TIoException {
+    createDir(destination);
+    PathContent content = list(source);
+    for (TPath directory : content.dirs()) {
+      moveEntries(directory, destination.join(directory.lastElementName()));
+    }
+    for (TPath file : content.files()) {
+      moveFile(file, destination.join(file.lastElementName()));
+    }
+    deleteDir(source);
+  }
+
+  /**
+   * Creates the directory and its missing parents, accepting the directories created by other threads
+   * in the meantime
+   */
+  private HashBasedDirectoryIndex.DirectoryContent ensureDirExists(TPath dir) throws TIoException {
+    HashBasedDirectoryIndex.DirectoryContent content = createDirs.get(key(dir));
+    if (content != null) {
+      return content;
+    }
+    TPath parent = dir.parent();
+    ensureDirExists(parent);
+    ReentrantLock lock = lockFor(parent);
+    lock.lock();
+    try {
+      content = createDirs.get(key(dir));
+      if (content == null) {
+        HashBasedDirectoryIndex.DirectoryContent parentContent = createDirs.get(key(parent));
+        if (parentContent == null) {
+          throw new TDirectoryNotFoundException(parent);
+        }
+        if (fileExists(dir)) {
+          throw new TIoException(dir, "already exists as a file");
+        }
+        content = newDirectoryContent();
+        createDirs.put(key(dir), content);
+        parentContent.addDir(dir);
+      }
+      return content;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private ReentrantLock lockFor(TPath dir) {
+    return stripes[stripe(dir)];
+  }
+
+  private int stripe(TPath dir) {
+    int hash = dir.hashCode();
+    return (hash ^ (hash >>> 16)) & (stripes.length - 1);
+  }
+
+  /**
+   * Locks the stripes of the two directories, the lower stripe first, and only once if they share the stripe
+   */
+  private ReentrantLock[] lockBoth(TPath dir1, TPath dir2) {
+    int stripe1 = stripe(dir1);
+    int stripe2 = stripe(dir2);
+    ReentrantLock[] locks = stripe1 == stripe2 ? new ReentrantLock[]{stripes[stripe1]} :
+        new ReentrantLock[]{stripes[Math.min(stripe1, stripe2)], stripes[Math.max(stripe1, stripe2)]};
+    for (ReentrantLock lock : locks) {
+      lock.lock();
+    }
+    return locks;
+  }
+
+  /**
+   * Locks all the stripes in order, which keeps to the order that lockBoth takes them in
+   */
+  private void lockAll() {
+    for (ReentrantLock lock : stripes) {
+      lock.lock();
+    }
+  }
+
+  private static void unlock(ReentrantLock[] locks) {
+    for (int i = locks.length - 1; i >= 0; i--) {
+      locks[i].unlock();
+    }
+  }
+}
@@ -2,4 +2,12 @@ package net.sf.cotta.system;
 
 public interface ContentManager<F extends FileContent> {
   F createFileContent();
+
+  /**
+   * Copies the content of a file for a directory index that keeps earlier versions of its files
+   *
+   * @param content content to copy
+   * @return the copy, which can be changed without changing the original
+   */
+  F copyFileContent(F content);
 }
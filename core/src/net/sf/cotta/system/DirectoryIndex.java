@@ -26,6 +26,15 @@ public interface DirectoryIndex<F extends FileContent> {
 
   F fileContent(TPath path);
 
+  /**
+   * The content of the file to be changed, which an index that keeps earlier versions of the file copies
+   * before handing it out
+   *
+   * @param path path of the file
+   * @return the content, or null if the file does not exist
+   */
+  F writableFileContent(TPath path);
+
   F createFile(TPath path) throws TIoException;
 
   void deleteFile(TPath path) throws TFileNotFoundException;
@@ -37,4 +46,18 @@ public interface DirectoryIndex<F extends FileContent> {
   void deleteDir(TPath path) throws TIoException;
 
   void moveDir(TPath source, TPath dest) throws TIoException;
+
+  /**
+   * The number of files in the index, kept up to date as the files are created and deleted
+   *
+   * @return number of files
+   */
+  int fileCount();
+
+  /**
+   * The number of directories in the index, not counting the roots
+   *
+   * @return number of directories
+   */
+  int dirCount();
 }
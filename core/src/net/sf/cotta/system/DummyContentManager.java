@@ -7,4 +7,8 @@ public class DummyContentManager implements ContentManager<DummyFileContent> {
   public DummyFileContent createFileContent() {
     return DUMMY_FILE_CONTENT;
   }
+
+  public DummyFileContent copyFileContent(DummyFileContent content) {
+    return content;
+  }
 }
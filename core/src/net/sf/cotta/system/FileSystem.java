@@ -1,5 +1,6 @@
 package net.sf.cotta.system;
 
+import net.sf.cotta.EntryAttributes;
 import net.sf.cotta.PathContent;
 import net.sf.cotta.TIoException;
 import net.sf.cotta.TPath;
@@ -64,6 +65,21 @@ public interface FileSystem {
 
   long fileLastModified(TPath path);
 
+  /**
+   * Returns the type, length and last modified time of the entry at the path in one call.  The default asks
+   * for each of them in turn, a file system that can find them in one trip should override it.  The last
+   * modified time of a directory is 0 by default.
+   *
+   * @param path path
+   * @return the attributes, or EntryAttributes.MISSING if nothing exists at the path
+   */
+  default EntryAttributes attributes(TPath path) {
+    if (fileExists(path)) {
+      return EntryAttributes.file(fileLength(path), fileLastModified(path));
+    }
+    return dirExists(path) ? EntryAttributes.directory(0) : EntryAttributes.MISSING;
+  }
+
   /**
    * Compares the two path
    *
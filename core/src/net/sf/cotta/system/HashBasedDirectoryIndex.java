@@ -1,5 +1,6 @@
 package net.sf.cotta.system;
 
+import net.sf.cotta.CompactPath;
 import net.sf.cotta.PathContent;
 import net.sf.cotta.PathSeparator;
 import net.sf.cotta.TDirectoryNotFoundException;
@@ -8,44 +9,65 @@ import net.sf.cotta.TIoException;
 import net.sf.cotta.TPath;
 import net.sf.cotta.memory.ListingOrder;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-
+import java.util.Set;
+
+/**
+ * Directory index that keeps a hash map entry for every file and directory, keyed by the full path.
+ * With compact keys, the paths are kept in their compact encoding, which takes a fraction of the
+ * memory at the cost of encoding the path on every lookup.
+ *
+ * @see net.sf.cotta.CompactPath
+ */
 public class HashBasedDirectoryIndex<F extends FileContent> extends AbstractDirectoryIndex<F> {
-  private final Map<TPath, DirectoryContent> createDirs = new HashMap<TPath, DirectoryContent>();
-  private final Map<TPath, F> createFiles = new HashMap<TPath, F>();
+  private final Map<Object, DirectoryContent> createDirs = new HashMap<Object, DirectoryContent>();
+  private final Map<Object, F> createFiles = new HashMap<Object, F>();
+  private final boolean compactKeys;
 
   public HashBasedDirectoryIndex(ContentManager<F> contentManager) {
     super(contentManager);
+    this.compactKeys = false;
     init();
   }
 
   public HashBasedDirectoryIndex(PathSeparator separator, ListingOrder order, ContentManager<F> contentManager) {
+    this(separator, order, contentManager, false);
+  }
+
+  public HashBasedDirectoryIndex(PathSeparator separator, ListingOrder order, ContentManager<F> contentManager, boolean compactKeys) {
     super(separator, order, contentManager);
+    this.compactKeys = compactKeys;
     init();
   }
 
   private void init() {
-    createDirs.put(TPath.parse("/"), new DirectoryContent());
-    createDirs.put(TPath.parse("."), new DirectoryContent());
+    createDirs.put(key(TPath.parse("/")), new DirectoryContent());
+    createDirs.put(key(TPath.parse(".")), new DirectoryContent());
+  }
+
+  private Object key(TPath path) {
+    return compactKeys ? CompactPath.encode(path) : path;
   }
 
   public boolean fileExists(TPath path) {
-    return createFiles.containsKey(path);
+    return createFiles.containsKey(key(path));
   }
 
   public boolean dirExists(TPath path) {
-    if (createDirs.containsKey(path)) {
+    if (createDirs.containsKey(key(path))) {
       return true;
     }
     return false;
   }
 
   public PathContent list(TPath path) {
-    DirectoryContent content = createDirs.get(path);
-    PathContent result = new PathContent(content.dirs(), content.files());
+    DirectoryContent content = createDirs.get(key(path));
+    PathContent result = new PathContent(content.dirs(path), content.files(path));
     sort(result.files());
     sort(result.dirs());
     return result;
@@ -57,44 +79,46 @@ public class HashBasedDirectoryIndex<F extends FileContent> extends AbstractDire
       throw new TIoException(path, "parent needs to be created first");
     }
 
-    createDirs.get(path.parent()).addFile(path);
+    createDirs.get(key(path.parent())).addFile(path);
     F fileContent = contentManager.createFileContent();
-    createFiles.put(path, fileContent);
+    createFiles.put(key(path), fileContent);
     return fileContent;
   }
 
   public void deleteFile(TPath path) throws TFileNotFoundException {
-    if (!createFiles.containsKey(path)) {
+    Object key = key(path);
+    if (!createFiles.containsKey(key)) {
       throw new TFileNotFoundException(path);
     }
-    createFiles.remove(path);
-    createDirs.get(path.parent()).removeFile(path);
+    createFiles.remove(key);
+    createDirs.get(key(path.parent())).removeFile(path);
   }
 
   public void moveFile(TPath source, TPath destination) throws TIoException {
-    F file = createFiles.remove(source);
-    createFiles.put(destination, file);
-    createDirs.get(source.parent()).removeFile(source);
-    createDirs.get(destination.parent()).addFile(destination);
+    F file = createFiles.remove(key(source));
+    createFiles.put(key(destination), file);
+    createDirs.get(key(source.parent())).removeFile(source);
+    createDirs.get(key(destination.parent())).addFile(destination);
   }
 
   public void createDir(TPath path) throws TIoException {
     validateBeforeCreateDir(path);
     
     ensureDirExists(path.parent()).addDir(path);
-    createDirs.put(path, new DirectoryContent());
+    createDirs.put(key(path), new DirectoryContent());
   }
 
   public void deleteDir(TPath path) throws TIoException {
     if (!dirExists(path)) {
       throw new TDirectoryNotFoundException(path);
     }
-    DirectoryContent directoryContent = createDirs.get(path);
+    Object key = key(path);
+    DirectoryContent directoryContent = createDirs.get(key);
     if (!directoryContent.isEmpty()) {
       throw new TIoException(path, "Directory not empty");
     }
-    createDirs.remove(path);
-    createDirs.get(path.parent()).removeDir(path);
+    createDirs.remove(key);
+    createDirs.get(key(path.parent())).removeDir(path);
   }
 
   public void moveDir(TPath source, TPath destination) throws TIoException {
@@ -106,14 +130,22 @@ public class HashBasedDirectoryIndex<F extends FileContent> extends AbstractDire
   }
 
   public F fileContent(TPath path) {
-    return createFiles.get(path);
+    return createFiles.get(key(path));
+  }
+
+  public int fileCount() {
+    return createFiles.size();
+  }
+
+  public int dirCount() {
+    return createDirs.size() - 2;
   }
 
   private DirectoryContent ensureDirExists(TPath dir) throws TIoException {
     if (!dirExists(dir)) {
       createDir(dir);
     }
-    return createDirs.get(dir);
+    return createDirs.get(key(dir));
   }
 
   private void moveSubDirectories(List<TPath> directories, TPath destination) throws TIoException {
@@ -128,24 +160,63 @@ public class HashBasedDirectoryIndex<F extends FileContent> extends AbstractDire
     }
   }
 
+  /**
+   * The names of the sub-directories and files of a directory.  Only the names are kept, the
+   * paths are joined to the directory path when listed.
+   */
   public static class DirectoryContent {
-    private Map<String, TPath> dirs = new HashMap<String, TPath>();
-    private Map<String, TPath> files = new HashMap<String, TPath>();
+    private final Set<String> dirs;
+    private final Set<String> files;
+
+    public DirectoryContent() {
+      this(new HashSet<String>(), new HashSet<String>());
+    }
 
-    public Collection<TPath> dirs() {
-      return dirs.values();
+    /**
+     * Creates the content on the given sets of names, such as concurrent sets for an index shared by threads
+     *
+     * @param dirs  names of the sub-directories
+     * @param files names of the files
+     */
+    public DirectoryContent(Set<String> dirs, Set<String> files) {
+      this.dirs = dirs;
+      this.files = files;
+    }
+
+    /**
+     * The paths of the sub-directories, joined to the path of the directory as it is listed
+     *
+     * @param directory path of the directory
+     * @return the paths
+     */
+    public Collection<TPath> dirs(TPath directory) {
+      return join(directory, dirs);
     }
 
     public void addDir(TPath directory) {
-      dirs.put(directory.lastElementName(), directory);
+      dirs.add(directory.lastElementName());
     }
 
     public void addFile(TPath file) {
-      files.put(file.lastElementName(), file);
+      files.add(file.lastElementName());
+    }
+
+    /**
+     * The paths of the files, joined to the path of the directory as it is listed
+     *
+     * @param directory path of the directory
+     * @return the paths
+     */
+    public Collection<TPath> files(TPath directory) {
+      return join(directory, files);
     }
 
-    public Collection<TPath> files() {
-      return files.values();
+    private Collection<TPath> join(TPath directory, Set<String> names) {
+      List<TPath> paths = new ArrayList<TPath>(names.size());
+      for (String name : names) {
+        paths.add(directory.join(name));
+      }
+      return paths;
     }
 
     public boolean isEmpty() {
@@ -0,0 +1,20 @@
+package net.sf.cotta.system;
+
+import net.sf.cotta.EntryAttributes;
+import net.sf.cotta.TIoException;
+import net.sf.cotta.TPath;
+
+/**
+ * Receives the entries of a directory one by one as the directory is read, instead of
+ * waiting for the whole listing
+ */
+public interface ListingHandler {
+  /**
+   * Called for each file or directory in the listing
+   *
+   * @param path       path of the entry
+   * @param attributes attributes of the entry, which is either a file or a directory
+   * @throws TIoException to stop the listing
+   */
+  void entry(TPath path, EntryAttributes attributes) throws TIoException;
+}
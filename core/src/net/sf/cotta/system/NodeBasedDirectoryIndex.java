@@ -0,0 +1,226 @@
+package net.sf.cotta.system;
+
+import net.sf.cotta.PathContent;
+import net.sf.cotta.PathSeparator;
+import net.sf.cotta.TDirectoryNotFoundException;
+import net.sf.cotta.TFileNotFoundException;
+import net.sf.cotta.TIoException;
+import net.sf.cotta.TPath;
+import net.sf.cotta.memory.ListingOrder;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Directory index that gives every directory a node with an id, and keeps the directories and files in hash
+ * maps keyed by the id of their parent and their name instead of their full path.  Moving a directory only
+ * moves the entry of the directory itself, as the entries under it are keyed by the id of the moved node.
+ * <p/>
+ * The node of a directory is found by looking up the path in a cache of directory paths, and otherwise by going
+ * down from the nearest cached parent one name at a time.  Moving a directory drops the cache, as the paths
+ * under it have changed.
+ *
+ * @see HashBasedDirectoryIndex
+ */
+public class NodeBasedDirectoryIndex<F extends FileContent> extends AbstractDirectoryIndex<F> {
+  private static final int TOP = 0;
+
+  private final Map<Key, DirNode> dirs = new HashMap<Key, DirNode>();
+  private final Map<Key, F> files = new HashMap<Key, F>();
+  private Map<TPath, DirNode> dirCache = new HashMap<TPath, DirNode>();
+  private int nextId = TOP + 1;
+
+  public NodeBasedDirectoryIndex(ContentManager<F> contentManager) {
+    super(contentManager);
+    init();
+  }
+
+  public NodeBasedDirectoryIndex(PathSeparator separator, ListingOrder order, ContentManager<F> contentManager) {
+    super(separator, order, contentManager);
+    init();
+  }
+
+  private void init() {
+    dirs.put(new Key(TOP, TPath.parse("/").headElement()), new DirNode(nextId++));
+    dirs.put(new Key(TOP, TPath.parse(".").headElement()), new DirNode(nextId++));
+  }
+
+  public boolean fileExists(TPath path) {
+    Key key = fileKey(path);
+    return key != null && files.containsKey(key);
+  }
+
+  public boolean dirExists(TPath path) {
+    return findDir(path) != null;
+  }
+
+  public PathContent list(TPath path) {
+    HashBasedDirectoryIndex.DirectoryContent content = findDir(path).content;
+    PathContent result = new PathContent(content.dirs(path), content.files(path));
+    sort(result.files());
+    sort(result.dirs());
+    return result;
+  }
+
+  public F fileContent(TPath path) {
+    Key key = fileKey(path);
+    return key != null ? files.get(key) : null;
+  }
+
+  public int fileCount() {
+    return files.size();
+  }
+
+  public int dirCount() {
+    return dirs.size() - 2;
+  }
+
+  public F createFile(TPath path) throws TIoException {
+    validateBeforeCreateFile(path);
+    DirNode parent = findDir(path.parent());
+    if (parent == null) {
+      throw new TIoException(path, "parent needs to be created first");
+    }
+    F fileContent = contentManager.createFileContent();
+    files.put(new Key(parent.id, path.lastElementName()), fileContent);
+    parent.content.addFile(path);
+    return fileContent;
+  }
+
+  public void deleteFile(TPath path) throws TFileNotFoundException {
+    DirNode parent = findDir(path.parent());
+    if (parent == null || files.remove(new Key(parent.id, path.lastElementName())) == null) {
+      throw new TFileNotFoundException(path);
+    }
+    parent.content.removeFile(path);
+  }
+
+  public void moveFile(TPath source, TPath destination) throws TIoException {
+    DirNode sourceParent = findDir(source.parent());
+    F file = files.remove(new Key(sourceParent.id, source.lastElementName()));
+    sourceParent.content.removeFile(source);
+    DirNode destinationParent = findDir(destination.parent());
+    files.put(new Key(destinationParent.id, destination.lastElementName()), file);
+    destinationParent.content.addFile(destination);
+  }
+
+  public void createDir(TPath path) throws TIoException {
+    validateBeforeCreateDir(path);
+    DirNode node = new DirNode(nextId++);
+    ensureDirExists(path.parent()).addDir(path, node);
+    dirCache.put(path, node);
+  }
+
+  public void deleteDir(TPath path) throws TIoException {
+    DirNode node = findDir(path);
+    if (node == null) {
+      throw new TDirectoryNotFoundException(path);
+    }
+    if (!node.content.isEmpty()) {
+      throw new TIoException(path, "Directory not empty");
+    }
+    findDir(path.parent()).removeDir(path);
+    dirCache.remove(path);
+  }
+
+  /**
+   * Moves the node of the directory to the destination, which takes the files and directories under it along
+   * without touching their entries.  The cache is dropped before the destination is looked up, as it still
+   * holds the paths under the source.
+   *
+   * @throws TIoException if the destination is under the source, which would attach the node under itself
+   */
+  public void moveDir(TPath source, TPath destination) throws TIoException {
+    if (destination.isChildOf(source)) {
+      throw new TIoException(destination, "cannot move directory <" + source.toPathString() + "> under itself");
+    }
+    validateBeforeCreateDir(destination);
+    DirNode node = findDir(source);
+    if (node == null) {
+      throw new TDirectoryNotFoundException(source);
+    }
+    findDir(source.parent()).removeDir(source);
+    dirCache = new HashMap<TPath, DirNode>();
+    ensureDirExists(destination.parent()).addDir(destination, node);
+  }
+
+  private DirNode ensureDirExists(TPath dir) throws TIoException {
+    DirNode node = findDir(dir);
+    if (node == null) {
+      createDir(dir);
+      node = findDir(dir);
+    }
+    return node;
+  }
+
+  /**
+   * The key of the file, or null if the parent directory does not exist
+   */
+  private Key fileKey(TPath path) {
+    TPath parent = path.parent();
+    DirNode dir = parent != null ? findDir(parent) : null;
+    return dir != null ? new Key(dir.id, path.lastElementName()) : null;
+  }
+
+  private DirNode findDir(TPath path) {
+    DirNode node = dirCache.get(path);
+    if (node != null) {
+      return node;
+    }
+    TPath parent = path.parent();
+    if (parent == null) {
+      node = dirs.get(new Key(TOP, path.headElement()));
+    } else {
+      DirNode parentNode = findDir(parent);
+      node = parentNode != null ? dirs.get(new Key(parentNode.id, path.lastElementName())) : null;
+    }
+    if (node != null) {
+      dirCache.put(path, node);
+    }
+    return node;
+  }
+
+  private class DirNode {
+    private final int id;
+    private final HashBasedDirectoryIndex.DirectoryContent content = new HashBasedDirectoryIndex.DirectoryContent();
+
+    DirNode(int id) {
+      this.id = id;
+    }
+
+    void addDir(TPath path, DirNode dir) {
+      dirs.put(new Key(id, path.lastElementName()), dir);
+      content.addDir(path);
+    }
+
+    void removeDir(TPath path) {
+      dirs.remove(new Key(id, path.lastElementName()));
+      content.removeDir(path);
+    }
+  }
+
+  private static class Key {
+    private final int parent;
+    private final String name;
+
+    Key(int parent, String name) {
+      this.parent = parent;
+      this.name = name;
+    }
+
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof Key)) {
+        return false;
+      }
+      Key key = (Key) o;
+      return parent == key.parent && name.equals(key.name);
+    }
+
+    public int hashCode() {
+      return 31 * parent + name.hashCode();
+    }
+  }
+}
@@ -11,12 +11,29 @@ import net.sf.cotta.memory.ListingOrder;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
+/**
+ * Directory index that keeps a tree of directory nodes, where each node holds the files and sub-directories
+ * under it by name.
+ * <p/>
+ * The tree is persistent: a snapshot keeps the current tree and costs nothing to take.  Every node belongs to
+ * the generation it was created in, and taking a snapshot starts a new generation.  A change to a node of an
+ * earlier generation first copies the node and the nodes above it, so the snapshot keeps seeing the tree as it
+ * was, and the files of a copied node are copied through the content manager the first time they are written.
+ *
+ * @see #snapshot()
+ * @see #restore(Snapshot)
+ */
 public class TreeBasedDirectoryIndex<F extends FileContent> extends AbstractDirectoryIndex<F> {
 
-  private Map<String, DirTreeNode> roots = new HashMap<String, DirTreeNode>();
+  private DirTreeNode top;
+  private int generation;
+  private int fileCount;
+  private int dirCount;
 
   public TreeBasedDirectoryIndex(ContentManager<F> contentManager) {
     super(contentManager);
@@ -29,8 +46,65 @@ public class TreeBasedDirectoryIndex<F extends FileContent> extends AbstractDire
   }
 
   private void init() {
-    roots.put("", new DirTreeNode());
-    roots.put(".", new DirTreeNode());
+    top = new DirTreeNode(generation);
+    top.addDir("");
+    top.addDir(".");
+  }
+
+  /**
+   * Takes a snapshot of the tree.  The tree is not copied, the nodes are copied when they are changed after
+   * the snapshot.  The streams opened for writing before the snapshot still write to the content kept by it.
+   *
+   * @return the snapshot
+   */
+  public Snapshot<F> snapshot() {
+    Snapshot<F> snapshot = new Snapshot<F>(this, top, fileCount, dirCount);
+    generation++;
+    return snapshot;
+  }
+
+  /**
+   * Puts the tree back to the snapshot.  The snapshot itself is not changed, so it can be restored any
+   * number of times.
+   * <p/>
+   * The tree that is dropped may hold file contents that no snapshot holds, which are the files of the nodes
+   * of the current generation that are not shared with an earlier one.  They are returned so that the caller
+   * can release them.
+   *
+   * @param snapshot snapshot taken from this index
+   * @return the file contents that only the dropped tree held
+   * @throws IllegalArgumentException if the snapshot was taken from another index
+   */
+  public List<F> restore(Snapshot<F> snapshot) {
+    if (snapshot.index != this) {
+      throw new IllegalArgumentException("snapshot was taken from another directory index");
+    }
+    List<F> dropped = new ArrayList<F>();
+    collectOwnFiles(top, dropped);
+    top = snapshot.top;
+    fileCount = snapshot.fileCount;
+    dirCount = snapshot.dirCount;
+    generation++;
+    return dropped;
+  }
+
+  /**
+   * Collects the files that the nodes of the current generation do not share with an earlier one.  A node of
+   * an earlier generation is left alone with everything under it, as a node is copied into the current
+   * generation before anything is added under it.
+   */
+  private void collectOwnFiles(DirTreeNode node, List<F> files) {
+    if (node.generation != generation) {
+      return;
+    }
+    for (Map.Entry<String, F> file : node.files.entrySet()) {
+      if (!node.isShared(file.getKey())) {
+        files.add(file.getValue());
+      }
+    }
+    for (DirTreeNode dir : node.dirs.values()) {
+      collectOwnFiles(dir, files);
+    }
   }
 
   public boolean fileExists(TPath path) {
@@ -60,14 +134,30 @@ public class TreeBasedDirectoryIndex<F extends FileContent> extends AbstractDire
     return findFile(path);
   }
 
+  public int fileCount() {
+    return fileCount;
+  }
+
+  public int dirCount() {
+    return dirCount;
+  }
+
+  public F writableFileContent(TPath path) {
+    if (findFile(path) == null) {
+      return null;
+    }
+    return writableDir(path.parent()).writableFile(path.lastElementName());
+  }
+
   public F createFile(TPath path) throws TIoException {
     validateBeforeCreateFile(path);
-    DirTreeNode parentDir = findDir(path.parent());
-    if (parentDir == null) {
+    if (findDir(path.parent()) == null) {
       throw new TIoException(path, "parent needs to be created first");
     }
     F f = contentManager.createFileContent();
-    parentDir.addFile(path.lastElementName(), f);
+    if (writableDir(path.parent()).addFile(path.lastElementName(), f, false) == null) {
+      fileCount++;
+    }
     return f;
   }
 
@@ -76,23 +166,28 @@ public class TreeBasedDirectoryIndex<F extends FileContent> extends AbstractDire
     if (parent == null || parent.getFile(path.lastElementName()) == null) {
       throw new TFileNotFoundException(path);
     }
-    parent.removeFile(path.lastElementName());
+    writableDir(path.parent()).removeFile(path.lastElementName());
+    fileCount--;
   }
 
   public void moveFile(TPath source, TPath dest) throws TIoException {
-    F f = findFile(source);
-    DirTreeNode destParent = findDir(dest.parent());
-    destParent.addFile(dest.lastElementName(), f);
-    findDir(source.parent()).removeFile(source.lastElementName());
+    DirTreeNode sourceParent = writableDir(source.parent());
+    String name = source.lastElementName();
+    boolean shared = sourceParent.isShared(name);
+    F f = sourceParent.removeFile(name);
+    if (writableDir(dest.parent()).addFile(dest.lastElementName(), f, shared) != null) {
+      fileCount--;
+    }
   }
 
   public void createDir(TPath path) throws TIoException {
     validateBeforeCreateDir(path);
-    DirTreeNode current = roots.get(path.headElement());
+    DirTreeNode current = writableTop().writableDir(path.headElement());
     for (int i = 0; i < path.length(); i++) {
-      DirTreeNode child = current.getDir(path.elementAt(i));
+      DirTreeNode child = current.writableDir(path.elementAt(i));
       if (child == null) {
         child = current.addDir(path.elementAt(i));
+        dirCount++;
       }
       current = child;
     }
@@ -106,57 +201,152 @@ public class TreeBasedDirectoryIndex<F extends FileContent> extends AbstractDire
     if (!findDir(path).isEmpty()) {
       throw new TIoException(path, "Directory not empty");
     }
-    parent.removeDir(path.lastElementName());
+    writableDir(path.parent()).removeDir(path.lastElementName());
+    dirCount--;
   }
 
+  /**
+   * Moves the node of the directory, which keeps its generation, so a directory of an earlier generation is
+   * still copied when it is changed at its new place
+   */
   public void moveDir(TPath source, TPath dest) throws TIoException {
-    DirTreeNode sourceDir = findDir(source.parent()).removeDir(source.lastElementName());
-    DirTreeNode destParent = findDir(dest.parent());
-    destParent.addDir(dest.lastElementName(), sourceDir);
+    DirTreeNode sourceDir = writableDir(source.parent()).removeDir(source.lastElementName());
+    writableDir(dest.parent()).addDir(dest.lastElementName(), sourceDir);
   }
 
   private F findFile(TPath path) {
     TPath parent = path.parent();
-    DirTreeNode dir = parent != null ? findDir(parent) : roots.get(path.headElement());
+    DirTreeNode dir = parent != null ? findDir(parent) : top.getDir(path.headElement());
     F file = dir != null ? dir.getFile(path.lastElementName()) : null;
     return file;
   }
 
   private DirTreeNode findDir(TPath path) {
-    DirTreeNode current = roots.get(path.headElement());
+    DirTreeNode current = top.getDir(path.headElement());
     for (int i = 0; i < path.length() && current != null; i++) {
       current = current.getDir(path.elementAt(i));
     }
     return current;
   }
 
+  private DirTreeNode writableTop() {
+    if (top.generation != generation) {
+      top = top.copy(generation);
+    }
+    return top;
+  }
+
+  /**
+   * The node of the existing directory, copying the nodes of an earlier generation on the way down
+   */
+  private DirTreeNode writableDir(TPath path) {
+    DirTreeNode current = writableTop().writableDir(path.headElement());
+    for (int i = 0; i < path.length(); i++) {
+      current = current.writableDir(path.elementAt(i));
+    }
+    return current;
+  }
+
+  /**
+   * The tree of an index as it was when the snapshot was taken
+   *
+   * @see TreeBasedDirectoryIndex#snapshot()
+   */
+  public static final class Snapshot<F extends FileContent> {
+    private final TreeBasedDirectoryIndex<F> index;
+    private final TreeBasedDirectoryIndex<F>.DirTreeNode top;
+    private final int fileCount;
+    private final int dirCount;
+
+    private Snapshot(TreeBasedDirectoryIndex<F> index, TreeBasedDirectoryIndex<F>.DirTreeNode top, int fileCount,
+                     int dirCount) {
+      this.index = index;
+      this.top = top;
+      this.fileCount = fileCount;
+      this.dirCount = dirCount;
+    }
+  }
+
   private class DirTreeNode {
+    private final int generation;
     private Map<String, F> files = new HashMap<String, F>();
     private Map<String, DirTreeNode> dirs = new HashMap<String, DirTreeNode>();
+    private Set<String> sharedFiles; // files whose content is shared with an earlier generation
+
+    DirTreeNode(int generation) {
+      this.generation = generation;
+    }
+
+    DirTreeNode copy(int generation) {
+      DirTreeNode copy = new DirTreeNode(generation);
+      copy.files.putAll(files);
+      copy.dirs.putAll(dirs);
+      if (!files.isEmpty()) {
+        copy.sharedFiles = new HashSet<String>(files.keySet());
+      }
+      return copy;
+    }
 
     DirTreeNode addDir(String name) {
-      DirTreeNode d = new DirTreeNode();
+      DirTreeNode d = new DirTreeNode(TreeBasedDirectoryIndex.this.generation);
       addDir(name, d);
       return d;
     }
     void addDir(String name, DirTreeNode d) {
       dirs.put(name, d);
     }
-    void addFile(String name, F file) {
-      files.put(name, file);
+    F addFile(String name, F file, boolean shared) {
+      F previous = files.put(name, file);
+      if (shared) {
+        if (sharedFiles == null) {
+          sharedFiles = new HashSet<String>();
+        }
+        sharedFiles.add(name);
+      } else if (sharedFiles != null) {
+        sharedFiles.remove(name);
+      }
+      return previous;
     }
     DirTreeNode removeDir(String name) {
       return dirs.remove(name);
     }
-    void removeFile(String name) {
-      files.remove(name);
+    F removeFile(String name) {
+      if (sharedFiles != null) {
+        sharedFiles.remove(name);
+      }
+      return files.remove(name);
+    }
+    boolean isShared(String name) {
+      return sharedFiles != null && sharedFiles.contains(name);
     }
     DirTreeNode getDir(String name) {
       return dirs.get(name);
     }
+    /**
+     * The sub-directory, copied into the current generation if it is from an earlier one
+     */
+    DirTreeNode writableDir(String name) {
+      DirTreeNode dir = dirs.get(name);
+      if (dir != null && dir.generation != TreeBasedDirectoryIndex.this.generation) {
+        dir = dir.copy(TreeBasedDirectoryIndex.this.generation);
+        dirs.put(name, dir);
+      }
+      return dir;
+    }
     F getFile(String name) {
       return files.get(name);
     }
+    /**
+     * The content of the file, copied if it is shared with an earlier generation
+     */
+    F writableFile(String name) {
+      F file = files.get(name);
+      if (file != null && sharedFiles != null && sharedFiles.remove(name)) {
+        file = contentManager.copyFileContent(file);
+        files.put(name, file);
+      }
+      return file;
+    }
     Collection<String> dirs() {
       return dirs.keySet();
     }
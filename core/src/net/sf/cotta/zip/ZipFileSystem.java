@@ -126,6 +126,14 @@ public class ZipFileSystem implements FileSystem, TResource {
     return entry(path).getTime();
   }
 
+  public EntryAttributes attributes(TPath path) {
+    if (entrySystem.fileExists(path)) {
+      ZipEntry entry = entry(path);
+      return EntryAttributes.file(entry.getSize(), entry.getTime());
+    }
+    return entrySystem.dirExists(path) ? EntryAttributes.directory(0) : EntryAttributes.MISSING;
+  }
+
   public int compare(TPath path1, TPath path2) {
     return path1.compareTo(path2);
   }
@@ -1,6 +1,7 @@
 package net.sf.cotta.ftp;
 
 import net.sf.cotta.system.FileSystem;
+import net.sf.cotta.EntryAttributes;
 import net.sf.cotta.PathContent;
 import net.sf.cotta.TIoException;
 import net.sf.cotta.TPath;
@@ -148,6 +149,27 @@ public class FtpFileSystem implements FileSystem {
     throw new UnsupportedOperationException("FtpFileSystem");
   }
 
+  /**
+   * Finds the entry in the listing of its parent.  The last modified time is not available and is always 0.
+   */
+  public EntryAttributes attributes(TPath path) {
+    if (isConstantPath(path)) {
+      return EntryAttributes.directory(0);
+    }
+    FtpFile[] ftpFiles = listFtpDirectory(path.parent());
+    if (ftpFiles != null) {
+      for (FtpFile ftpFile : ftpFiles) {
+        if (ftpFile.getPath().equals(path)) {
+          if (FtpFileType.DIRECTORY.equals(ftpFile.getFileType())) {
+            return EntryAttributes.directory(0);
+          }
+          return EntryAttributes.file(ftpFile.getSize(), 0);
+        }
+      }
+    }
+    return EntryAttributes.MISSING;
+  }
+
   public int compare(TPath path1, TPath path2) {
     return path1.compareTo(path2);
   }